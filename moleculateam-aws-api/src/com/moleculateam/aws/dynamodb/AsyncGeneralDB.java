@@ -0,0 +1,194 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * AsyncGeneralDB runs the operations of a GeneralDB on an executor and returns a CompletableFuture for each call, so callers can overlap many requests without blocking their threads.
+ *
+ * Each instance runs at most maxConcurrency operations at the same time. Additional calls are queued (without blocking the caller) and started when a running operation finishes, so the executor threads and the HTTP connection pool are never exhausted.
+ *
+ * The default executor uses a virtual thread per task when running on JDK 21 or later and a pool of daemon threads otherwise.
+ *
+ */
+public class AsyncGeneralDB {
+
+	private static ExecutorService defaultExecutor;
+
+	private final GeneralDB db;
+	private final Executor executor;
+	private final Semaphore permits;
+	private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<Task<?>>();
+
+	private static class Task<T> implements Runnable {
+		final Supplier<T> call;
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		Task(Supplier<T> call) {
+			this.call = call;
+		}
+
+		@Override
+		public void run() {
+			try {
+				future.complete(call.get());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Constructor used to run the operations of db on the default executor, with as many concurrent operations as connections in ClientRegistry
+	 *
+	 * @param db GeneralDB used to run the operations
+	 */
+	public AsyncGeneralDB(GeneralDB db) {
+		this(db, defaultExecutor(), ClientRegistry.maxConnections);
+	}
+
+	/**
+	 * Constructor used to run the operations of db on the executor provided
+	 *
+	 * @param db GeneralDB used to run the operations
+	 * @param executor Executor where the operations are run
+	 * @param maxConcurrency Maximum number of operations running at the same time
+	 */
+	public AsyncGeneralDB(GeneralDB db, Executor executor, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+		}
+		this.db = db;
+		this.executor = executor;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	public GeneralDB getGeneralDB() {
+		return db;
+	}
+
+	/**
+	 * Number of operations waiting for a free slot
+	 */
+	public int getQueued() {
+		return pending.size();
+	}
+
+	/**
+	 * See GeneralDB.addItem(String, String, Collection)
+	 */
+	public CompletableFuture<Void> addItem(String tableName, String pk, Collection<Attribute> attributes) {
+		return submit(() -> {
+			db.addItem(tableName, pk, attributes);
+			return null;
+		});
+	}
+
+	/**
+	 * See GeneralDB.addItem(String, String, String, Collection)
+	 */
+	public CompletableFuture<Void> addItem(String tableName, String pk, String rk, Collection<Attribute> attributes) {
+		return submit(() -> {
+			db.addItem(tableName, pk, rk, attributes);
+			return null;
+		});
+	}
+
+	/**
+	 * See GeneralDB.deleteItem(String, String)
+	 */
+	public CompletableFuture<Void> deleteItem(String tableName, String pk) {
+		return submit(() -> {
+			db.deleteItem(tableName, pk);
+			return null;
+		});
+	}
+
+	/**
+	 * See GeneralDB.deleteItem(String, String, String)
+	 */
+	public CompletableFuture<Void> deleteItem(String tableName, String pk, String rk) {
+		return submit(() -> {
+			db.deleteItem(tableName, pk, rk);
+			return null;
+		});
+	}
+
+	/**
+	 * See GeneralDB.getAttribute(String, String, Attribute)
+	 */
+	public CompletableFuture<Object> getAttribute(String tableName, String pk, Attribute att) {
+		return submit(() -> db.getAttribute(tableName, pk, att));
+	}
+
+	/**
+	 * See GeneralDB.getAttribute(String, String, String, Attribute)
+	 */
+	public CompletableFuture<Object> getAttribute(String tableName, String pk, String rk, Attribute att) {
+		return submit(() -> db.getAttribute(tableName, pk, rk, att));
+	}
+
+	/**
+	 * See GeneralDB.getAttributes(String, String, Attribute)
+	 */
+	public CompletableFuture<Collection<Object>> getAttributes(String tableName, String pk, Attribute att) {
+		return submit(() -> db.getAttributes(tableName, pk, att));
+	}
+
+	/**
+	 * Queue the call and start as many queued calls as free slots
+	 */
+	private <T> CompletableFuture<T> submit(Supplier<T> call) {
+		Task<T> task = new Task<T>(call);
+		pending.add(task);
+		drain();
+		return task.future;
+	}
+
+	private void drain() {
+		while (!pending.isEmpty() && permits.tryAcquire()) {
+			final Task<?> task = pending.poll();
+			if (task == null) {
+				// Another thread took the last task
+				permits.release();
+				continue;
+			}
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						permits.release();
+						drain();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				task.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Executor shared by the instances created without executor: a virtual thread per task on JDK 21+, daemon threads otherwise
+	 */
+	private static synchronized ExecutorService defaultExecutor() {
+		if (defaultExecutor == null) {
+			try {
+				defaultExecutor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// Virtual threads are not available before JDK 21
+				defaultExecutor = Executors.newCachedThreadPool(Workers.threadFactory("generaldb-async"));
+			}
+		}
+		return defaultExecutor;
+	}
+}
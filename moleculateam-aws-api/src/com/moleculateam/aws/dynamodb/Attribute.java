@@ -10,7 +10,20 @@ package com.moleculateam.aws.dynamodb;
 public class Attribute {
 	
 	public String name;
-	public enum TYPE { CHAR, INT, JSON, SHORT };  
+	public enum TYPE {
+		CHAR(AttributeCodec.CHAR), INT(AttributeCodec.INT), JSON(AttributeCodec.JSON), SHORT(AttributeCodec.SHORT),
+		LONG(AttributeCodec.LONG), DOUBLE(AttributeCodec.DOUBLE), BOOL(AttributeCodec.BOOL), BINARY(AttributeCodec.BINARY),
+		/** Values are Collection&lt;String&gt;, read as Set&lt;String&gt; */
+		STRING_SET(AttributeCodec.STRING_SET),
+		/** Values are Collection&lt;Number&gt;, read as Set&lt;BigDecimal&gt; */
+		NUMBER_SET(AttributeCodec.NUMBER_SET);
+		
+		final AttributeCodec codec;
+		
+		TYPE(AttributeCodec codec) {
+			this.codec = codec;
+		}
+	};
 	public Object value;
 	public TYPE Type;
 	
@@ -0,0 +1,168 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+/**
+ * AttributeCodec writes the value of an attribute into an item and reads it back for one Attribute.TYPE. Every TYPE has its codec (Attribute.TYPE.codec), so the conversion is selected once by the type of the attribute.
+ * CHAR and JSON values stored compressed as binary (see ValueCompressor) are decompressed when they are read.
+ *
+ */
+abstract class AttributeCodec {
+
+	static final AttributeCodec CHAR = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withString(name, (String)value);
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			Object value = item.get(name);
+			if (value instanceof byte[]) {
+				return ValueCompressor.decompress((byte[])value);
+			}
+			return item.getString(name);
+		}
+	};
+
+	static final AttributeCodec JSON = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withJSON(name, (String)value);
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			Object value = item.get(name);
+			String json = value instanceof byte[] ? ValueCompressor.decompress((byte[])value) : item.getJSON(name);
+			// Replace " " for "" so empty values are recognized by the "" value
+			return json.replace("\" \"","\"\"");
+		}
+	};
+
+	static final AttributeCodec INT = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withInt(name, ((Number)value).intValue());
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getInt(name);
+		}
+	};
+
+	static final AttributeCodec SHORT = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withShort(name, ((Number)value).shortValue());
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getShort(name);
+		}
+	};
+
+	static final AttributeCodec LONG = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withLong(name, ((Number)value).longValue());
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getLong(name);
+		}
+	};
+
+	static final AttributeCodec DOUBLE = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withDouble(name, ((Number)value).doubleValue());
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getDouble(name);
+		}
+	};
+
+	static final AttributeCodec BOOL = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withBoolean(name, (Boolean)value);
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getBoolean(name);
+		}
+	};
+
+	static final AttributeCodec BINARY = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			if (value instanceof ByteBuffer) {
+				return item.withBinary(name, (ByteBuffer)value);
+			}
+			return item.withBinary(name, (byte[])value);
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getBinary(name);
+		}
+	};
+
+	static final AttributeCodec STRING_SET = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withStringSet(name, set(name, value));
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getStringSet(name);
+		}
+	};
+
+	static final AttributeCodec NUMBER_SET = new AttributeCodec() {
+		@Override
+		Item write(Item item, String name, Object value) {
+			return item.withNumberSet(name, set(name, value));
+		}
+
+		@Override
+		Object read(Item item, String name) {
+			return item.getNumberSet(name);
+		}
+	};
+
+	/**
+	 * Set the value of the attribute into the item
+	 */
+	abstract Item write(Item item, String name, Object value);
+
+	/**
+	 * Read the value of the attribute from the item, which must be present
+	 */
+	abstract Object read(Item item, String name);
+
+	/**
+	 * The collection as a set. DynamoDB doesn't store empty sets.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Set<T> set(String name, Object value) {
+		Collection<T> values = (Collection<T>)value;
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException("The set "+name+" is empty, DynamoDB doesn't store empty sets");
+		}
+		return values instanceof Set ? (Set<T>)values : new LinkedHashSet<T>(values);
+	}
+}
@@ -0,0 +1,172 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AttributeCondition is a condition on the item written by an update (see GeneralDB.update), checked by DynamoDB before writing it.
+ * When the condition is false the item isn't changed and the write throws ConditionalCheckFailedException, which allows optimistic concurrency:
+ *
+ * <pre>
+ * db.update("Customer", "5555555000")
+ *   .set(new Attribute("CustomerInfo", TYPE.JSON, info))
+ *   .increment("version", 1)
+ *   .when(AttributeCondition.equalTo(new Attribute("version", TYPE.LONG, version)))
+ *   .execute();
+ * </pre>
+ *
+ * Values are compared with the type of the attribute. Compressed values (see GeneralDB.setCompression) can't be compared.
+ *
+ */
+public class AttributeCondition {
+
+	enum Operator { ITEM_EXISTS, ITEM_NOT_EXISTS, EXISTS, NOT_EXISTS, EQUAL, NOT_EQUAL, LESS_THAN, LESS_OR_EQUAL, GREATER_THAN, GREATER_OR_EQUAL, AND };
+
+	final Operator operator;
+	final String name;
+	final Attribute attribute;
+	final List<AttributeCondition> conditions;
+
+	private AttributeCondition(Operator operator, String name, Attribute attribute, List<AttributeCondition> conditions) {
+		this.operator = operator;
+		this.name = name;
+		this.attribute = attribute;
+		this.conditions = conditions;
+	}
+
+	private static AttributeCondition compare(Operator operator, Attribute attribute) {
+		if (attribute.value == null) {
+			throw new IllegalArgumentException("The attribute "+attribute.name+" of the condition has no value");
+		}
+		return new AttributeCondition(operator, attribute.name, attribute, null);
+	}
+
+	/**
+	 * The item exists
+	 */
+	public static AttributeCondition itemExists() {
+		return new AttributeCondition(Operator.ITEM_EXISTS, null, null, null);
+	}
+
+	/**
+	 * The item doesn't exist, so the write creates it
+	 */
+	public static AttributeCondition itemNotExists() {
+		return new AttributeCondition(Operator.ITEM_NOT_EXISTS, null, null, null);
+	}
+
+	/**
+	 * The item has the attribute name
+	 */
+	public static AttributeCondition exists(String name) {
+		return new AttributeCondition(Operator.EXISTS, name, null, null);
+	}
+
+	/**
+	 * The item doesn't have the attribute name (or the item doesn't exist)
+	 */
+	public static AttributeCondition notExists(String name) {
+		return new AttributeCondition(Operator.NOT_EXISTS, name, null, null);
+	}
+
+	/**
+	 * The attribute has the value of attribute
+	 */
+	public static AttributeCondition equalTo(Attribute attribute) {
+		return compare(Operator.EQUAL, attribute);
+	}
+
+	/**
+	 * The attribute doesn't have the value of attribute (or it doesn't exist)
+	 */
+	public static AttributeCondition notEqualTo(Attribute attribute) {
+		return compare(Operator.NOT_EQUAL, attribute);
+	}
+
+	/**
+	 * The attribute is less than the value of attribute
+	 */
+	public static AttributeCondition lessThan(Attribute attribute) {
+		return compare(Operator.LESS_THAN, attribute);
+	}
+
+	/**
+	 * The attribute is less than or equal to the value of attribute
+	 */
+	public static AttributeCondition lessOrEqual(Attribute attribute) {
+		return compare(Operator.LESS_OR_EQUAL, attribute);
+	}
+
+	/**
+	 * The attribute is greater than the value of attribute
+	 */
+	public static AttributeCondition greaterThan(Attribute attribute) {
+		return compare(Operator.GREATER_THAN, attribute);
+	}
+
+	/**
+	 * The attribute is greater than or equal to the value of attribute
+	 */
+	public static AttributeCondition greaterOrEqual(Attribute attribute) {
+		return compare(Operator.GREATER_OR_EQUAL, attribute);
+	}
+
+	/**
+	 * All the conditions are true
+	 */
+	public static AttributeCondition and(AttributeCondition... conditions) {
+		if (conditions.length == 0) {
+			throw new IllegalArgumentException("and requires at least one condition");
+		}
+		return new AttributeCondition(Operator.AND, null, null, Arrays.asList(conditions));
+	}
+
+	/**
+	 * Build the condition expression, adding its names and values to attributes
+	 *
+	 * @param attributes Placeholders of the request
+	 * @param keyName Name of the partition key of the table (generalkey or generalpk), used to check if the item exists
+	 */
+	String expression(ExpressionAttributes attributes, String keyName) {
+		switch (operator) {
+		case ITEM_EXISTS:
+			return "attribute_exists("+attributes.name(keyName)+")";
+		case ITEM_NOT_EXISTS:
+			return "attribute_not_exists("+attributes.name(keyName)+")";
+		case EXISTS:
+			return "attribute_exists("+attributes.name(name)+")";
+		case NOT_EXISTS:
+			return "attribute_not_exists("+attributes.name(name)+")";
+		case EQUAL:
+			return attributes.name(name)+" = "+attributes.value(attribute);
+		case NOT_EQUAL:
+			return attributes.name(name)+" <> "+attributes.value(attribute);
+		case LESS_THAN:
+			return attributes.name(name)+" < "+attributes.value(attribute);
+		case LESS_OR_EQUAL:
+			return attributes.name(name)+" <= "+attributes.value(attribute);
+		case GREATER_THAN:
+			return attributes.name(name)+" > "+attributes.value(attribute);
+		case GREATER_OR_EQUAL:
+			return attributes.name(name)+" >= "+attributes.value(attribute);
+		default:
+			StringBuilder expression = new StringBuilder();
+			for (AttributeCondition condition : conditions) {
+				if (expression.length() > 0) {
+					expression.append(" AND ");
+				}
+				expression.append(condition.expression(attributes, keyName));
+			}
+			return expression.toString();
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (operator == Operator.AND) {
+			return "AttributeCondition [operator=AND, conditions=" + conditions + "]";
+		}
+		return "AttributeCondition [operator=" + operator + (name == null ? "" : ", name=" + name) + (attribute == null ? "" : ", value=" + attribute.value) + "]";
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+/**
+ * BatchReader fetches items of a DynamoDB table using BatchGetItem calls of up to 100 keys.
+ *
+ * The keys returned as unprocessed by DynamoDB are requested again after an exponential backoff with jitter.
+ */
+class BatchReader {
+
+	static final int MAX_BATCH_SIZE = 100;
+
+	/**
+	 * Fetch a single group of at most MAX_BATCH_SIZE keys, following UnprocessedKeys until all of them are read
+	 *
+	 * @param client DynamoDB client used to read
+	 * @param tableName Physical name of the table
+	 * @param keys Primary keys of the items (without duplicates)
+	 * @param projection Projection expression (null to read the whole items)
+	 * @param names Expression attribute names used by the projection (null when not needed)
+	 * @param probe Probe measuring the calls
+	 * @return The items found. Keys without item are not included.
+	 */
+	static List<Map<String, AttributeValue>> readBatch(AmazonDynamoDB client, String tableName, List<Map<String, AttributeValue>> keys, String projection, Map<String, String> names, MetricsProbe probe) {
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(keys.size());
+		Map<String, KeysAndAttributes> pending = new HashMap<String, KeysAndAttributes>();
+		pending.put(tableName, new KeysAndAttributes()
+				.withKeys(keys)
+				.withProjectionExpression(projection)
+				.withExpressionAttributeNames(names));
+		int attempt = 0;
+		while (true) {
+			BatchGetItemRequest request = probe.watch(new BatchGetItemRequest()
+					.withRequestItems(pending)
+					.withReturnConsumedCapacity(probe.returnConsumedCapacity()));
+			BatchGetItemResult result = probe.callBatch(() -> client.batchGetItem(request), BatchGetItemResult::getConsumedCapacity);
+			List<Map<String, AttributeValue>> found = result.getResponses().get(tableName);
+			if (found != null) {
+				items.addAll(found);
+			}
+			Map<String, KeysAndAttributes> unprocessed = result.getUnprocessedKeys();
+			if (unprocessed == null || unprocessed.isEmpty()) {
+				return items;
+			}
+			if (attempt == BatchWriter.MAX_RETRIES) {
+				throw new AmazonClientException(unprocessed.get(tableName).getKeys().size()+" keys of "+tableName+" still unprocessed after "+attempt+" retries");
+			}
+			probe.unprocessed();
+			BatchWriter.backoff(attempt++);
+			pending = unprocessed;
+		}
+	}
+}
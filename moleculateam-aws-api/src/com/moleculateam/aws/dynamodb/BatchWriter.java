@@ -0,0 +1,93 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * BatchWriter sends write requests to a DynamoDB table using BatchWriteItem calls of up to 25 requests.
+ *
+ * The items returned as unprocessed by DynamoDB are sent again after an exponential backoff with jitter.
+ */
+class BatchWriter {
+
+	static final int MAX_BATCH_SIZE = 25;
+	static final int MAX_RETRIES = 10;
+	private static final long BASE_DELAY = 50;
+	private static final long MAX_DELAY = 5000;
+
+	/**
+	 * Write all the requests into the table in groups of MAX_BATCH_SIZE
+	 *
+	 * @param client DynamoDB client used to write
+	 * @param tableName Physical name of the table
+	 * @param requests Put or delete requests to send
+	 * @param probe Probe measuring the calls
+	 * @return The requests still unprocessed after MAX_RETRIES retries
+	 */
+	static List<WriteRequest> write(AmazonDynamoDB client, String tableName, List<WriteRequest> requests, MetricsProbe probe) {
+		List<WriteRequest> failed = new LinkedList<WriteRequest>();
+		for (int from = 0; from < requests.size(); from += MAX_BATCH_SIZE) {
+			int to = Math.min(from + MAX_BATCH_SIZE, requests.size());
+			failed.addAll(writeBatch(client, tableName, requests.subList(from, to), probe));
+		}
+		return failed;
+	}
+
+	/**
+	 * Write a single group of at most MAX_BATCH_SIZE requests, retrying the unprocessed items
+	 *
+	 * @param client DynamoDB client used to write
+	 * @param tableName Physical name of the table
+	 * @param batch Put or delete requests to send
+	 * @param probe Probe measuring the calls
+	 * @return The requests still unprocessed after MAX_RETRIES retries
+	 */
+	static List<WriteRequest> writeBatch(AmazonDynamoDB client, String tableName, List<WriteRequest> batch, MetricsProbe probe) {
+		Map<String, List<WriteRequest>> pending = new HashMap<String, List<WriteRequest>>();
+		pending.put(tableName, new ArrayList<WriteRequest>(batch));
+		int attempt = 0;
+		while (true) {
+			BatchWriteItemRequest request = probe.watch(new BatchWriteItemRequest()
+					.withRequestItems(pending)
+					.withReturnConsumedCapacity(probe.returnConsumedCapacity()));
+			BatchWriteItemResult result = probe.callBatch(() -> client.batchWriteItem(request), BatchWriteItemResult::getConsumedCapacity);
+			Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+			if (unprocessed == null || unprocessed.isEmpty()) {
+				return Collections.emptyList();
+			}
+			if (attempt == MAX_RETRIES) {
+				List<WriteRequest> failed = unprocessed.get(tableName);
+				return failed == null ? Collections.<WriteRequest>emptyList() : failed;
+			}
+			probe.unprocessed();
+			backoff(attempt++);
+			pending = unprocessed;
+		}
+	}
+
+	/**
+	 * Sleep a random time between 0 and BASE_DELAY * 2^attempt milliseconds (limited to MAX_DELAY)
+	 *
+	 * @param attempt Number of retries already done
+	 */
+	static void backoff(int attempt) {
+		long ceiling = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while retrying unprocessed items", e);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collection;
+
+/**
+ * BulkItem represents one item to add using the bulk methods of GeneralDB (addItems). Items without range key are stored in GeneralSK and items with range key are stored in GeneralDK.
+ *
+ */
+public class BulkItem {
+	
+	public String pk;
+	public String rk;
+	public Collection<Attribute> attributes;
+	
+	/*
+	 * Constructor used to specify an item identified by a single key
+	 */
+	public BulkItem(String pk, Collection<Attribute> attributes) {
+		this(pk, null, attributes);
+	}
+	
+	/*
+	 * Constructor used to specify an item identified by a composed key
+	 */
+	public BulkItem(String pk, String rk, Collection<Attribute> attributes) {
+		super();
+		this.pk = pk;
+		this.rk = rk;
+		this.attributes = attributes;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkItem [pk=" + pk + ", rk=" + rk + ", attributes=" + attributes + "]";
+	}
+	
+}
@@ -0,0 +1,55 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * BulkWriteResult is returned by the bulk methods of GeneralDB (addItems) with the number of items written and the items that could not be written after all the retries.
+ *
+ */
+public class BulkWriteResult {
+	
+	private final long written;
+	private final Collection<BulkItem> failed;
+	private final RuntimeException lastError;
+	
+	BulkWriteResult(long written, Collection<BulkItem> failed, RuntimeException lastError) {
+		this.written = written;
+		this.failed = Collections.unmodifiableCollection(failed);
+		this.lastError = lastError;
+	}
+
+	/**
+	 * Number of items written
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Items that could not be written, either because they were still unprocessed after all the retries or because their batch was rejected
+	 */
+	public Collection<BulkItem> getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Last error returned by DynamoDB for a rejected batch, or null when no batch was rejected
+	 */
+	public RuntimeException getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * True when all the items were written
+	 */
+	public boolean isSuccessful() {
+		return failed.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "BulkWriteResult [written=" + written + ", failed=" + failed.size() + "]";
+	}
+	
+}
@@ -0,0 +1,228 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * BulkWriter groups write requests per table in chunks of 25 and sends every chunk with BatchWriteItem on a bounded number of workers.
+ *
+ * Every key is always sent by the same worker (chosen by the hash of the key), and each worker sends its chunks one after another in the order they were filled.
+ * Repeated keys inside a chunk are coalesced keeping the last request, and a key repeated in a later chunk is written after the previous one,
+ * so the table ends with the same items a sequence of single writes would leave.
+ *
+ * At most two chunks per worker are in flight: add blocks the caller until one of them is written, so a stream of any size is written with constant memory.
+ *
+ * @param <T> Type of the caller's object associated to every request, returned when the request fails
+ */
+class BulkWriter<T> {
+
+	private final AmazonDynamoDB client;
+	// Single thread executors, each one sends the chunks of its keys in order
+	private final ExecutorService[] workers;
+	private final Semaphore inFlight;
+	// Chunks being filled, per worker and table
+	private final List<Map<String, LinkedHashMap<String, Pending<T>>>> chunks;
+	private final AtomicLong written = new AtomicLong();
+	private final Queue<T> failed = new ConcurrentLinkedQueue<T>();
+	private volatile RuntimeException lastError;
+	private BiConsumer<String, WriteRequest> onWritten;
+	private MetricsProbe probe = MetricsProbe.NONE;
+
+	private static class Pending<T> {
+		final WriteRequest request;
+		final T source;
+
+		Pending(WriteRequest request, T source) {
+			this.request = request;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * @param client DynamoDB client used to write
+	 * @param parallelism Maximum number of BatchWriteItem calls running at the same time
+	 */
+	BulkWriter(AmazonDynamoDB client, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be greater than 0");
+		}
+		this.client = client;
+		this.workers = new ExecutorService[parallelism];
+		this.chunks = new ArrayList<Map<String, LinkedHashMap<String, Pending<T>>>>(parallelism);
+		ThreadFactory threadFactory = Workers.threadFactory("generaldb-bulk");
+		for (int i = 0; i < parallelism; i++) {
+			workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+			chunks.add(new HashMap<String, LinkedHashMap<String, Pending<T>>>());
+		}
+		this.inFlight = new Semaphore(2 * parallelism);
+	}
+
+	/**
+	 * Define a callback called with every request after its chunk is sent (written or not), f.e to invalidate cached items
+	 */
+	void onWritten(BiConsumer<String, WriteRequest> callback) {
+		this.onWritten = callback;
+	}
+
+	/**
+	 * Define the probe measuring the BatchWriteItem calls
+	 */
+	void probe(MetricsProbe probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * Queue a write request. When the chunk of the table in the worker of the key is full it's sent.
+	 *
+	 * @param tableName Physical name of the table
+	 * @param request Put or delete request
+	 * @param source Caller's object returned in failed() if the request can't be written
+	 */
+	void add(String tableName, WriteRequest request, T source) {
+		String key = keyOf(request);
+		int worker = Math.floorMod(key.hashCode(), workers.length);
+		Map<String, LinkedHashMap<String, Pending<T>>> workerChunks = chunks.get(worker);
+		LinkedHashMap<String, Pending<T>> chunk = workerChunks.get(tableName);
+		if (chunk == null) {
+			chunk = new LinkedHashMap<String, Pending<T>>();
+			workerChunks.put(tableName, chunk);
+		}
+		// The same key can't appear twice in a BatchWriteItem call, the last request replaces the previous one
+		chunk.remove(key);
+		chunk.put(key, new Pending<T>(request, source));
+		if (chunk.size() == BatchWriter.MAX_BATCH_SIZE) {
+			workerChunks.remove(tableName);
+			submit(worker, tableName, chunk);
+		}
+	}
+
+	/**
+	 * Send the chunks not yet full and wait for all the workers to finish
+	 */
+	void finish() {
+		try {
+			for (int worker = 0; worker < workers.length; worker++) {
+				for (Map.Entry<String, LinkedHashMap<String, Pending<T>>> entry : chunks.get(worker).entrySet()) {
+					submit(worker, entry.getKey(), entry.getValue());
+				}
+				chunks.get(worker).clear();
+			}
+			for (ExecutorService executor : workers) {
+				executor.shutdown();
+			}
+			for (ExecutorService executor : workers) {
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+					// keep waiting for the chunks in flight
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while waiting for the bulk write", e);
+		} finally {
+			for (ExecutorService executor : workers) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Stop the workers without waiting. Used when the producer fails.
+	 */
+	void abort() {
+		for (int worker = 0; worker < workers.length; worker++) {
+			chunks.get(worker).clear();
+			workers[worker].shutdownNow();
+		}
+	}
+
+	long written() {
+		return written.get();
+	}
+
+	List<T> failed() {
+		return new ArrayList<T>(failed);
+	}
+
+	RuntimeException lastError() {
+		return lastError;
+	}
+
+	private void submit(int worker, final String tableName, final LinkedHashMap<String, Pending<T>> chunk) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while waiting for a bulk worker", e);
+		}
+		try {
+			workers[worker].execute(() -> {
+				try {
+					writeChunk(tableName, chunk);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	private void writeChunk(String tableName, LinkedHashMap<String, Pending<T>> chunk) {
+		List<WriteRequest> batch = new ArrayList<WriteRequest>(chunk.size());
+		for (Pending<T> pending : chunk.values()) {
+			batch.add(pending.request);
+		}
+		List<WriteRequest> unprocessed;
+		try {
+			unprocessed = BatchWriter.writeBatch(client, tableName, batch, probe);
+		} catch (RuntimeException e) {
+			notifyWritten(tableName, batch);
+			// The whole chunk was rejected (f.e a validation error), its items are reported as failed
+			lastError = e;
+			for (Pending<T> pending : chunk.values()) {
+				failed.add(pending.source);
+			}
+			return;
+		}
+		for (WriteRequest request : unprocessed) {
+			Pending<T> pending = chunk.get(keyOf(request));
+			if (pending != null) {
+				failed.add(pending.source);
+			}
+		}
+		written.addAndGet(batch.size() - unprocessed.size());
+		notifyWritten(tableName, batch);
+	}
+
+	private void notifyWritten(String tableName, List<WriteRequest> batch) {
+		if (onWritten != null) {
+			for (WriteRequest request : batch) {
+				onWritten.accept(tableName, request);
+			}
+		}
+	}
+
+	/**
+	 * Builds a string with the primary key values of the request
+	 */
+	static String keyOf(WriteRequest request) {
+		return GeneralDB.keyString(request.getPutRequest() != null ? request.getPutRequest().getItem() : request.getDeleteRequest().getKey());
+	}
+}
@@ -0,0 +1,281 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+/**
+ * ClientRegistry keeps one DynamoDB client per region and AWS profile for the whole process. All the GeneralDB instances created with the same region and profile share the client, its HTTP connection pool and its Table handles, so creating a GeneralDB is cheap.
+ *
+ * The connection pool of the clients is configured with the static fields below. Changes apply to the clients created after the change.
+ *
+ * Clients are created by the StorageBackend selected (DynamoDB by default, or the in-memory engine for tests and local runs). Changing the backend applies to the clients created after the change, call shutdown first to drop the existing ones.
+ *
+ * Clients are thread safe and stay open until close, shutdown or the shutdown hook is called.
+ *
+ * With lazy enabled (or the system property "com.moleculateam.aws.lazy" set to true) the client is built on its first call instead of by the constructor of GeneralDB, which keeps the start of short-lived processes fast.
+ * GeneralDB.warmUp builds it in the background, resolves the credentials and opens the connections before the first request.
+ *
+ */
+public class ClientRegistry {
+
+	public static int maxConnections = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+	public static long connectionTTL = ClientConfiguration.DEFAULT_CONNECTION_TTL;
+	public static long connectionMaxIdleMillis = ClientConfiguration.DEFAULT_CONNECTION_MAX_IDLE_MILLIS;
+	public static boolean tcpKeepAlive = true;
+	public static boolean lazy = Boolean.getBoolean("com.moleculateam.aws.lazy");
+
+	private static final Map<String, SharedClient> clients = new ConcurrentHashMap<String, SharedClient>();
+	private static volatile StorageBackend backend = "embedded".equalsIgnoreCase(System.getProperty("com.moleculateam.aws.backend")) ? StorageBackend.EMBEDDED : StorageBackend.DYNAMODB;
+	private static final Map<String, AWSCredentialsProvider> credentials = new ConcurrentHashMap<String, AWSCredentialsProvider>();
+	private static Thread shutdownHook;
+
+	/**
+	 * A DynamoDB client shared by all the GeneralDB instances of a region and profile, with the Table handles already created for every environment.
+	 * A lazy client is a proxy that builds the client of the backend on its first call.
+	 */
+	static class SharedClient {
+		final AmazonDynamoDB client;
+		final DynamoDB dynamoDB;
+		private final Map<String, Table> tables = new ConcurrentHashMap<String, Table>();
+		private final Regions region;
+		private final String profileName;
+		private final StorageBackend backend;
+		private final boolean lazy;
+		private volatile AmazonDynamoDB connected;
+		private volatile long connectMillis = -1;
+		private volatile long credentialsMillis = -1;
+		private volatile long tablesMillis = -1;
+		private volatile long readyMillis = -1;
+
+		/**
+		 * Client created by the caller
+		 */
+		SharedClient(AmazonDynamoDB client) {
+			this.client = client;
+			this.dynamoDB = new DynamoDB(client);
+			this.region = null;
+			this.profileName = null;
+			this.backend = null;
+			this.lazy = false;
+			this.connected = client;
+			this.connectMillis = 0;
+		}
+
+		/**
+		 * Client of the backend for the region and profile, built now or on its first call
+		 */
+		SharedClient(Regions region, String profileName, StorageBackend backend, boolean lazy) {
+			this.region = region;
+			this.profileName = profileName;
+			this.backend = backend;
+			this.lazy = lazy;
+			this.client = lazy ? lazyClient(this) : connect();
+			this.dynamoDB = new DynamoDB(client);
+		}
+
+		/**
+		 * Get the handle of the table (f.e "TEST-generalsk"). Handles are created once and reused.
+		 */
+		Table table(String tableName) {
+			return tables.computeIfAbsent(tableName, dynamoDB::getTable);
+		}
+
+		/**
+		 * The client of the backend, built the first time
+		 */
+		AmazonDynamoDB connect() {
+			AmazonDynamoDB current = connected;
+			if (current == null) {
+				synchronized (this) {
+					current = connected;
+					if (current == null) {
+						long start = System.nanoTime();
+						current = backend.connect(region, profileName);
+						connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+						connected = current;
+					}
+				}
+			}
+			return current;
+		}
+
+		/**
+		 * Build the client, resolve the credentials and describe the tables with parallel calls, opening at least as many connections as tables
+		 *
+		 * @param tableNames Physical names of the tables
+		 * @param connections Number of DescribeTable calls sent at the same time
+		 */
+		StartupTimings warmUp(String[] tableNames, int connections) {
+			AmazonDynamoDB real = connect();
+			if (credentialsMillis < 0) {
+				long start = System.nanoTime();
+				if (backend == StorageBackend.DYNAMODB) {
+					credentials(profileName).getCredentials();
+				}
+				credentialsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			}
+			long start = System.nanoTime();
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < Math.max(connections, tableNames.length); i++) {
+				final String tableName = tableNames[i % tableNames.length];
+				table(tableName);
+				tasks.add(() -> {
+					real.describeTable(tableName);
+					return null;
+				});
+			}
+			Workers.invokeAll(tasks.size(), tasks);
+			tablesMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			long loaded = APIStatus.loadTime > 0 ? APIStatus.loadTime : ManagementFactory.getRuntimeMXBean().getStartTime();
+			readyMillis = Math.max(0, System.currentTimeMillis() - loaded);
+			return timings();
+		}
+
+		StartupTimings timings() {
+			return new StartupTimings(lazy, connectMillis, credentialsMillis, tablesMillis, readyMillis);
+		}
+
+		/**
+		 * Shutdown the client, unless it's lazy and was never built
+		 */
+		void shutdown() {
+			AmazonDynamoDB current = connected;
+			if (current != null) {
+				current.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Proxy of the AmazonDynamoDB interface that builds the client on the first call
+	 */
+	private static AmazonDynamoDB lazyClient(final SharedClient shared) {
+		return (AmazonDynamoDB)Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(), new Class<?>[] { AmazonDynamoDB.class }, (proxy, method, args) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return "LazyAmazonDynamoDB [connected=" + (shared.connected != null) + "]";
+				}
+			}
+			if (method.getName().equals("shutdown") && method.getParameterCount() == 0) {
+				shared.shutdown();
+				return null;
+			}
+			try {
+				return method.invoke(shared.connect(), args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+	}
+
+	/**
+	 * Get the client shared for the region and profile specified, creating it the first time
+	 *
+	 * @param region The AWS region to connect (null to use the default region chain)
+	 * @param profileName Name of the AWS profile to use (null to use the default credentials chain)
+	 */
+	static SharedClient get(final Regions region, final String profileName) {
+		return clients.computeIfAbsent(key(region, profileName), key -> new SharedClient(region, profileName, backend, lazy));
+	}
+
+	/**
+	 * Select the backend of the clients created from now on
+	 */
+	public static void setBackend(StorageBackend backend) {
+		if (backend == null) {
+			throw new IllegalArgumentException("The backend is mandatory");
+		}
+		ClientRegistry.backend = backend;
+	}
+
+	public static StorageBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Shutdown the client of the region and profile specified, closing its connections. The GeneralDB instances created after this call will use a new client.
+	 *
+	 * @param region The AWS region of the client
+	 * @param profileName Name of the AWS profile of the client (null for the default credentials chain)
+	 */
+	public static void close(Regions region, String profileName) {
+		SharedClient shared = clients.remove(key(region, profileName));
+		if (shared != null) {
+			shared.shutdown();
+		}
+	}
+
+	/**
+	 * Shutdown all the clients, closing their connections
+	 */
+	public static void shutdown() {
+		for (String key : clients.keySet()) {
+			SharedClient shared = clients.remove(key);
+			if (shared != null) {
+				shared.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Register a JVM shutdown hook calling shutdown so the connections are drained when the process ends. Calling it more than once has no effect.
+	 */
+	public static synchronized void registerShutdownHook() {
+		if (shutdownHook == null) {
+			shutdownHook = new Thread(ClientRegistry::shutdown, "generaldb-shutdown");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+	}
+
+	private static String key(Regions region, String profileName) {
+		return (region == null ? "" : region.getName()) + "|" + (profileName == null ? "" : profileName);
+	}
+
+	/**
+	 * Credentials provider of the profile (null for the default credentials chain), shared by the clients and the warm-up so the credentials resolved are reused
+	 */
+	static AWSCredentialsProvider credentials(String profileName) {
+		if (profileName == null) {
+			return DefaultAWSCredentialsProviderChain.getInstance();
+		}
+		return credentials.computeIfAbsent(profileName, ProfileCredentialsProvider::new);
+	}
+
+	static AmazonDynamoDB build(Regions region, String profileName) {
+		ClientConfiguration configuration = new ClientConfiguration()
+				.withMaxConnections(maxConnections)
+				.withConnectionTTL(connectionTTL)
+				.withConnectionMaxIdleMillis(connectionMaxIdleMillis)
+				.withTcpKeepAlive(tcpKeepAlive);
+		AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+				.withClientConfiguration(configuration)
+				.withRequestHandlers(new MetricsProbe.ThrottleHandler())
+				.withCredentials(credentials(profileName));
+		if (region != null) {
+			builder = builder.withRegion(region);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,18 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * CopyListener receives the progress of the copy methods of GeneralDB (copy_SK_ToTarget and copyToTarget).
+ *
+ * The copy runs on several workers so progress can be called concurrently from different threads.
+ */
+public interface CopyListener {
+
+	/**
+	 * Called every time a group of items has been written into the target table
+	 *
+	 * @param tableName Physical name of the table being copied (f.e "TEST-generalsk")
+	 * @param segment Scan segment that wrote the items
+	 * @param copied Total number of items copied so far by all the segments
+	 */
+	void progress(String tableName, int segment, long copied);
+}
@@ -0,0 +1,221 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * DeltaSync makes a target table equal to a source table writing only the differences.
+ *
+ * The target is scanned first in parallel segments, keeping the key and a 64 bit hash of the attributes of every item in memory. Then the source is scanned the same way:
+ * the items whose key isn't in the target are inserted and the items with a different hash are overwritten, using BatchWriteItem. The keys of the target not found in the source can be deleted at the end.
+ *
+ */
+class DeltaSync {
+
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	/**
+	 * Write into the target table the items of the source table that are new or different
+	 *
+	 * @param source DynamoDB client of the source
+	 * @param sourceTable Physical name of the source table
+	 * @param target DynamoDB client of the target
+	 * @param targetTable Physical name of the target table
+	 * @param composedKey True for tables with generalpk and generalrk, false for tables with generalkey
+	 * @param deleteMissing True to delete the items of the target that don't exist in the source
+	 * @param workers Number of scan segments (and workers) used on each table
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @param sourceProbe Probe measuring the scan of the source
+	 * @param targetProbe Probe measuring the scan of the target
+	 * @param writeProbe Probe measuring the writes into the target
+	 */
+	static SyncResult sync(AmazonDynamoDB source, String sourceTable, final AmazonDynamoDB target, final String targetTable, final boolean composedKey, boolean deleteMissing, int workers, final CopyListener listener,
+			MetricsProbe sourceProbe, MetricsProbe targetProbe, final MetricsProbe writeProbe) {
+		final Map<String, Long> targetHashes = new ConcurrentHashMap<String, Long>();
+		ParallelScan.run(target, targetTable, workers, (segment, items, lastKey) -> {
+			for (Map<String, AttributeValue> item : items) {
+				targetHashes.put(key(item, composedKey), hash(item));
+			}
+		}, targetProbe);
+
+		final LongAdder inserted = new LongAdder();
+		final LongAdder updated = new LongAdder();
+		final LongAdder unchanged = new LongAdder();
+		final AtomicLong written = new AtomicLong();
+		ParallelScan.run(source, sourceTable, workers, (segment, items, lastKey) -> {
+			List<WriteRequest> writes = new ArrayList<WriteRequest>();
+			for (Map<String, AttributeValue> item : items) {
+				Long previous = targetHashes.remove(key(item, composedKey));
+				if (previous == null) {
+					inserted.increment();
+				} else if (previous != hash(item)) {
+					updated.increment();
+				} else {
+					unchanged.increment();
+					continue;
+				}
+				writes.add(new WriteRequest(new PutRequest(item)));
+			}
+			write(target, targetTable, writes, segment, written, listener, writeProbe);
+		}, sourceProbe);
+
+		long deleted = 0;
+		if (deleteMissing && !targetHashes.isEmpty()) {
+			final List<WriteRequest> deletes = new ArrayList<WriteRequest>(targetHashes.size());
+			for (String key : targetHashes.keySet()) {
+				deletes.add(new WriteRequest(new DeleteRequest(keyOf(key, composedKey))));
+			}
+			// Every worker deletes a slice of the keys, in groups of MAX_BATCH_SIZE
+			int slice = BatchWriter.MAX_BATCH_SIZE * (int)Math.ceil(deletes.size() / (double)(BatchWriter.MAX_BATCH_SIZE * workers));
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers);
+			for (int from = 0; from < deletes.size(); from += slice) {
+				final int segment = tasks.size();
+				final List<WriteRequest> keys = deletes.subList(from, Math.min(from + slice, deletes.size()));
+				tasks.add(() -> {
+					write(target, targetTable, keys, segment, written, listener, writeProbe);
+					return null;
+				});
+			}
+			Workers.invokeAll(workers, tasks);
+			deleted = deletes.size();
+		}
+		return new SyncResult(inserted.sum(), updated.sum(), deleted, unchanged.sum());
+	}
+
+	private static void write(AmazonDynamoDB client, String tableName, List<WriteRequest> requests, int segment, AtomicLong written, CopyListener listener, MetricsProbe probe) {
+		if (requests.isEmpty()) {
+			return;
+		}
+		List<WriteRequest> failed = BatchWriter.write(client, tableName, requests, probe);
+		if (!failed.isEmpty()) {
+			throw new AmazonClientException(failed.size()+" items could not be synchronized into "+tableName);
+		}
+		long total = written.addAndGet(requests.size());
+		if (listener != null) {
+			listener.progress(tableName, segment, total);
+		}
+	}
+
+	/**
+	 * Key of the item as a string: generalkey, or generalpk and generalrk separated by \0
+	 */
+	private static String key(Map<String, AttributeValue> item, boolean composedKey) {
+		return composedKey ? item.get("generalpk").getS()+'\u0000'+item.get("generalrk").getS() : item.get("generalkey").getS();
+	}
+
+	private static Map<String, AttributeValue> keyOf(String key, boolean composedKey) {
+		Map<String, AttributeValue> keyAttributes = new HashMap<String, AttributeValue>();
+		if (composedKey) {
+			int separator = key.indexOf('\u0000');
+			keyAttributes.put("generalpk", new AttributeValue(key.substring(0, separator)));
+			keyAttributes.put("generalrk", new AttributeValue(key.substring(separator + 1)));
+		} else {
+			keyAttributes.put("generalkey", new AttributeValue(key));
+		}
+		return keyAttributes;
+	}
+
+	/**
+	 * Hash of the attributes of the item. It doesn't depend on the order of the attributes, of the map entries or of the set elements.
+	 */
+	static long hash(Map<String, AttributeValue> item) {
+		MessageDigest digest = DIGEST.get();
+		digest.reset();
+		update(digest, item);
+		return ByteBuffer.wrap(digest.digest()).getLong();
+	}
+
+	private static void update(MessageDigest digest, Map<String, AttributeValue> attributes) {
+		String[] names = attributes.keySet().toArray(new String[attributes.size()]);
+		Arrays.sort(names);
+		update(digest, names.length);
+		for (String name : names) {
+			update(digest, name);
+			update(digest, attributes.get(name));
+		}
+	}
+
+	private static void update(MessageDigest digest, AttributeValue value) {
+		if (value.getS() != null) {
+			digest.update((byte)'S');
+			update(digest, value.getS());
+		} else if (value.getN() != null) {
+			digest.update((byte)'N');
+			update(digest, value.getN());
+		} else if (value.getB() != null) {
+			digest.update((byte)'B');
+			update(digest, value.getB());
+		} else if (value.getBOOL() != null) {
+			digest.update((byte)(value.getBOOL() ? 'T' : 'F'));
+		} else if (value.getSS() != null || value.getNS() != null) {
+			digest.update((byte)(value.getSS() != null ? 's' : 'n'));
+			String[] elements = (value.getSS() != null ? value.getSS() : value.getNS()).toArray(new String[0]);
+			Arrays.sort(elements);
+			update(digest, elements.length);
+			for (String element : elements) {
+				update(digest, element);
+			}
+		} else if (value.getBS() != null) {
+			digest.update((byte)'b');
+			ByteBuffer[] elements = value.getBS().toArray(new ByteBuffer[0]);
+			Arrays.sort(elements);
+			update(digest, elements.length);
+			for (ByteBuffer element : elements) {
+				update(digest, element);
+			}
+		} else if (value.getL() != null) {
+			digest.update((byte)'L');
+			update(digest, value.getL().size());
+			for (AttributeValue element : value.getL()) {
+				update(digest, element);
+			}
+		} else if (value.getM() != null) {
+			digest.update((byte)'M');
+			update(digest, value.getM());
+		} else {
+			digest.update((byte)'0');
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		update(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void update(MessageDigest digest, ByteBuffer b) {
+		update(digest, b.remaining());
+		digest.update(b.duplicate());
+	}
+
+	private static void update(MessageDigest digest, int n) {
+		digest.update((byte)(n >>> 24));
+		digest.update((byte)(n >>> 16));
+		digest.update((byte)(n >>> 8));
+		digest.update((byte)n);
+	}
+}
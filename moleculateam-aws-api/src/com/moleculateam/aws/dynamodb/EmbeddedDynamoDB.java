@@ -0,0 +1,957 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsResult;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * EmbeddedDynamoDB is an in-process storage engine for the GeneralSK and GeneralDK tables, used through the AmazonDynamoDB interface so GeneralDB works the same as with DynamoDB, without AWS.
+ *
+ * Items with a generalkey (GeneralSK) are kept in a concurrent hash map. Items with generalpk and generalrk (GeneralDK) are kept in a concurrent sorted map per partition, ordered by range key as DynamoDB does (UTF-8 bytes, the order of the code points), so queries are range scans over the partition.
+ * They are also indexed by generalrk, ordered by generalpk, as the index GeneralDB.RANGE_KEY_INDEX that every GeneralDK table has (it projects only the keys).
+ * Tables are created on the first write, whatever their name (f.e "TEST-generalsk").
+ *
+ * The calls used by GeneralDB are supported: PutItem, GetItem, DeleteItem, UpdateItem, Query (key condition on generalpk and generalrk), Scan (with segments), BatchWriteItem, BatchGetItem, TransactWriteItems and DescribeTable,
+ * with projections, pages of up to 1 MB, the DynamoDB limits of item size and batch size, and ConsumedCapacity estimated from the size of the items.
+ * Writes accept the condition expressions built by GeneralDB (see EmbeddedExpressions) and are applied atomically per item. Transactions are run one at a time: all their conditions are checked before writing any item,
+ * but a write outside a transaction isn't rejected with TransactionConflict. Filter expressions and the legacy conditional parameters throw UnsupportedOperationException.
+ *
+ * It's meant for tests, local runs and benchmarks.
+ *
+ */
+public class EmbeddedDynamoDB extends AbstractAmazonDynamoDB {
+
+	static final int MAX_ITEM_SIZE = 400 * 1024;
+	static final int MAX_PAGE_SIZE = 1024 * 1024;
+
+	private static final Pattern KEY_CONDITION = Pattern.compile("\\s*([#\\w]+)\\s*=\\s*(:\\w+)\\s*(?:(?i:and)\\s+(.+))?");
+	private static final Pattern BEGINS_WITH = Pattern.compile("\\s*begins_with\\s*\\(\\s*([#\\w]+)\\s*,\\s*(:\\w+)\\s*\\)\\s*");
+	private static final Pattern BETWEEN = Pattern.compile("\\s*([#\\w]+)\\s+(?i:between)\\s+(:\\w+)\\s+(?i:and)\\s+(:\\w+)\\s*");
+	private static final Pattern COMPARISON = Pattern.compile("\\s*([#\\w]+)\\s*(<=|>=|=|<|>)\\s*(:\\w+)\\s*");
+	// String.compareTo compares UTF-16 chars, which sorts the characters outside the BMP before U+E000-U+FFFF
+	private static final Comparator<String> KEY_ORDER = PartitionQuery::compareRangeKeys;
+
+	private final Map<String, EmbeddedTable> tables = new ConcurrentHashMap<String, EmbeddedTable>();
+	private final Object transactionLock = new Object();
+
+	/**
+	 * Items of a table: the single key items by generalkey and the composed key items by generalpk and generalrk
+	 */
+	private static class EmbeddedTable {
+		final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<String, Map<String, AttributeValue>>();
+		final ConcurrentHashMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>> partitions = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>>();
+		final ConcurrentHashMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>> rangeKeys = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Map<String, AttributeValue>>>();
+		// Keys of items and partitions in order for the scans, changed inside the compute of the key
+		final ConcurrentSkipListSet<String> itemKeys = new ConcurrentSkipListSet<String>();
+		final ConcurrentSkipListSet<String> partitionKeys = new ConcurrentSkipListSet<String>();
+
+		/**
+		 * Add the item to the index by range key. It's called inside the compute of its partition, so the index of a key is changed by one thread at a time.
+		 */
+		void index(String pk, String rk, Map<String, AttributeValue> item) {
+			rangeKeys.compute(rk, (key, index) -> {
+				if (index == null) {
+					index = new ConcurrentSkipListMap<String, Map<String, AttributeValue>>(KEY_ORDER);
+				}
+				index.put(pk, item);
+				return index;
+			});
+		}
+
+		void unindex(String pk, String rk) {
+			rangeKeys.computeIfPresent(rk, (key, index) -> {
+				index.remove(pk);
+				return index.isEmpty() ? null : index;
+			});
+		}
+
+		Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+			String generalkey = string(key, "generalkey");
+			if (generalkey != null) {
+				return items.get(generalkey);
+			}
+			NavigableMap<String, Map<String, AttributeValue>> partition = partitions.get(partitionKey(key));
+			return partition == null ? null : partition.get(rangeKey(key));
+		}
+
+		Map<String, AttributeValue> put(Map<String, AttributeValue> item) {
+			final List<Map<String, AttributeValue>> previous = new ArrayList<Map<String, AttributeValue>>(1);
+			String generalkey = string(item, "generalkey");
+			if (generalkey != null) {
+				items.compute(generalkey, (key, current) -> {
+					previous.add(current);
+					itemKeys.add(key);
+					return item;
+				});
+				return previous.get(0);
+			}
+			final String rk = rangeKey(item);
+			// The partition is changed inside compute so a concurrent delete can't drop it while it's written
+			partitions.compute(partitionKey(item), (pk, partition) -> {
+				if (partition == null) {
+					partition = new ConcurrentSkipListMap<String, Map<String, AttributeValue>>(KEY_ORDER);
+					partitionKeys.add(pk);
+				}
+				previous.add(partition.put(rk, item));
+				index(pk, rk, item);
+				return partition;
+			});
+			return previous.get(0);
+		}
+
+		/**
+		 * Replace atomically the item with the key by the result of the function, which receives the current item (null when it doesn't exist) and returns null to delete it
+		 *
+		 * @return The previous item
+		 */
+		Map<String, AttributeValue> compute(Map<String, AttributeValue> key, UnaryOperator<Map<String, AttributeValue>> function) {
+			final List<Map<String, AttributeValue>> previous = new ArrayList<Map<String, AttributeValue>>(1);
+			String generalkey = string(key, "generalkey");
+			if (generalkey != null) {
+				items.compute(generalkey, (k, item) -> {
+					previous.add(item);
+					Map<String, AttributeValue> next = function.apply(item);
+					if (next == null) {
+						itemKeys.remove(k);
+					} else {
+						itemKeys.add(k);
+					}
+					return next;
+				});
+				return previous.get(0);
+			}
+			final String rk = rangeKey(key);
+			partitions.compute(partitionKey(key), (pk, partition) -> {
+				if (partition == null) {
+					partition = new ConcurrentSkipListMap<String, Map<String, AttributeValue>>(KEY_ORDER);
+				}
+				Map<String, AttributeValue> item = partition.get(rk);
+				previous.add(item);
+				Map<String, AttributeValue> next = function.apply(item);
+				if (next == null) {
+					if (partition.remove(rk) != null) {
+						unindex(pk, rk);
+					}
+				} else {
+					partition.put(rk, next);
+					index(pk, rk, next);
+				}
+				return partition(pk, partition);
+			});
+			return previous.get(0);
+		}
+
+		Map<String, AttributeValue> remove(Map<String, AttributeValue> key) {
+			final List<Map<String, AttributeValue>> previous = new ArrayList<Map<String, AttributeValue>>(1);
+			String generalkey = string(key, "generalkey");
+			if (generalkey != null) {
+				items.computeIfPresent(generalkey, (k, item) -> {
+					previous.add(item);
+					itemKeys.remove(k);
+					return null;
+				});
+				return previous.isEmpty() ? null : previous.get(0);
+			}
+			final String rk = rangeKey(key);
+			partitions.computeIfPresent(partitionKey(key), (pk, partition) -> {
+				Map<String, AttributeValue> item = partition.remove(rk);
+				if (item != null) {
+					unindex(pk, rk);
+				}
+				previous.add(item);
+				return partition(pk, partition);
+			});
+			return previous.isEmpty() ? null : previous.get(0);
+		}
+
+		/**
+		 * Partition to keep after a change: null (and its key removed) when it's empty
+		 */
+		private ConcurrentSkipListMap<String, Map<String, AttributeValue>> partition(String pk, ConcurrentSkipListMap<String, Map<String, AttributeValue>> partition) {
+			if (partition.isEmpty()) {
+				partitionKeys.remove(pk);
+				return null;
+			}
+			partitionKeys.add(pk);
+			return partition;
+		}
+
+		long size() {
+			long size = items.size();
+			for (NavigableMap<String, Map<String, AttributeValue>> partition : partitions.values()) {
+				size += partition.size();
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Number of items of the table (f.e "TEST-generaldk")
+	 */
+	public long getItemCount(String tableName) {
+		EmbeddedTable table = tables.get(tableName);
+		return table == null ? 0 : table.size();
+	}
+
+	/**
+	 * Remove all the tables and their items
+	 */
+	public void clear() {
+		tables.clear();
+	}
+
+	@Override
+	public PutItemResult putItem(PutItemRequest request) {
+		if (request.getExpected() != null) {
+			throw new UnsupportedOperationException("Expected is not supported by EmbeddedDynamoDB, use ConditionExpression");
+		}
+		final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(request.getItem());
+		long size = size(item);
+		if (size > MAX_ITEM_SIZE) {
+			throw validation("Item size has exceeded the maximum allowed size");
+		}
+		final String condition = request.getConditionExpression();
+		Map<String, AttributeValue> previous;
+		if (condition == null) {
+			previous = table(request.getTableName()).put(item);
+		} else {
+			previous = table(request.getTableName()).compute(item, current -> {
+				check(condition, request.getExpressionAttributeNames(), request.getExpressionAttributeValues(), current);
+				return item;
+			});
+		}
+		return new PutItemResult()
+				.withAttributes(ReturnValue.ALL_OLD.toString().equals(request.getReturnValues()) ? previous : null)
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), writeUnits(size, previous)));
+	}
+
+	@Override
+	public GetItemResult getItem(GetItemRequest request) {
+		EmbeddedTable table = tables.get(request.getTableName());
+		Map<String, AttributeValue> item = table == null ? null : table.get(request.getKey());
+		return new GetItemResult()
+				.withItem(item == null ? null : project(item, request.getProjectionExpression(), request.getExpressionAttributeNames()))
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), readUnits(item == null ? 0 : size(item), request.getConsistentRead())));
+	}
+
+	@Override
+	public DeleteItemResult deleteItem(DeleteItemRequest request) {
+		if (request.getExpected() != null) {
+			throw new UnsupportedOperationException("Expected is not supported by EmbeddedDynamoDB, use ConditionExpression");
+		}
+		final String condition = request.getConditionExpression();
+		Map<String, AttributeValue> previous;
+		if (condition == null) {
+			EmbeddedTable table = tables.get(request.getTableName());
+			previous = table == null ? null : table.remove(request.getKey());
+		} else {
+			previous = table(request.getTableName()).compute(request.getKey(), current -> {
+				check(condition, request.getExpressionAttributeNames(), request.getExpressionAttributeValues(), current);
+				return null;
+			});
+		}
+		return new DeleteItemResult()
+				.withAttributes(ReturnValue.ALL_OLD.toString().equals(request.getReturnValues()) ? previous : null)
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), writeUnits(0, previous)));
+	}
+
+	@Override
+	public UpdateItemResult updateItem(UpdateItemRequest request) {
+		if (request.getExpected() != null || request.getAttributeUpdates() != null) {
+			throw new UnsupportedOperationException("Only UpdateExpression updates are supported by EmbeddedDynamoDB");
+		}
+		final Map<String, AttributeValue> key = keyOf(request.getKey());
+		final Map<String, String> names = request.getExpressionAttributeNames();
+		final Map<String, AttributeValue> values = request.getExpressionAttributeValues();
+		final Set<String> updated = new HashSet<String>();
+		final List<Map<String, AttributeValue>> next = new ArrayList<Map<String, AttributeValue>>(1);
+		Map<String, AttributeValue> previous = table(request.getTableName()).compute(key, current -> {
+			if (request.getConditionExpression() != null) {
+				check(request.getConditionExpression(), names, values, current);
+			}
+			Map<String, AttributeValue> item = update(request.getUpdateExpression(), names, values, key, current, updated);
+			next.add(item);
+			return item;
+		});
+		Map<String, AttributeValue> item = next.get(0);
+
+		Map<String, AttributeValue> returned = null;
+		String returnValues = request.getReturnValues() == null ? ReturnValue.NONE.toString() : request.getReturnValues();
+		if (ReturnValue.ALL_NEW.toString().equals(returnValues)) {
+			returned = item;
+		} else if (ReturnValue.ALL_OLD.toString().equals(returnValues)) {
+			returned = previous;
+		} else if (ReturnValue.UPDATED_NEW.toString().equals(returnValues)) {
+			returned = EmbeddedExpressions.select(item, updated);
+		} else if (ReturnValue.UPDATED_OLD.toString().equals(returnValues)) {
+			returned = previous == null ? null : EmbeddedExpressions.select(previous, updated);
+		}
+		return new UpdateItemResult()
+				.withAttributes(returned == null ? null : new HashMap<String, AttributeValue>(returned))
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), writeUnits(size(item), previous)));
+	}
+
+	@Override
+	public TransactWriteItemsResult transactWriteItems(TransactWriteItemsRequest request) {
+		List<TransactWriteItem> actions = request.getTransactItems();
+		if (actions == null || actions.isEmpty() || actions.size() > WriteTransaction.MAX_ACTIONS) {
+			throw validation("The transaction must have between 1 and "+WriteTransaction.MAX_ACTIONS+" actions");
+		}
+		Set<List<Object>> keys = new HashSet<List<Object>>();
+		for (TransactWriteItem action : actions) {
+			if (!keys.add(Arrays.<Object>asList(tableName(action), keyOf(key(action))))) {
+				throw validation("Transaction request cannot include multiple operations on one item");
+			}
+		}
+
+		Map<String, Double> units = new HashMap<String, Double>();
+		synchronized (transactionLock) {
+			// The conditions of all the actions are checked, and the new items built, before writing any of them
+			List<CancellationReason> reasons = new ArrayList<CancellationReason>(actions.size());
+			List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(actions.size());
+			boolean cancelled = false;
+			for (TransactWriteItem action : actions) {
+				EmbeddedTable table = tables.get(tableName(action));
+				Map<String, AttributeValue> key = keyOf(key(action));
+				Map<String, AttributeValue> current = table == null ? null : table.get(key);
+				String condition = null;
+				Map<String, String> names = null;
+				Map<String, AttributeValue> values = null;
+				Map<String, AttributeValue> item = current;
+				if (action.getPut() != null) {
+					condition = action.getPut().getConditionExpression();
+					names = action.getPut().getExpressionAttributeNames();
+					values = action.getPut().getExpressionAttributeValues();
+					item = new HashMap<String, AttributeValue>(action.getPut().getItem());
+					if (size(item) > MAX_ITEM_SIZE) {
+						throw validation("Item size has exceeded the maximum allowed size");
+					}
+				} else if (action.getDelete() != null) {
+					condition = action.getDelete().getConditionExpression();
+					names = action.getDelete().getExpressionAttributeNames();
+					values = action.getDelete().getExpressionAttributeValues();
+					item = null;
+				} else if (action.getUpdate() != null) {
+					condition = action.getUpdate().getConditionExpression();
+					names = action.getUpdate().getExpressionAttributeNames();
+					values = action.getUpdate().getExpressionAttributeValues();
+					item = update(action.getUpdate().getUpdateExpression(), names, values, key, current, new HashSet<String>());
+				} else {
+					condition = action.getConditionCheck().getConditionExpression();
+					names = action.getConditionCheck().getExpressionAttributeNames();
+					values = action.getConditionCheck().getExpressionAttributeValues();
+				}
+				if (condition != null && !EmbeddedExpressions.matches(condition, names, values, current)) {
+					reasons.add(new CancellationReason().withCode("ConditionalCheckFailed").withMessage("The conditional request failed"));
+					cancelled = true;
+				} else {
+					reasons.add(new CancellationReason().withCode("None"));
+				}
+				items.add(item);
+				units.merge(tableName(action), 2 * writeUnits(item == null ? 0 : size(item), current), Double::sum);
+			}
+			if (cancelled) {
+				List<String> codes = new ArrayList<String>();
+				for (CancellationReason reason : reasons) {
+					codes.add(reason.getCode());
+				}
+				TransactionCanceledException exception = new TransactionCanceledException("Transaction cancelled, please refer cancellation reasons for specific reasons "+codes);
+				exception.setCancellationReasons(reasons);
+				throw clientError(exception, "TransactionCanceledException");
+			}
+			for (int i = 0; i < actions.size(); i++) {
+				TransactWriteItem action = actions.get(i);
+				if (action.getConditionCheck() != null) {
+					continue;
+				}
+				EmbeddedTable table = table(tableName(action));
+				if (items.get(i) == null) {
+					table.remove(key(action));
+				} else {
+					table.put(items.get(i));
+				}
+			}
+		}
+
+		List<ConsumedCapacity> consumed = new ArrayList<ConsumedCapacity>();
+		for (Map.Entry<String, Double> table : units.entrySet()) {
+			consumed.add(consumed(request.getReturnConsumedCapacity(), table.getKey(), table.getValue()));
+		}
+		return new TransactWriteItemsResult().withConsumedCapacity(returns(request.getReturnConsumedCapacity()) ? consumed : null);
+	}
+
+	private static String tableName(TransactWriteItem action) {
+		if (action.getPut() != null) {
+			return action.getPut().getTableName();
+		}
+		if (action.getDelete() != null) {
+			return action.getDelete().getTableName();
+		}
+		if (action.getUpdate() != null) {
+			return action.getUpdate().getTableName();
+		}
+		if (action.getConditionCheck() != null) {
+			return action.getConditionCheck().getTableName();
+		}
+		throw validation("The transaction action must have one of Put, Delete, Update or ConditionCheck");
+	}
+
+	private static Map<String, AttributeValue> key(TransactWriteItem action) {
+		if (action.getPut() != null) {
+			return action.getPut().getItem();
+		}
+		if (action.getDelete() != null) {
+			return action.getDelete().getKey();
+		}
+		return action.getUpdate() != null ? action.getUpdate().getKey() : action.getConditionCheck().getKey();
+	}
+
+	/**
+	 * Copy of the item (or of its key when it doesn't exist) with the update expression applied
+	 */
+	private static Map<String, AttributeValue> update(String expression, Map<String, String> names, Map<String, AttributeValue> values, Map<String, AttributeValue> key, Map<String, AttributeValue> current, Set<String> updated) {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(current == null ? key : current);
+		EmbeddedExpressions.update(expression, names, values, item, updated);
+		if (size(item) > MAX_ITEM_SIZE) {
+			throw validation("Item size to update has exceeded the maximum allowed size");
+		}
+		return item;
+	}
+
+	/**
+	 * Tables exist from their first write, so every table is described as ACTIVE with its number of items. GeneralDK tables have the index GeneralDB.RANGE_KEY_INDEX.
+	 */
+	@Override
+	public DescribeTableResult describeTable(DescribeTableRequest request) {
+		return new DescribeTableResult().withTable(describe(request.getTableName()));
+	}
+
+	/**
+	 * The indexes of the tables are fixed, so the changes are ignored and the table is described as it is
+	 */
+	@Override
+	public UpdateTableResult updateTable(UpdateTableRequest request) {
+		return new UpdateTableResult().withTableDescription(describe(request.getTableName()));
+	}
+
+	private TableDescription describe(String tableName) {
+		TableDescription description = new TableDescription()
+				.withTableName(tableName)
+				.withTableStatus(TableStatus.ACTIVE)
+				.withItemCount(getItemCount(tableName));
+		if (tableName.endsWith("generaldk")) {
+			description.withGlobalSecondaryIndexes(new GlobalSecondaryIndexDescription()
+					.withIndexName(GeneralDB.RANGE_KEY_INDEX)
+					.withKeySchema(new KeySchemaElement("generalrk", KeyType.HASH), new KeySchemaElement("generalpk", KeyType.RANGE))
+					.withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY))
+					.withIndexStatus(IndexStatus.ACTIVE));
+		}
+		return description;
+	}
+
+	@Override
+	public QueryResult query(QueryRequest request) {
+		if (request.getFilterExpression() != null || request.getKeyConditions() != null || request.getQueryFilter() != null) {
+			throw new UnsupportedOperationException("Only KeyConditionExpression queries are supported by EmbeddedDynamoDB");
+		}
+		// The table is queried by generalpk, sorted by generalrk, and the index by generalrk, sorted by generalpk
+		boolean index = request.getIndexName() != null;
+		if (index && (!GeneralDB.RANGE_KEY_INDEX.equals(request.getIndexName()) || !request.getTableName().endsWith("generaldk"))) {
+			throw validation("The table does not have the specified index: "+request.getIndexName());
+		}
+		String hashKey = index ? "generalrk" : "generalpk";
+		String sortKey = index ? "generalpk" : "generalrk";
+		Map<String, String> names = request.getExpressionAttributeNames();
+		Map<String, AttributeValue> values = request.getExpressionAttributeValues();
+		Matcher keyCondition = KEY_CONDITION.matcher(request.getKeyConditionExpression());
+		if (!keyCondition.matches() || !hashKey.equals(name(keyCondition.group(1), names))) {
+			throw validation("Unsupported key condition: "+request.getKeyConditionExpression());
+		}
+
+		EmbeddedTable table = tables.get(request.getTableName());
+		NavigableMap<String, Map<String, AttributeValue>> partition = table == null ? null : (index ? table.rangeKeys : table.partitions).get(value(keyCondition.group(2), values));
+		if (partition == null) {
+			partition = Collections.emptyNavigableMap();
+		}
+		if (keyCondition.group(3) != null) {
+			partition = range(partition, keyCondition.group(3), names, values, sortKey);
+		}
+		if (Boolean.FALSE.equals(request.getScanIndexForward())) {
+			partition = partition.descendingMap();
+		}
+		if (request.getExclusiveStartKey() != null) {
+			partition = partition.tailMap(index ? partitionKey(request.getExclusiveStartKey()) : rangeKey(request.getExclusiveStartKey()), false);
+		}
+
+		Page page = new Page(request.getLimit(), Select.COUNT.toString().equals(request.getSelect()), request.getProjectionExpression(), names);
+		if (index) {
+			// The index only projects the keys
+			final NavigableMap<String, Map<String, AttributeValue>> selected = partition;
+			page.addAll(() -> selected.values().stream().map(EmbeddedDynamoDB::keyOf).iterator());
+		} else {
+			page.addAll(partition.values());
+		}
+		return new QueryResult()
+				.withItems(page.items)
+				.withCount(page.count)
+				.withScannedCount(page.count)
+				.withLastEvaluatedKey(page.lastKey)
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), readUnits(page.bytes, request.getConsistentRead())));
+	}
+
+	@Override
+	public ScanResult scan(ScanRequest request) {
+		if (request.getIndexName() != null || request.getFilterExpression() != null || request.getScanFilter() != null) {
+			throw new UnsupportedOperationException("Only full table scans are supported by EmbeddedDynamoDB");
+		}
+		int segment = request.getSegment() == null ? 0 : request.getSegment();
+		int totalSegments = request.getTotalSegments() == null ? 1 : request.getTotalSegments();
+		Map<String, AttributeValue> startKey = request.getExclusiveStartKey();
+		Page page = new Page(request.getLimit(), Select.COUNT.toString().equals(request.getSelect()), request.getProjectionExpression(), request.getExpressionAttributeNames());
+
+		// Single key items are returned first, then the partitions, both in key order
+		EmbeddedTable table = tables.get(request.getTableName());
+		if (table != null) {
+			String startItem = startKey == null ? null : string(startKey, "generalkey");
+			if (startKey == null || startItem != null) {
+				for (String key : startItem == null ? table.itemKeys : table.itemKeys.tailSet(startItem, false)) {
+					if (!inSegment(key, segment, totalSegments)) {
+						continue;
+					}
+					Map<String, AttributeValue> item = table.items.get(key);
+					if (item != null && !page.add(item)) {
+						break;
+					}
+				}
+			}
+			String startPartition = startKey == null || startItem != null ? null : partitionKey(startKey);
+			NavigableSet<String> partitions = startPartition == null ? table.partitionKeys : table.partitionKeys.tailSet(startPartition, true);
+			for (Iterator<String> keys = partitions.iterator(); keys.hasNext() && !page.full; ) {
+				String pk = keys.next();
+				NavigableMap<String, Map<String, AttributeValue>> partition = inSegment(pk, segment, totalSegments) ? table.partitions.get(pk) : null;
+				if (partition == null) {
+					continue;
+				}
+				if (pk.equals(startPartition)) {
+					partition = partition.tailMap(rangeKey(startKey), false);
+				}
+				if (!page.addAll(partition.values())) {
+					break;
+				}
+			}
+		}
+		return new ScanResult()
+				.withItems(page.items)
+				.withCount(page.count)
+				.withScannedCount(page.count)
+				.withLastEvaluatedKey(page.lastKey)
+				.withConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getTableName(), readUnits(page.bytes, request.getConsistentRead())));
+	}
+
+	@Override
+	public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+		int requests = 0;
+		for (Map.Entry<String, List<WriteRequest>> table : request.getRequestItems().entrySet()) {
+			Set<Map<String, AttributeValue>> keys = new HashSet<Map<String, AttributeValue>>();
+			for (WriteRequest write : table.getValue()) {
+				Map<String, AttributeValue> item = write.getPutRequest() != null ? write.getPutRequest().getItem() : write.getDeleteRequest().getKey();
+				if (!keys.add(keyOf(item))) {
+					throw validation("Provided list of item keys contains duplicates");
+				}
+				if (write.getPutRequest() != null && size(item) > MAX_ITEM_SIZE) {
+					throw validation("Item size has exceeded the maximum allowed size");
+				}
+			}
+			requests += table.getValue().size();
+		}
+		if (requests > BatchWriter.MAX_BATCH_SIZE) {
+			throw validation("Too many items requested for the BatchWriteItem call");
+		}
+
+		List<ConsumedCapacity> consumed = new ArrayList<ConsumedCapacity>();
+		for (Map.Entry<String, List<WriteRequest>> table : request.getRequestItems().entrySet()) {
+			EmbeddedTable embeddedTable = table(table.getKey());
+			double units = 0;
+			for (WriteRequest write : table.getValue()) {
+				if (write.getPutRequest() != null) {
+					Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(write.getPutRequest().getItem());
+					units += writeUnits(size(item), embeddedTable.put(item));
+				} else {
+					units += writeUnits(0, embeddedTable.remove(write.getDeleteRequest().getKey()));
+				}
+			}
+			consumed.add(consumed(request.getReturnConsumedCapacity(), table.getKey(), units));
+		}
+		return new BatchWriteItemResult()
+				.withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap())
+				.withConsumedCapacity(returns(request.getReturnConsumedCapacity()) ? consumed : null);
+	}
+
+	@Override
+	public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+		int keys = 0;
+		for (KeysAndAttributes table : request.getRequestItems().values()) {
+			keys += table.getKeys().size();
+		}
+		if (keys > BatchReader.MAX_BATCH_SIZE) {
+			throw validation("Too many items requested for the BatchGetItem call");
+		}
+
+		Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<String, List<Map<String, AttributeValue>>>();
+		List<ConsumedCapacity> consumed = new ArrayList<ConsumedCapacity>();
+		for (Map.Entry<String, KeysAndAttributes> table : request.getRequestItems().entrySet()) {
+			EmbeddedTable embeddedTable = tables.get(table.getKey());
+			KeysAndAttributes keysAndAttributes = table.getValue();
+			List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+			double units = 0;
+			for (Map<String, AttributeValue> key : keysAndAttributes.getKeys()) {
+				Map<String, AttributeValue> item = embeddedTable == null ? null : embeddedTable.get(key);
+				if (item != null) {
+					items.add(project(item, keysAndAttributes.getProjectionExpression(), keysAndAttributes.getExpressionAttributeNames()));
+					units += readUnits(size(item), keysAndAttributes.getConsistentRead());
+				}
+			}
+			responses.put(table.getKey(), items);
+			consumed.add(consumed(request.getReturnConsumedCapacity(), table.getKey(), units));
+		}
+		return new BatchGetItemResult()
+				.withResponses(responses)
+				.withUnprocessedKeys(Collections.<String, KeysAndAttributes>emptyMap())
+				.withConsumedCapacity(returns(request.getReturnConsumedCapacity()) ? consumed : null);
+	}
+
+	@Override
+	public void shutdown() {
+		// Nothing to release, the items are kept until the instance is garbage collected
+	}
+
+	/**
+	 * Items of a Query or Scan page: at most limit items and 1 MB, like DynamoDB
+	 */
+	private static class Page {
+		final List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		final Integer limit;
+		final boolean countOnly;
+		final String projection;
+		final Map<String, String> names;
+		int count;
+		long bytes;
+		boolean full;
+		Map<String, AttributeValue> lastKey;
+
+		Page(Integer limit, boolean countOnly, String projection, Map<String, String> names) {
+			this.limit = limit;
+			this.countOnly = countOnly;
+			this.projection = projection;
+			this.names = names;
+		}
+
+		/**
+		 * Add the item, returns false when the page is full. Like DynamoDB, the last item of a full page is the last evaluated key even when there are no more items.
+		 */
+		boolean add(Map<String, AttributeValue> item) {
+			if (full) {
+				return false;
+			}
+			count++;
+			bytes += size(item);
+			if (!countOnly) {
+				items.add(project(item, projection, names));
+			}
+			if ((limit != null && count >= limit) || bytes >= MAX_PAGE_SIZE) {
+				full = true;
+				lastKey = keyOf(item);
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Add the items until the page is full, returns false when it's full
+		 */
+		boolean addAll(Iterable<Map<String, AttributeValue>> values) {
+			for (Map<String, AttributeValue> value : values) {
+				if (!add(value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private EmbeddedTable table(String tableName) {
+		return tables.computeIfAbsent(tableName, name -> new EmbeddedTable());
+	}
+
+	/**
+	 * Apply the sort key condition (begins_with, BETWEEN or a comparison) to the partition
+	 */
+	private static NavigableMap<String, Map<String, AttributeValue>> range(NavigableMap<String, Map<String, AttributeValue>> partition, String condition, Map<String, String> names, Map<String, AttributeValue> values, String sortKey) {
+		Matcher matcher;
+		if ((matcher = BEGINS_WITH.matcher(condition)).matches()) {
+			checkSortKey(matcher.group(1), names, sortKey);
+			String prefix = value(matcher.group(2), values);
+			String end = prefixEnd(prefix);
+			return end == null ? partition.tailMap(prefix, true) : partition.subMap(prefix, true, end, false);
+		}
+		if ((matcher = BETWEEN.matcher(condition)).matches()) {
+			checkSortKey(matcher.group(1), names, sortKey);
+			return partition.subMap(value(matcher.group(2), values), true, value(matcher.group(3), values), true);
+		}
+		if ((matcher = COMPARISON.matcher(condition)).matches()) {
+			checkSortKey(matcher.group(1), names, sortKey);
+			String rk = value(matcher.group(3), values);
+			switch (matcher.group(2)) {
+			case "=":
+				return partition.subMap(rk, true, rk, true);
+			case "<":
+				return partition.headMap(rk, false);
+			case "<=":
+				return partition.headMap(rk, true);
+			case ">":
+				return partition.tailMap(rk, false);
+			default:
+				return partition.tailMap(rk, true);
+			}
+		}
+		throw validation("Unsupported sort key condition: "+condition);
+	}
+
+	/**
+	 * First key after all the keys that start with prefix (its last code point incremented), null when there's none
+	 */
+	private static String prefixEnd(String prefix) {
+		int end = prefix.length();
+		while (end > 0) {
+			int last = prefix.codePointBefore(end);
+			end -= Character.charCount(last);
+			if (last < Character.MAX_CODE_POINT) {
+				return new StringBuilder(end + 2).append(prefix, 0, end).appendCodePoint(last + 1).toString();
+			}
+		}
+		return null;
+	}
+
+	private static void checkSortKey(String name, Map<String, String> names, String sortKey) {
+		if (!sortKey.equals(name(name, names))) {
+			throw validation("The sort key condition must use "+sortKey);
+		}
+	}
+
+	/**
+	 * True when the key belongs to the scan segment
+	 */
+	private static boolean inSegment(String key, int segment, int totalSegments) {
+		return (key.hashCode() & Integer.MAX_VALUE) % totalSegments == segment;
+	}
+
+	private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, String projection, Map<String, String> names) {
+		if (projection == null) {
+			return new HashMap<String, AttributeValue>(item);
+		}
+		Map<String, AttributeValue> projected = new HashMap<String, AttributeValue>();
+		for (String attribute : projection.split(",")) {
+			String name = name(attribute.trim(), names);
+			AttributeValue value = item.get(name);
+			if (value != null) {
+				projected.put(name, value);
+			}
+		}
+		return projected;
+	}
+
+	private static Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		if (item.containsKey("generalkey")) {
+			key.put("generalkey", item.get("generalkey"));
+		} else {
+			key.put("generalpk", item.get("generalpk"));
+			key.put("generalrk", item.get("generalrk"));
+		}
+		return key;
+	}
+
+	private static String name(String name, Map<String, String> names) {
+		return name.startsWith("#") && names != null && names.containsKey(name) ? names.get(name) : name;
+	}
+
+	private static String value(String placeholder, Map<String, AttributeValue> values) {
+		AttributeValue value = values == null ? null : values.get(placeholder);
+		if (value == null || value.getS() == null) {
+			throw validation("Value "+placeholder+" is not defined as a string");
+		}
+		return value.getS();
+	}
+
+	private static String string(Map<String, AttributeValue> item, String name) {
+		AttributeValue value = item.get(name);
+		return value == null ? null : value.getS();
+	}
+
+	private static String partitionKey(Map<String, AttributeValue> key) {
+		String pk = string(key, "generalpk");
+		if (pk == null) {
+			throw validation("The key must have generalkey or generalpk and generalrk");
+		}
+		return pk;
+	}
+
+	private static String rangeKey(Map<String, AttributeValue> key) {
+		String rk = string(key, "generalrk");
+		if (rk == null) {
+			throw validation("The key must have generalkey or generalpk and generalrk");
+		}
+		return rk;
+	}
+
+	/**
+	 * Throw ConditionalCheckFailedException when the item (null when it doesn't exist) doesn't match the condition
+	 */
+	private static void check(String condition, Map<String, String> names, Map<String, AttributeValue> values, Map<String, AttributeValue> item) {
+		if (!EmbeddedExpressions.matches(condition, names, values, item)) {
+			throw clientError(new ConditionalCheckFailedException("The conditional request failed"), "ConditionalCheckFailedException");
+		}
+	}
+
+	static AmazonServiceException validation(String message) {
+		return clientError(new AmazonServiceException(message), "ValidationException");
+	}
+
+	private static <T extends AmazonServiceException> T clientError(T exception, String errorCode) {
+		exception.setErrorCode(errorCode);
+		exception.setErrorType(ErrorType.Client);
+		exception.setStatusCode(400);
+		exception.setServiceName("AmazonDynamoDBv2");
+		return exception;
+	}
+
+	private static boolean returns(String returnConsumedCapacity) {
+		return returnConsumedCapacity != null && !ReturnConsumedCapacity.NONE.toString().equals(returnConsumedCapacity);
+	}
+
+	private static ConsumedCapacity consumed(String returnConsumedCapacity, String tableName, double units) {
+		return returns(returnConsumedCapacity) ? new ConsumedCapacity().withTableName(tableName).withCapacityUnits(units) : null;
+	}
+
+	/**
+	 * Read units: 4 KB per unit, half for eventually consistent reads
+	 */
+	private static double readUnits(long bytes, Boolean consistentRead) {
+		double units = Math.max(1, Math.ceil(bytes / 4096.0));
+		return Boolean.TRUE.equals(consistentRead) ? units : units / 2;
+	}
+
+	/**
+	 * Write units: 1 KB per unit of the largest of the new and the previous item
+	 */
+	private static double writeUnits(long bytes, Map<String, AttributeValue> previous) {
+		return Math.max(1, Math.ceil(Math.max(bytes, previous == null ? 0 : size(previous)) / 1024.0));
+	}
+
+	/**
+	 * Size of the item as computed by DynamoDB: length of the names plus the size of the values
+	 */
+	static long size(Map<String, AttributeValue> item) {
+		long size = 0;
+		for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+			size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length + size(attribute.getValue());
+		}
+		return size;
+	}
+
+	private static long size(AttributeValue value) {
+		if (value.getS() != null) {
+			return value.getS().getBytes(StandardCharsets.UTF_8).length;
+		}
+		if (value.getN() != null) {
+			return (value.getN().length() + 1) / 2 + 1;
+		}
+		if (value.getB() != null) {
+			return value.getB().remaining();
+		}
+		long size = 3;
+		if (value.getSS() != null) {
+			for (String s : value.getSS()) {
+				size += s.getBytes(StandardCharsets.UTF_8).length;
+			}
+		} else if (value.getNS() != null) {
+			for (String n : value.getNS()) {
+				size += (n.length() + 1) / 2 + 1;
+			}
+		} else if (value.getBS() != null) {
+			for (java.nio.ByteBuffer b : value.getBS()) {
+				size += b.remaining();
+			}
+		} else if (value.getM() != null) {
+			size += size(value.getM()) + value.getM().size();
+		} else if (value.getL() != null) {
+			for (AttributeValue element : value.getL()) {
+				size += size(element) + 1;
+			}
+		} else {
+			size = 1;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,231 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * EmbeddedExpressions evaluates the condition and update expressions of EmbeddedDynamoDB.
+ *
+ * Conditions are terms joined with AND: attribute_exists(name), attribute_not_exists(name) and comparisons (=, <>, <, <=, >, >=) of an attribute with a value.
+ * Updates have SET name = value, REMOVE name and ADD name value (numbers and sets) clauses. Other functions and operators throw a ValidationException.
+ *
+ */
+class EmbeddedExpressions {
+
+	private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+	private static final Pattern FUNCTION = Pattern.compile("\\s*(attribute_exists|attribute_not_exists)\\s*\\(\\s*([#\\w]+)\\s*\\)\\s*");
+	private static final Pattern COMPARISON = Pattern.compile("\\s*([#\\w]+)\\s*(<>|<=|>=|=|<|>)\\s*(:\\w+)\\s*");
+	private static final Pattern CLAUSE = Pattern.compile("(?i)(?:^|\\s)(SET|REMOVE|ADD|DELETE)\\s+");
+	private static final Pattern SET = Pattern.compile("\\s*([#\\w]+)\\s*=\\s*(:\\w+)\\s*");
+	private static final Pattern ADD = Pattern.compile("\\s*([#\\w]+)\\s+(:\\w+)\\s*");
+
+	/**
+	 * True when the item (null when it doesn't exist) matches the condition
+	 */
+	static boolean matches(String condition, Map<String, String> names, Map<String, AttributeValue> values, Map<String, AttributeValue> item) {
+		for (String term : AND.split(condition.trim())) {
+			term = term.trim();
+			while (term.startsWith("(") && term.endsWith(")")) {
+				term = term.substring(1, term.length() - 1).trim();
+			}
+			Matcher matcher;
+			if ((matcher = FUNCTION.matcher(term)).matches()) {
+				boolean exists = item != null && item.containsKey(name(matcher.group(2), names));
+				if (exists != "attribute_exists".equals(matcher.group(1))) {
+					return false;
+				}
+			} else if ((matcher = COMPARISON.matcher(term)).matches()) {
+				AttributeValue current = item == null ? null : item.get(name(matcher.group(1), names));
+				if (!compare(current, matcher.group(2), value(matcher.group(3), values))) {
+					return false;
+				}
+			} else {
+				throw EmbeddedDynamoDB.validation("Unsupported condition: "+term);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Apply the update expression to the item
+	 *
+	 * @param item Copy of the item (or its key when it doesn't exist) changed by the update
+	 * @param updated Names of the attributes set, removed or added
+	 */
+	static void update(String expression, Map<String, String> names, Map<String, AttributeValue> values, Map<String, AttributeValue> item, Set<String> updated) {
+		Matcher clauses = CLAUSE.matcher(expression);
+		List<int[]> bounds = new ArrayList<int[]>();
+		while (clauses.find()) {
+			bounds.add(new int[] { clauses.start(1), clauses.end() });
+		}
+		if (bounds.isEmpty() || !expression.substring(0, bounds.get(0)[0]).trim().isEmpty()) {
+			throw EmbeddedDynamoDB.validation("Invalid update expression: "+expression);
+		}
+		for (int i = 0; i < bounds.size(); i++) {
+			String clause = expression.substring(bounds.get(i)[0], bounds.get(i)[1]).trim().toUpperCase();
+			String actions = expression.substring(bounds.get(i)[1], i + 1 < bounds.size() ? bounds.get(i + 1)[0] : expression.length());
+			for (String action : actions.split(",")) {
+				Matcher matcher;
+				if (clause.equals("SET") && (matcher = SET.matcher(action)).matches()) {
+					String name = key(matcher.group(1), names);
+					item.put(name, value(matcher.group(2), values));
+					updated.add(name);
+				} else if (clause.equals("REMOVE") && !action.trim().isEmpty()) {
+					String name = key(action.trim(), names);
+					item.remove(name);
+					updated.add(name);
+				} else if (clause.equals("ADD") && (matcher = ADD.matcher(action)).matches()) {
+					String name = key(matcher.group(1), names);
+					item.put(name, add(item.get(name), value(matcher.group(2), values)));
+					updated.add(name);
+				} else {
+					throw EmbeddedDynamoDB.validation("Unsupported update action: "+clause+" "+action.trim());
+				}
+			}
+		}
+	}
+
+	private static AttributeValue add(AttributeValue current, AttributeValue delta) {
+		if (delta.getN() != null) {
+			if (current != null && current.getN() == null) {
+				throw EmbeddedDynamoDB.validation("An operand in the update expression has an incorrect data type");
+			}
+			BigDecimal value = current == null ? new BigDecimal(delta.getN()) : new BigDecimal(current.getN()).add(new BigDecimal(delta.getN()));
+			return new AttributeValue().withN(value.toPlainString());
+		}
+		if (delta.getSS() != null && (current == null || current.getSS() != null)) {
+			Set<String> union = new LinkedHashSet<String>(current == null ? delta.getSS() : current.getSS());
+			union.addAll(delta.getSS());
+			return new AttributeValue().withSS(union);
+		}
+		if (delta.getNS() != null && (current == null || current.getNS() != null)) {
+			Set<String> union = new LinkedHashSet<String>(current == null ? delta.getNS() : current.getNS());
+			union.addAll(delta.getNS());
+			return new AttributeValue().withNS(union);
+		}
+		throw EmbeddedDynamoDB.validation("An operand in the update expression has an incorrect data type");
+	}
+
+	private static boolean compare(AttributeValue current, String operator, AttributeValue value) {
+		if (operator.equals("=")) {
+			return current != null && equal(current, value);
+		}
+		if (operator.equals("<>")) {
+			return current == null || !equal(current, value);
+		}
+		Integer order = current == null ? null : order(current, value);
+		if (order == null) {
+			return false;
+		}
+		switch (operator) {
+		case "<":
+			return order < 0;
+		case "<=":
+			return order <= 0;
+		case ">":
+			return order > 0;
+		default:
+			return order >= 0;
+		}
+	}
+
+	private static boolean equal(AttributeValue a, AttributeValue b) {
+		if (a.getN() != null || b.getN() != null) {
+			return a.getN() != null && b.getN() != null && new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN())) == 0;
+		}
+		if (a.getSS() != null || b.getSS() != null) {
+			return a.getSS() != null && b.getSS() != null && new HashSet<String>(a.getSS()).equals(new HashSet<String>(b.getSS()));
+		}
+		if (a.getNS() != null || b.getNS() != null) {
+			return a.getNS() != null && b.getNS() != null && numbers(a.getNS()).equals(numbers(b.getNS()));
+		}
+		return a.equals(b);
+	}
+
+	/**
+	 * Order of two strings, numbers or binaries of the same type, null when they can't be compared
+	 */
+	private static Integer order(AttributeValue a, AttributeValue b) {
+		if (a.getS() != null && b.getS() != null) {
+			return a.getS().compareTo(b.getS());
+		}
+		if (a.getN() != null && b.getN() != null) {
+			return new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN()));
+		}
+		if (a.getB() != null && b.getB() != null) {
+			ByteBuffer x = a.getB().duplicate();
+			ByteBuffer y = b.getB().duplicate();
+			while (x.hasRemaining() && y.hasRemaining()) {
+				int c = Integer.compare(x.get() & 0xFF, y.get() & 0xFF);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return Integer.compare(x.remaining(), y.remaining());
+		}
+		return null;
+	}
+
+	private static Set<BigDecimal> numbers(List<String> values) {
+		Set<BigDecimal> numbers = new HashSet<BigDecimal>();
+		for (String value : values) {
+			numbers.add(new BigDecimal(value).stripTrailingZeros());
+		}
+		return numbers;
+	}
+
+	/**
+	 * Name of an attribute changed by an update, which can't be a key attribute
+	 */
+	private static String key(String placeholder, Map<String, String> names) {
+		String name = name(placeholder, names);
+		if (name.equals("generalkey") || name.equals("generalpk") || name.equals("generalrk")) {
+			throw EmbeddedDynamoDB.validation("Cannot update attribute "+name+". This attribute is part of the key");
+		}
+		return name;
+	}
+
+	private static String name(String name, Map<String, String> names) {
+		if (!name.startsWith("#")) {
+			return name;
+		}
+		String resolved = names == null ? null : names.get(name);
+		if (resolved == null) {
+			throw EmbeddedDynamoDB.validation("An expression attribute name used in the document path is not defined: "+name);
+		}
+		return resolved;
+	}
+
+	private static AttributeValue value(String placeholder, Map<String, AttributeValue> values) {
+		AttributeValue value = values == null ? null : values.get(placeholder);
+		if (value == null) {
+			throw EmbeddedDynamoDB.validation("An expression attribute value used in expression is not defined: "+placeholder);
+		}
+		return value;
+	}
+
+	/**
+	 * Copy of the item with only the attributes specified
+	 */
+	static Map<String, AttributeValue> select(Map<String, AttributeValue> item, Set<String> names) {
+		Map<String, AttributeValue> selected = new HashMap<String, AttributeValue>();
+		for (String name : names) {
+			AttributeValue value = item.get(name);
+			if (value != null) {
+				selected.put(name, value);
+			}
+		}
+		return selected;
+	}
+}
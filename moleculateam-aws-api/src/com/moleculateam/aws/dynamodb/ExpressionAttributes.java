@@ -0,0 +1,63 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * ExpressionAttributes collects the placeholders of the names (#n0, #n1...) and values (:v0, :v1...) used by the update and condition expressions of a request,
+ * so reserved words can be used as attribute names and the values are never written into the expressions.
+ *
+ */
+class ExpressionAttributes {
+
+	private final Map<String, String> names = new HashMap<String, String>();
+	private final Map<String, String> placeholders = new HashMap<String, String>();
+	private final Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+
+	/**
+	 * Placeholder of the attribute name. The same name always gets the same placeholder.
+	 */
+	String name(String name) {
+		String placeholder = placeholders.get(name);
+		if (placeholder == null) {
+			placeholder = "#n"+placeholders.size();
+			placeholders.put(name, placeholder);
+			names.put(placeholder, name);
+		}
+		return placeholder;
+	}
+
+	/**
+	 * Placeholder of the value
+	 */
+	String value(AttributeValue value) {
+		String placeholder = ":v"+values.size();
+		values.put(placeholder, value);
+		return placeholder;
+	}
+
+	/**
+	 * Placeholder of the value of the attribute, converted by the codec of its type
+	 */
+	String value(Attribute at) {
+		return value(ItemUtils.toAttributeValue(at.Type.codec.write(new Item(), at.name, at.value).get(at.name)));
+	}
+
+	/**
+	 * Names of the placeholders, null when there are none
+	 */
+	Map<String, String> getNames() {
+		return names.isEmpty() ? null : names;
+	}
+
+	/**
+	 * Values of the placeholders, null when there are none
+	 */
+	Map<String, AttributeValue> getValues() {
+		return values.isEmpty() ? null : values;
+	}
+}
@@ -1,26 +1,66 @@
 package com.moleculateam.aws.dynamodb;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
-import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.CreateGlobalSecondaryIndexAction;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexUpdate;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsResult;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.moleculateam.aws.dynamodb.Attribute.TYPE;
 
 
@@ -35,33 +75,37 @@ import com.moleculateam.aws.dynamodb.Attribute.TYPE;
  * 
  */
 public class GeneralDB {
-	private AmazonDynamoDB dynamoDB;
-	private String env;
+	private static final int DEFAULT_COPY_WORKERS = 4;
+	private static final int DEFAULT_BULK_PARALLELISM = 8;
+	
+	/**
+	 * Name of the global secondary index of GeneralDK with generalrk as partition key and generalpk as sort key, used by findPks
+	 */
+	public static final String RANGE_KEY_INDEX = "generalrk-generalpk-index";
+	
+	private final ClientRegistry.SharedClient shared;
+	private final AmazonDynamoDB dynamoDB;
+	private final String env;
+	private volatile NearCache nearCache;
+	private volatile WriteBehindBuffer writeBehind;
+	private volatile MetricsListener metrics;
+	private volatile RateLimiter rateLimiter;
+	private volatile int compressionThreshold;
+	private final Map<String, Integer> shards = new ConcurrentHashMap<String, Integer>();
 	
 	/**
 	 * Constructor used to create a connection with the default aws profile, the environment defined in APIStatus and the aws Region defined in APIStatus
 	 */
 	public GeneralDB() {
-		if (dynamoDB == null) {
-			dynamoDB = AmazonDynamoDBClientBuilder.standard()
-					.withRegion(APIStatus.region)
-					.build();  
-		}
 		// Set environment from static APIStatus
-		env = APIStatus.getEnv();
+		this(ClientRegistry.get(APIStatus.region, null), APIStatus.getEnv());
 	}
 	
 	/**
 	 * Constructor used to create a connection with the default aws profile, the region defined in APIStatus and the environment specified in env
 	 */
 	public GeneralDB(String env) {
-		if (dynamoDB == null) {
-			dynamoDB = AmazonDynamoDBClientBuilder.standard()
-					.withRegion(APIStatus.region)
-					.build();  
-		}
-		// Set environment from static APIStatus
-		this.env = env;
+		this(ClientRegistry.get(APIStatus.region, null), env);
 	}
 	
 	/**
@@ -71,13 +115,8 @@ public class GeneralDB {
 	 * 
 	 */
 	public GeneralDB(Regions region) {
-		if (dynamoDB == null) {
-			dynamoDB = AmazonDynamoDBClientBuilder.standard()
-					.withRegion(region)
-					.build();  
-		}
 		// Set environment from static APIStatus
-		env = APIStatus.getEnv();
+		this(ClientRegistry.get(region, null), APIStatus.getEnv());
 	}
 	
 	/**
@@ -87,15 +126,8 @@ public class GeneralDB {
 	 * @param profileName Name of the AWS profile to use for the connection
 	 */
 	public GeneralDB(Regions region, String profileName) {
-		if (dynamoDB == null) {
-			// Creates provider using the profile defined
-			ProfileCredentialsProvider credentialsProvider = new ProfileCredentialsProvider(profileName);
-			dynamoDB = AmazonDynamoDBClientBuilder.standard().withCredentials(credentialsProvider)
-					.withRegion(region)
-					.build();  
-		}
 		// Set environment from static APIStatus
-		env = APIStatus.getEnv();
+		this(ClientRegistry.get(region, profileName), APIStatus.getEnv());
 	}
 	
 	/**
@@ -106,21 +138,66 @@ public class GeneralDB {
 	 * @param environment Environment to be used by GenerarlDB
 	 */
 	public GeneralDB(Regions region, String profileName, String environment) {
-		if (dynamoDB == null) {
-			// Creates provider using the profile defined
-			ProfileCredentialsProvider credentialsProvider = new ProfileCredentialsProvider(profileName);
-			dynamoDB = AmazonDynamoDBClientBuilder.standard().withCredentials(credentialsProvider)
-					.withRegion(region)
-					.build();  
-		}
-		// Set environment from static APIStatus
-		env = environment;
+		this(ClientRegistry.get(region, profileName), environment);
+	}
+	
+	/**
+	 * Constructor used to work with a DynamoDB client created by the caller (f.e a client with a custom configuration, DynamoDB Local or an in-memory stand-in for tests and benchmarks).
+	 * The client is not registered in ClientRegistry and it's not closed by GeneralDB.
+	 * 
+	 * @param client DynamoDB client used for all the operations
+	 * @param environment Environment to be used by GenerarlDB
+	 */
+	public GeneralDB(AmazonDynamoDB client, String environment) {
+		this(new ClientRegistry.SharedClient(client), environment);
+	}
+	
+	/**
+	 * The connection (client and table handles) is shared with all the instances of the same region and profile. See ClientRegistry.
+	 */
+	private GeneralDB(ClientRegistry.SharedClient shared, String environment) {
+		this.shared = shared;
+		this.dynamoDB = shared.client;
+		this.env = environment;
 	}
 
 	public String getEnvironment() {
 		return this.env;
 	}
 	
+	/**
+	 * Prepare the connection in a background thread so the first request doesn't pay the cold start: build the client (when it's lazy, see ClientRegistry.lazy), resolve the AWS credentials
+	 * and describe the generalsk and generaldk tables of the environment with parallel calls, which opens the connections of the pool. Requests sent meanwhile aren't blocked by the warm-up.
+	 * 
+	 * @param connections Number of DescribeTable calls sent at the same time (at least 2), the connections opened in the pool
+	 * @return Future completed with the timings of the start, or with the error of the warm-up (f.e the tables don't exist)
+	 */
+	public CompletableFuture<StartupTimings> warmUp(int connections) {
+		final CompletableFuture<StartupTimings> future = new CompletableFuture<StartupTimings>();
+		Workers.threadFactory("generaldb-warmup").newThread(() -> {
+			try {
+				future.complete(shared.warmUp(new String[] { env+"generalsk", env+"generaldk" }, connections));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}).start();
+		return future;
+	}
+	
+	/**
+	 * Prepare the connection in a background thread opening 2 connections, see warmUp(int)
+	 */
+	public CompletableFuture<StartupTimings> warmUp() {
+		return warmUp(2);
+	}
+	
+	/**
+	 * Timings of the cold start of the client used by this instance: building the client and, after warmUp, resolving the credentials and describing the tables
+	 */
+	public StartupTimings getStartupTimings() {
+		return shared.timings();
+	}
+	
 	/**
 	 * Copy all items from the generalsk table to the target defined
 	 * 
@@ -128,19 +205,22 @@ public class GeneralDB {
 	 * 
 	 */
 	public void copy_SK_ToTarget(GeneralDB target) {
-		ScanRequest scanRequest = new ScanRequest()
-			    .withTableName(env+"generalsk");
-
-		int i = 0;
-		// Uses scan instead of query and all records are fetched
-		ScanResult result = dynamoDB.scan(scanRequest);
-		for (Map<String, AttributeValue> item : result.getItems()) {
-			// insert the item fetched into the target.
-		    target.dynamoDB.putItem(target.getEnvironment()+"generalsk",item);
-		    System.out.println("item "+item.get("generalkey")+" copied");
-		    i++;
+		long copied = copy_SK_ToTarget(target, DEFAULT_COPY_WORKERS, null);
+		if (!APIStatus.disableOutput) {
+			System.out.println(copied+" items copied");
 		}
-		System.out.println(i+" items copied");
+	}
+	
+	/**
+	 * Copy all items from the generalsk table to the target defined using a parallel segmented scan. Items are written in groups of 25 using BatchWriteItem.
+	 * 
+	 * @param target An instance of GeneralDB where the items (records) are going to be copied
+	 * @param workers Number of scan segments copied in parallel
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @return Number of items copied
+	 */
+	public long copy_SK_ToTarget(GeneralDB target, int workers, CopyListener listener) {
+		return copyTable(env+"generalsk", target, target.getEnvironment()+"generalsk", workers, listener);
 	}
 	
 	/**
@@ -150,19 +230,189 @@ public class GeneralDB {
 	 * 
 	 */
 	public void copyToTarget(GeneralDB target) {
-		ScanRequest scanRequest = new ScanRequest()
-			    .withTableName(env+"generaldk");
-
-		int i = 0;
-		// Uses scan instead of query and all records are fetched
-		ScanResult result = dynamoDB.scan(scanRequest);
-		for (Map<String, AttributeValue> item : result.getItems()) {
-			// insert the item fetched into the target.
-		    target.dynamoDB.putItem(target.getEnvironment()+"generaldk",item);
-		    System.out.println("item "+item.get("generalpk")+"/"+item.get("generalsk")+" copied");
-		    i++;
+		long copied = copyToTarget(target, DEFAULT_COPY_WORKERS, null);
+		if (!APIStatus.disableOutput) {
+			System.out.println(copied+" items copied");
+		}
+	}
+	
+	/**
+	 * Copy all items from the generaldk table to the target defined using a parallel segmented scan. Items are written in groups of 25 using BatchWriteItem.
+	 * 
+	 * @param target An instance of GeneralDB where the items (records) are going to be copied
+	 * @param workers Number of scan segments copied in parallel
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @return Number of items copied
+	 */
+	public long copyToTarget(GeneralDB target, int workers, CopyListener listener) {
+		return copyTable(env+"generaldk", target, target.getEnvironment()+"generaldk", workers, listener);
+	}
+	
+	/**
+	 * Scan the source table in parallel segments following LastEvaluatedKey and write every page into the target table
+	 */
+	private long copyTable(String sourceTable, GeneralDB target, final String targetTable, int workers, final CopyListener listener) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be greater than 0");
 		}
-		System.out.println(i+" items copied");
+		final AmazonDynamoDB targetDB = target.dynamoDB;
+		final AtomicLong copied = new AtomicLong();
+		// The writes are measured and limited by the target
+		final MetricsProbe writeProbe = target.probe("copy", targetTable, true);
+		ParallelScan.run(dynamoDB, sourceTable, workers, (segment, items, lastKey) -> {
+			for (int from = 0; from < items.size(); from += BatchWriter.MAX_BATCH_SIZE) {
+				List<WriteRequest> batch = new ArrayList<WriteRequest>(BatchWriter.MAX_BATCH_SIZE);
+				for (Map<String, AttributeValue> item : items.subList(from, Math.min(from + BatchWriter.MAX_BATCH_SIZE, items.size()))) {
+					batch.add(new WriteRequest(new PutRequest(item)));
+				}
+				List<WriteRequest> failed = BatchWriter.writeBatch(targetDB, targetTable, batch, writeProbe);
+				if (!failed.isEmpty()) {
+					throw new AmazonClientException(failed.size()+" items could not be copied into "+targetTable);
+				}
+				long total = copied.addAndGet(batch.size());
+				if (listener != null) {
+					listener.progress(targetTable, segment, total);
+				}
+			}
+		}, probe("copy", sourceTable, false));
+		return copied.get();
+	}
+	
+	/**
+	 * Synchronize the generalsk table of the target with this one, writing only the items that are new or changed (see syncTable).
+	 * 
+	 * @param target An instance of GeneralDB whose table is going to be updated
+	 * @param deleteMissing True to delete the items of the target that don't exist in this table
+	 * @param workers Number of scan segments read in parallel on each table
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @return Number of items inserted, updated, deleted and unchanged
+	 */
+	public SyncResult sync_SK_ToTarget(GeneralDB target, boolean deleteMissing, int workers, CopyListener listener) {
+		return syncTable(env+"generalsk", target, target.getEnvironment()+"generalsk", false, deleteMissing, workers, listener);
+	}
+	
+	/**
+	 * Synchronize the generaldk table of the target with this one, writing only the items that are new or changed (see syncTable).
+	 * 
+	 * @param target An instance of GeneralDB whose table is going to be updated
+	 * @param deleteMissing True to delete the items of the target that don't exist in this table
+	 * @param workers Number of scan segments read in parallel on each table
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @return Number of items inserted, updated, deleted and unchanged
+	 */
+	public SyncResult syncToTarget(GeneralDB target, boolean deleteMissing, int workers, CopyListener listener) {
+		return syncTable(env+"generaldk", target, target.getEnvironment()+"generaldk", true, deleteMissing, workers, listener);
+	}
+	
+	/**
+	 * Scan the target table keeping a hash of every item, then scan the source table and write into the target the items missing or with a different hash.
+	 * Both tables are read completely (the scans consume read capacity) but only the differences consume write capacity. The keys of the target and their hashes are kept in memory during the sync.
+	 */
+	private SyncResult syncTable(String sourceTable, GeneralDB target, String targetTable, boolean composedKey, boolean deleteMissing, int workers, CopyListener listener) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be greater than 0");
+		}
+		try {
+			return DeltaSync.sync(dynamoDB, sourceTable, target.dynamoDB, targetTable, composedKey, deleteMissing, workers, listener,
+					probe("sync", sourceTable, false), target.probe("sync", targetTable, false), target.probe("sync", targetTable, true));
+		} finally {
+			// The items are written without the cache of the target
+			NearCache cache = target.nearCache;
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Export the items of the generalsk and generaldk tables into compressed files of a local directory, scanning each table in parallel segments.
+	 * Every segment writes its own file and saves a checkpoint after each page: if the directory has the checkpoints of an interrupted export, the export is resumed (with the same number of workers).
+	 * Delete the directory to export again from the beginning.
+	 * 
+	 * @param directory Directory of the export, created if it doesn't exist
+	 * @param tableNamePrefix Only the items of the logical tables whose name starts with this prefix are exported (null for all)
+	 * @param workers Number of scan segments exported in parallel
+	 * @param listener Listener notified after each page written (may be null)
+	 * @return Number of items exported by this call
+	 */
+	public long exportTo(Path directory, String tableNamePrefix, int workers, CopyListener listener) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be greater than 0");
+		}
+		long exported = 0;
+		for (String table : new String[] {"generalsk", "generaldk"}) {
+			exported += TableArchive.export(dynamoDB, env+table, directory, table, tableNamePrefix, workers, listener, probe("export", env+table, false));
+		}
+		return exported;
+	}
+	
+	/**
+	 * Import the items exported with exportTo into the generalsk and generaldk tables of this instance (with any environment) using BatchWriteItem. Existing items with the same key are overwritten.
+	 * The progress of every file is saved, so an interrupted import is resumed when it's called again with the same directory.
+	 * 
+	 * @param directory Directory of the export
+	 * @param tableNamePrefix Only the items of the logical tables whose name starts with this prefix are imported (null for all)
+	 * @param workers Number of files imported in parallel
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @return Number of items imported by this call
+	 */
+	public long importFrom(Path directory, String tableNamePrefix, int workers, CopyListener listener) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be greater than 0");
+		}
+		long imported = 0;
+		try {
+			for (String table : new String[] {"generalsk", "generaldk"}) {
+				imported += TableArchive.load(dynamoDB, env+table, directory, table, tableNamePrefix, workers, listener, probe("import", env+table, true));
+			}
+		} finally {
+			// The items are written without the cache
+			NearCache cache = nearCache;
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+		return imported;
+	}
+	
+	/**
+	 * Count the items and bytes of every logical table of the generalsk and generaldk tables, with their partitions with most items, scanning each table in parallel segments.
+	 * The scan reads every item (DynamoDB can't return the size of an item without the item), but only the counters are kept in memory.
+	 * The reads are limited by the rate limiter of this instance, if any (see setRateLimiter).
+	 * 
+	 * @param workers Number of scan segments read in parallel
+	 * @param topPartitions Number of partitions with most items returned for each logical table with a range key
+	 * @return Statistics of the logical tables, from the one using more bytes
+	 */
+	public List<TableStatistics> statistics(int workers, int topPartitions) {
+		return statistics(workers, topPartitions, rateLimiter);
+	}
+	
+	/**
+	 * Count the items and bytes of every logical table (see statistics(workers, topPartitions)) using at most readUnitsPerSecond read capacity units per second.
+	 * The budget replaces the rate limiter of this instance for the scan, and it's lowered while DynamoDB throttles the reads like any RateLimiter.
+	 * 
+	 * @param workers Number of scan segments read in parallel
+	 * @param topPartitions Number of partitions with most items returned for each logical table with a range key
+	 * @param readUnitsPerSecond Maximum read capacity units per second used by the scan of both tables
+	 * @return Statistics of the logical tables, from the one using more bytes
+	 */
+	public List<TableStatistics> statistics(int workers, int topPartitions, double readUnitsPerSecond) {
+		return statistics(workers, topPartitions, new RateLimiter(readUnitsPerSecond, readUnitsPerSecond));
+	}
+	
+	private List<TableStatistics> statistics(int workers, int topPartitions, RateLimiter budget) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be greater than 0");
+		}
+		if (topPartitions < 0) {
+			throw new IllegalArgumentException("topPartitions can't be negative");
+		}
+		List<TableStatistics> statistics = new ArrayList<TableStatistics>();
+		statistics.addAll(StatisticsScan.run(dynamoDB, env+"generalsk", false, workers, topPartitions, MetricsProbe.of(metrics, budget, "statistics", env+"generalsk", false)));
+		statistics.addAll(StatisticsScan.run(dynamoDB, env+"generaldk", true, workers, topPartitions, MetricsProbe.of(metrics, budget, "statistics", env+"generaldk", false)));
+		statistics.sort(Comparator.comparingLong(TableStatistics::getTotalBytes).reversed());
+		return statistics;
 	}
 	
 	/**
@@ -173,30 +423,9 @@ public class GeneralDB {
 	 * @param attributes Collection of the attributes to insert
 	 */
 	public void addItem(String tableName, String pk, Collection<Attribute> attributes) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		Table tabla = dynamoDBinst.getTable(env+"generalsk");
-		
 		// The item is recorded using the key tableName+'-'+pk
 		Item item = new Item().withPrimaryKey("generalkey", tableName+"-"+pk);
-		for (Attribute at : attributes) {
-			if (at.Type == Attribute.TYPE.JSON) {
-				item = item.withJSON(at.name, (String)at.value);
-			}
-			
-			if (at.Type == Attribute.TYPE.CHAR) {
-				item = item.withString(at.name, (String)at.value);
-			}
-			
-			if (at.Type == Attribute.TYPE.INT) {
-				item = item.withInt(at.name, (int)at.value);
-			}
-			
-			if (at.Type == Attribute.TYPE.SHORT) {
-				item = item.withShort(at.name, (short)at.value);
-			}
-		}
-		
-		tabla.putItem(item);
+		putItem(tableName, env+"generalsk", withAttributes(item, attributes), tableName+"-"+pk);
 	}
 	
 	/**
@@ -208,30 +437,159 @@ public class GeneralDB {
 	 * @param attributes Collection of the attributes to insert
 	 */
 	public void addItem(String tableName, String pk, String rk, Collection<Attribute> attributes) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		Table tabla = dynamoDBinst.getTable(env+"generaldk");
-		
-		// The item is recorded using the key [tableName+'-'+pk, tableName+'-'+rk] 
-		Item item = new Item().withPrimaryKey("generalpk", tableName+"-"+pk,"generalrk",tableName+"-"+rk);
-		for (Attribute at : attributes) {
-			if (at.Type == Attribute.TYPE.JSON) {
-				item = item.withJSON(at.name, (String)at.value);
+		// The item is recorded using the key [tableName+'-'+pk, tableName+'-'+rk] (with the shard suffix when the table is sharded)
+		String generalpk = partitionKey(tableName, pk, rk);
+		Item item = new Item().withPrimaryKey("generalpk", generalpk,"generalrk",tableName+"-"+rk);
+		putItem(tableName, env+"generaldk", withAttributes(item, attributes), generalpk+'\u0000'+tableName+"-"+rk);
+	}
+	
+	/**
+	 * Write the item, or queue it when the write-behind buffer is enabled. A queued item is invalidated in the near cache when it's queued and again when it's written.
+	 */
+	private void putItem(String tableName, String tblName, Item item, String cacheKey) {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			buffer.add(tblName, new WriteRequest(new PutRequest(ItemUtils.toAttributeValues(item))));
+			invalidate(tblName, cacheKey);
+			return;
+		}
+		MetricsProbe probe = probe("addItem", tableName, true);
+		PutItemSpec putItemSpec = new PutItemSpec().withItem(item).withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		probe.watch(putItemSpec.getRequest());
+		probe.call(() -> shared.table(tblName).putItem(putItemSpec), outcome -> outcome.getPutItemResult().getConsumedCapacity());
+		invalidate(tblName, cacheKey);
+	}
+	
+	/**
+	 * Add all the items into the table tableName using BatchWriteItem calls of 25 items sent in parallel. Items without range key are stored in GeneralSK and items with range key in GeneralDK. Duplicate records are overwrite, and a key repeated in the collection keeps its last item.
+	 * 
+	 * @param tableName Name of the table where the items are going to be created
+	 * @param items Items to insert
+	 * @return Result with the number of items written and the items that failed
+	 */
+	public BulkWriteResult addItems(String tableName, Collection<BulkItem> items) {
+		return addItems(tableName, items.iterator(), DEFAULT_BULK_PARALLELISM);
+	}
+	
+	/**
+	 * Add all the items of the stream into the table tableName using BatchWriteItem calls of 25 items sent in parallel. The stream is consumed as the batches are written so it's never loaded in memory. A key repeated in the stream keeps its last item.
+	 * 
+	 * @param tableName Name of the table where the items are going to be created
+	 * @param items Items to insert
+	 * @param parallelism Maximum number of BatchWriteItem calls running at the same time
+	 * @return Result with the number of items written and the items that failed
+	 */
+	public BulkWriteResult addItems(String tableName, Stream<BulkItem> items, int parallelism) {
+		return addItems(tableName, items.iterator(), parallelism);
+	}
+	
+	private BulkWriteResult addItems(String tableName, Iterator<BulkItem> items, int parallelism) {
+		// The writes waiting in the write-behind buffer go first, so they can't overwrite the items written now
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			buffer.flush();
+		}
+		BulkWriter<BulkItem> writer = new BulkWriter<BulkItem>(dynamoDB, parallelism);
+		writer.probe(probe("addItems", tableName, true));
+		final NearCache cache = nearCache;
+		if (cache != null) {
+			writer.onWritten((tblName, request) -> cache.invalidate(tblName+'\u0000'+BulkWriter.keyOf(request)));
+		}
+		try {
+			while (items.hasNext()) {
+				BulkItem bulkItem = items.next();
+				Item item;
+				String tblName;
+				if (bulkItem.rk == null) {
+					item = new Item().withPrimaryKey("generalkey", tableName+"-"+bulkItem.pk);
+					tblName = env+"generalsk";
+				} else {
+					item = new Item().withPrimaryKey("generalpk", partitionKey(tableName, bulkItem.pk, bulkItem.rk),"generalrk",tableName+"-"+bulkItem.rk);
+					tblName = env+"generaldk";
+				}
+				Map<String, AttributeValue> values = ItemUtils.toAttributeValues(withAttributes(item, bulkItem.attributes));
+				writer.add(tblName, new WriteRequest(new PutRequest(values)), bulkItem);
 			}
-			
-			if (at.Type == Attribute.TYPE.CHAR) {
-				item = item.withString(at.name, (String)at.value);
+			writer.finish();
+		} catch (RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		return new BulkWriteResult(writer.written(), writer.failed(), writer.lastError());
+	}
+	
+	/**
+	 * Create a transaction writing items of any table with a single TransactWriteItems call: all of them are written or none. The puts, deletes, updates and condition checks are added to the returned object before committing it.
+	 * 
+	 * @return The transaction, see WriteTransaction
+	 */
+	public WriteTransaction transaction() {
+		return new WriteTransaction(this);
+	}
+	
+	/**
+	 * Run the TransactWriteItems call of a WriteTransaction. The write-behind buffer is flushed first, like for updates.
+	 * The call is measured as the operation "transaction" of the table of the first action.
+	 */
+	void transactWriteItems(List<TransactWriteItem> actions, List<ItemUpdate> targets, String clientRequestToken) {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			buffer.flush();
+		}
+		MetricsProbe probe = probe("transaction", targets.get(0).itemKey().tableName, true);
+		TransactWriteItemsRequest request = new TransactWriteItemsRequest()
+				.withTransactItems(actions)
+				.withClientRequestToken(clientRequestToken)
+				.withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		probe.watch(request);
+		try {
+			probe.callBatch(() -> dynamoDB.transactWriteItems(request), TransactWriteItemsResult::getConsumedCapacity);
+		} catch (TransactionCanceledException e) {
+			Map<ItemKey, String> reasons = new LinkedHashMap<ItemKey, String>();
+			List<CancellationReason> cancellationReasons = e.getCancellationReasons();
+			for (int i = 0; cancellationReasons != null && i < cancellationReasons.size() && i < targets.size(); i++) {
+				String code = cancellationReasons.get(i).getCode();
+				if (code != null && !code.equals("None")) {
+					reasons.put(targets.get(i).itemKey(), code);
+				}
 			}
-			
-			if (at.Type == Attribute.TYPE.INT) {
-				item = item.withInt(at.name, (int)at.value);
+			throw new WriteTransactionException(reasons, e);
+		} finally {
+			// A failed call may have been applied, so the cached items are dropped anyway
+			for (ItemUpdate target : targets) {
+				invalidate(target.tblName(), target.cacheKey());
 			}
-			
-			if (at.Type == Attribute.TYPE.SHORT) {
-				item = item.withShort(at.name, (short)at.value);
+		}
+	}
+	
+	/**
+	 * Values of the attributes as stored by addItem, compressed when the compression is enabled
+	 */
+	Map<String, AttributeValue> toAttributeValues(Collection<Attribute> attributes) {
+		return ItemUtils.toAttributeValues(withAttributes(new Item(), attributes));
+	}
+	
+	/**
+	 * Set the secondary attributes into the item. CHAR and JSON values with at least compressionThreshold characters are stored compressed when it makes them smaller.
+	 */
+	private Item withAttributes(Item item, Collection<Attribute> attributes) {
+		int threshold = compressionThreshold;
+		for (Attribute at : attributes) {
+			if (threshold > 0 && (at.Type == TYPE.CHAR || at.Type == TYPE.JSON) && at.value instanceof String && ((String)at.value).length() >= threshold) {
+				String value = (String)at.value;
+				if (at.Type == TYPE.JSON) {
+					// Compress the JSON as DynamoDB returns it (validated and without formatting), so it reads back the same compressed or not
+					value = new Item().withJSON(at.name, value).getJSON(at.name);
+				}
+				byte[] compressed = ValueCompressor.compress(value, threshold);
+				if (compressed != null) {
+					item = item.withBinary(at.name, compressed);
+					continue;
+				}
 			}
+			item = at.Type.codec.write(item, at.name, at.value);
 		}
-		
-		tabla.putItem(item);
+		return item;
 	}
 	
 	/**
@@ -241,14 +599,8 @@ public class GeneralDB {
 	 * @param pk Primary key
 	 */
 	public void deleteItem(String tableName, String pk) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		String tblName = env+"generalsk";
-		Table tabla = dynamoDBinst.getTable(tblName);
-		
 		// The item to deleted is identified by the key tableName+'-'+pk
-		DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
-	            .withPrimaryKey(new PrimaryKey("generalkey", tableName+"-"+pk));
-		tabla.deleteItem(deleteItemSpec);
+		deleteItem(tableName, env+"generalsk", new PrimaryKey("generalkey", tableName+"-"+pk), tableName+"-"+pk);
 	}
 	
 	/**
@@ -259,14 +611,79 @@ public class GeneralDB {
 	 * @param rk rangeKey
 	 */
 	public void deleteItem(String tableName, String pk, String rk) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		String tblName = env+"generaldk";
-		Table tabla = dynamoDBinst.getTable(tblName);
-		
 		// The item to deleted is identified by the key [tableName+'-'+pk, tableName+'-'+rk]
+		String generalpk = partitionKey(tableName, pk, rk);
+		deleteItem(tableName, env+"generaldk", new PrimaryKey("generalpk", generalpk,"generalrk",tableName+"-"+rk), generalpk+'\u0000'+tableName+"-"+rk);
+	}
+	
+	/**
+	 * Delete the item, or queue the delete when the write-behind buffer is enabled. A queued delete is invalidated in the near cache when it's queued and again when it's written.
+	 */
+	private void deleteItem(String tableName, String tblName, PrimaryKey primaryKey, String cacheKey) {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+			for (KeyAttribute component : primaryKey.getComponents()) {
+				key.put(component.getName(), new AttributeValue((String)component.getValue()));
+			}
+			buffer.add(tblName, new WriteRequest(new DeleteRequest(key)));
+			invalidate(tblName, cacheKey);
+			return;
+		}
+		MetricsProbe probe = probe("deleteItem", tableName, true);
 		DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
-	            .withPrimaryKey(new PrimaryKey("generalpk", tableName+"-"+pk,"generalrk",tableName+"-"+rk));
-		tabla.deleteItem(deleteItemSpec);
+	            .withPrimaryKey(primaryKey)
+	            .withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		probe.watch(deleteItemSpec.getRequest());
+		probe.call(() -> shared.table(tblName).deleteItem(deleteItemSpec), outcome -> outcome.getDeleteItemResult().getConsumedCapacity());
+		invalidate(tblName, cacheKey);
+	}
+	
+	/**
+	 * Create an update of some attributes of the item of the table tableName with a single key identifier. The attributes to set, remove or increment, the condition and the attributes returned are configured on the returned object.
+	 * 
+	 * @param tableName Name of the table of the item
+	 * @param pk Primary key
+	 * @return The update, see ItemUpdate
+	 */
+	public ItemUpdate update(String tableName, String pk) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("generalkey", new AttributeValue(tableName+"-"+pk));
+		return new ItemUpdate(this, new ItemKey(tableName, pk), env+"generalsk", key, tableName+"-"+pk);
+	}
+	
+	/**
+	 * Create an update of some attributes of the item of the table tableName identified by the composed key. The attributes to set, remove or increment, the condition and the attributes returned are configured on the returned object.
+	 * 
+	 * @param tableName Name of the table of the item
+	 * @param pk Primary key
+	 * @param rk rangeKey
+	 * @return The update, see ItemUpdate
+	 */
+	public ItemUpdate update(String tableName, String pk, String rk) {
+		String generalpk = partitionKey(tableName, pk, rk);
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("generalpk", new AttributeValue(generalpk));
+		key.put("generalrk", new AttributeValue(tableName+"-"+rk));
+		return new ItemUpdate(this, new ItemKey(tableName, pk, rk), env+"generaldk", key, generalpk+'\u0000'+tableName+"-"+rk);
+	}
+	
+	/**
+	 * Run the UpdateItem call of an ItemUpdate. UpdateItem can't be queued, so the write-behind buffer is flushed first to apply the update after the writes pending.
+	 * 
+	 * @return The attributes returned by DynamoDB, null when none were requested
+	 */
+	Map<String, AttributeValue> updateItem(String tableName, String tblName, UpdateItemRequest request, String cacheKey) {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			buffer.flush();
+		}
+		MetricsProbe probe = probe("updateItem", tableName, true);
+		request.setReturnConsumedCapacity(probe.returnConsumedCapacity());
+		probe.watch(request);
+		UpdateItemResult result = probe.call(() -> dynamoDB.updateItem(request), UpdateItemResult::getConsumedCapacity);
+		invalidate(tblName, cacheKey);
+		return result.getAttributes();
 	}
 	
 	/**
@@ -274,18 +691,65 @@ public class GeneralDB {
 	 * 
 	 * @param tableName Name of the table where the items are going to be deleted
 	 * @param pk Primary key
+	 * @return Number of items deleted
 	 */
-	public void deleteItems(String tableName, String pk) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
+	public long deleteItems(String tableName, String pk) {
+		return deleteItems(tableName, pk, false);
+	}
+	
+	/**
+	 * delete from the table tableName all the items with the primary key specified in pk. The partition is read page by page fetching only the keys, and the items are deleted using BatchWriteItem calls of 25 items sent in parallel.
+	 * The write-behind buffer is flushed first, so the items queued in the partition are deleted (and counted) too.
+	 * 
+	 * @param tableName Name of the table where the items are going to be deleted
+	 * @param pk Primary key
+	 * @param dryRun True to only count the items that would be deleted
+	 * @return Number of items deleted (or to delete when dryRun is true)
+	 */
+	public long deleteItems(String tableName, String pk, boolean dryRun) {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			buffer.flush();
+		}
 		String tblName = env+"generaldk";
-		Table tabla = dynamoDBinst.getTable(tblName);
+		// The items to delete are the ones with generalpk == tableName+'-'+pk
+		PartitionQuery query = query(tableName, pk);
+		if (dryRun) {
+			long count = 0;
+			for (Iterator<QueryItem> it = query.iterator(); it.hasNext(); it.next()) {
+				count++;
+			}
+			return count;
+		}
+		
+		BulkWriter<String> writer = new BulkWriter<String>(dynamoDB, DEFAULT_BULK_PARALLELISM);
+		writer.probe(probe("deleteItems", tableName, true));
+		try {
+			for (QueryItem item : query) {
+				Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+				key.put("generalpk", new AttributeValue(partitionKey(tableName, pk, item.rk)));
+				key.put("generalrk", new AttributeValue(tableName+"-"+item.rk));
+				writer.add(tblName, new WriteRequest(new DeleteRequest(key)), item.rk);
+			}
+			writer.finish();
+		} catch (RuntimeException e) {
+			writer.abort();
+			throw e;
+		} finally {
+			NearCache cache = nearCache;
+			if (cache != null) {
+				int count = getShards(tableName);
+				for (int shard = 0; shard < count; shard++) {
+					cache.invalidatePrefix(tblName+'\u0000'+(count == 1 ? tableName+"-"+pk : shardKey(tableName, pk, shard))+'\u0000');
+				}
+			}
+		}
 		
-		// The items to delete are filtered by the condition generalpk == tableName+'-'+pk
-		DeleteItemSpec deleteItemSpec = new DeleteItemSpec().withConditionExpression("generalpk = :usucod");
-		ValueMap values = new ValueMap()
-		        .withString(":usucod", tableName+'-'+pk);
-		deleteItemSpec.withValueMap(values);
-		tabla.deleteItem(deleteItemSpec);
+		List<String> failed = writer.failed();
+		if (!failed.isEmpty()) {
+			throw new AmazonClientException(writer.written()+" items deleted but "+failed.size()+" items of "+tableName+"-"+pk+" could not be deleted", writer.lastError());
+		}
+		return writer.written();
 	}
 	
 	/**
@@ -296,40 +760,26 @@ public class GeneralDB {
 	 * @param att Attribute to look for
 	 */
 	public Object getAttribute(String tableName, String pk, Attribute att) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		String tblName = env+"generalsk";
-		Table tabla = dynamoDBinst.getTable(tblName);
-		
-		// The item is fetched using the key tableName+'-'+pk
-		QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("generalkey = :usucod");
-		ValueMap values = new ValueMap()
-        .withString(":usucod", tableName+'-'+pk);
-		
-		querySpec = querySpec.withValueMap(values);
-		ItemCollection<QueryOutcome> items = tabla.query(querySpec);
-		Iterator<Item> iterator = items.iterator();
-		if (iterator.hasNext()) {
-			if (att.Type == Attribute.TYPE.JSON) {
-				String json = iterator.next().getJSON(att.name);
-				// Replace " " for "" so empty values are recognized by the "" value
-				json = json.replace("\" \"","\"\"");
-				return (Object)json;
-			}
-			
-			if (att.Type == Attribute.TYPE.CHAR) {
-				String json = iterator.next().getString(att.name);
-				return (Object)json;
-			}
-			if (att.Type == Attribute.TYPE.INT) {
-				return (Object)iterator.next().getInt(att.name);
-			}
-			if (att.Type == Attribute.TYPE.SHORT) {
-				return (Object)iterator.next().getShort(att.name);
-			}
+		Item item = attributeItem(tableName, pk, att);
+		if (item != null) {
+			return readAttribute(item, att);
 		}
 		return (Object)"";
 	}	
 	
+	/**
+	 * Read the item with the attribute from the single key table, through the near cache when it's enabled
+	 */
+	private Item attributeItem(String tableName, String pk, Attribute att) {
+		// The item is fetched using the key tableName+'-'+pk
+		PrimaryKey key = new PrimaryKey("generalkey", tableName+"-"+pk);
+		MetricsProbe probe = probe("getAttribute", tableName, false);
+		if (nearCache == null) {
+			return fetchItem(env+"generalsk", key, Collections.singletonList(att), false, probe);
+		}
+		return cached(tableName, env+"generalsk", tableName+'-'+pk, () -> fetchItem(env+"generalsk", key, null, false, probe));
+	}
+	
 	/**
 	 * Get attribute from record with primary key and range key specified from the table specified. When the item is not found the method return null.
 	 * 
@@ -339,42 +789,143 @@ public class GeneralDB {
 	 * @param att Attribute to look for
 	 */
 	public Object getAttribute(String tableName, String pk, String rk, Attribute att) {
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		String tblName = env+"generaldk";
-		Table tabla = dynamoDBinst.getTable(tblName);
-		
-		// The item is fetched using the key [tableName+'-'+pk, tableName+'-'+rk]
-		QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("generalpk = :usucod and generalrk = :cannom");
-		ValueMap values = new ValueMap()
-        .withString(":usucod", tableName+'-'+pk).withString(":cannom", tableName+'-'+rk);
-		querySpec = querySpec.withValueMap(values);
-		
-		ItemCollection<QueryOutcome> items = tabla.query(querySpec);
-		Iterator<Item> iterator = items.iterator();
-		if (iterator.hasNext()) {
-			if (att.Type == Attribute.TYPE.JSON) {
-				String json = iterator.next().getJSON(att.name);
-				// Replace " " for "" so empty values are recognized by the "" value
-				json = json.replace("\" \"","\"\"");
-				return json;
-			}
-
-			if (att.Type == Attribute.TYPE.CHAR) {
-				String json = iterator.next().getString(att.name);
-				return json;
-			}
-			
-			if (att.Type == Attribute.TYPE.INT) {
-				return iterator.next().getInt(att.name);
-			}
-			
-			if (att.Type == Attribute.TYPE.SHORT) {
-				return iterator.next().getShort(att.name);
-			}
+		Item item = attributeItem(tableName, pk, rk, att);
+		if (item != null) {
+			return readAttribute(item, att);
 		}
 		return null;
 	}
 	
+	/**
+	 * Read the item with the attribute from the composed key table, through the near cache when it's enabled
+	 */
+	private Item attributeItem(String tableName, String pk, String rk, Attribute att) {
+		// The item is fetched using the key [tableName+'-'+pk, tableName+'-'+rk]
+		String generalpk = partitionKey(tableName, pk, rk);
+		PrimaryKey key = new PrimaryKey("generalpk", generalpk,"generalrk",tableName+"-"+rk);
+		MetricsProbe probe = probe("getAttribute", tableName, false);
+		if (nearCache == null) {
+			return fetchItem(env+"generaldk", key, Collections.singletonList(att), false, probe);
+		}
+		return cached(tableName, env+"generaldk", generalpk+'\u0000'+tableName+'-'+rk, () -> fetchItem(env+"generaldk", key, null, false, probe));
+	}
+	
+	/**
+	 * Get a number attribute as a long, without boxing. When the item or the attribute is not found the method return missing.
+	 * 
+	 * @param tableName Table where to look for the PK
+	 * @param pk primary key (identifier) of the record to look
+	 * @param name Name of the attribute
+	 * @param missing Value returned when the attribute is not found
+	 */
+	public long getLong(String tableName, String pk, String name, long missing) {
+		Item item = attributeItem(tableName, pk, new Attribute(name, TYPE.LONG));
+		return item == null || !item.isPresent(name) ? missing : item.getLong(name);
+	}
+	
+	/**
+	 * Get a number attribute as a long from the record with primary key and range key specified, without boxing. When the item or the attribute is not found the method return missing.
+	 */
+	public long getLong(String tableName, String pk, String rk, String name, long missing) {
+		Item item = attributeItem(tableName, pk, rk, new Attribute(name, TYPE.LONG));
+		return item == null || !item.isPresent(name) ? missing : item.getLong(name);
+	}
+	
+	/**
+	 * Get a number attribute as a double, without boxing. When the item or the attribute is not found the method return missing.
+	 * 
+	 * @param tableName Table where to look for the PK
+	 * @param pk primary key (identifier) of the record to look
+	 * @param name Name of the attribute
+	 * @param missing Value returned when the attribute is not found
+	 */
+	public double getDouble(String tableName, String pk, String name, double missing) {
+		Item item = attributeItem(tableName, pk, new Attribute(name, TYPE.DOUBLE));
+		return item == null || !item.isPresent(name) ? missing : item.getDouble(name);
+	}
+	
+	/**
+	 * Get a number attribute as a double from the record with primary key and range key specified, without boxing. When the item or the attribute is not found the method return missing.
+	 */
+	public double getDouble(String tableName, String pk, String rk, String name, double missing) {
+		Item item = attributeItem(tableName, pk, rk, new Attribute(name, TYPE.DOUBLE));
+		return item == null || !item.isPresent(name) ? missing : item.getDouble(name);
+	}
+	
+	/**
+	 * Get a BOOL attribute, without boxing. When the item or the attribute is not found the method return missing.
+	 * 
+	 * @param tableName Table where to look for the PK
+	 * @param pk primary key (identifier) of the record to look
+	 * @param name Name of the attribute
+	 * @param missing Value returned when the attribute is not found
+	 */
+	public boolean getBoolean(String tableName, String pk, String name, boolean missing) {
+		Item item = attributeItem(tableName, pk, new Attribute(name, TYPE.BOOL));
+		return item == null || !item.isPresent(name) ? missing : item.getBoolean(name);
+	}
+	
+	/**
+	 * Get a BOOL attribute from the record with primary key and range key specified, without boxing. When the item or the attribute is not found the method return missing.
+	 */
+	public boolean getBoolean(String tableName, String pk, String rk, String name, boolean missing) {
+		Item item = attributeItem(tableName, pk, rk, new Attribute(name, TYPE.BOOL));
+		return item == null || !item.isPresent(name) ? missing : item.getBoolean(name);
+	}
+	
+	/**
+	 * Get the attributes specified in atts from the record with primary key specified from the table specified, using a single GetItem that only returns the requested attributes.
+	 * When the item is not found the method return null.
+	 * 
+	 * @param tableName Table where to look for the PK
+	 * @param pk primary key (identifier) of the record to look
+	 * @param atts Attributes to look for and return
+	 * @param consistentRead True to use a strongly consistent read
+	 * @return The attributes found with their values
+	 */
+	public Collection<Attribute> getItem(String tableName, String pk, Collection<Attribute> atts, boolean consistentRead) {
+		// The item is fetched using the key tableName+'-'+pk
+		Item item = fetchItem(env+"generalsk", new PrimaryKey("generalkey", tableName+"-"+pk), atts, consistentRead, probe("getItem", tableName, false));
+		return item == null ? null : readAttributes(item, atts);
+	}
+	
+	/**
+	 * Get the attributes specified in atts from the record with primary key and range key specified from the table specified, using a single GetItem that only returns the requested attributes.
+	 * When the item is not found the method return null.
+	 * 
+	 * @param tableName Table where to look for the PK
+	 * @param pk primary key (identifier) of the record to look
+	 * @param rk range key (identifier) of the record to look
+	 * @param atts Attributes to look for and return
+	 * @param consistentRead True to use a strongly consistent read
+	 * @return The attributes found with their values
+	 */
+	public Collection<Attribute> getItem(String tableName, String pk, String rk, Collection<Attribute> atts, boolean consistentRead) {
+		// The item is fetched using the key [tableName+'-'+pk, tableName+'-'+rk]
+		Item item = fetchItem(env+"generaldk", new PrimaryKey("generalpk", partitionKey(tableName, pk, rk),"generalrk",tableName+"-"+rk), atts, consistentRead, probe("getItem", tableName, false));
+		return item == null ? null : readAttributes(item, atts);
+	}
+	
+	/**
+	 * Read the item with GetItem, projecting only the attributes specified
+	 * 
+	 * @param tblName Physical table name
+	 * @param key Primary key of the item
+	 * @param atts Attributes to fetch (null to fetch the whole item)
+	 * @param consistentRead True to use a strongly consistent read
+	 * @param probe Probe measuring the call
+	 * @return The item or null when it's not found
+	 */
+	private Item fetchItem(String tblName, PrimaryKey key, Collection<Attribute> atts, boolean consistentRead, MetricsProbe probe) {
+		GetItemSpec getItemSpec = new GetItemSpec().withPrimaryKey(key).withConsistentRead(consistentRead).withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		if (atts != null && !atts.isEmpty()) {
+			Map<String, String> names = new HashMap<String, String>();
+			getItemSpec.withProjectionExpression(projection(atts, names)).withNameMap(names);
+		}
+		probe.watch(getItemSpec.getRequest());
+		return probe.call(() -> shared.table(tblName).getItemOutcome(getItemSpec), outcome -> outcome.getGetItemResult().getConsumedCapacity()).getItem();
+	}
+	
 	/**
 	 * Query all records of the composed key table tableName with primary key equals to pk and return the attributes specified in att
 	 * 
@@ -384,38 +935,398 @@ public class GeneralDB {
 	 */
 	public Collection<Object> getAttributes(String tableName, String pk, Attribute att) {
 		Collection<Object> col = new LinkedList<Object>();
-		DynamoDB dynamoDBinst = new DynamoDB(dynamoDB);
-		String tblName = env+"generaldk";
-		Table tabla = dynamoDBinst.getTable(tblName);
+		int count = getShards(tableName);
+		if (count > 1) {
+			// The shards are read in parallel and their items merged in range key order
+			PartitionQuery query = new PartitionQuery(dynamoDB, env+"generaldk", tableName, pk, count, probe("getAttributes", tableName, false)).attributes(Collections.singletonList(att));
+			for (QueryItem item : query) {
+				col.add(item.attributes.isEmpty() ? null : item.attributes.iterator().next().value);
+			}
+			return col;
+		}
+		Table tabla = shared.table(env+"generaldk");
 		
 		// Items are filtered using the condition pk == tableName+'-'+pk
-		QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("generalpk = :usucod");
 		ValueMap values = new ValueMap()				
         .withString(":usucod", tableName+"-"+pk);
-		querySpec = querySpec.withValueMap(values);
-		ItemCollection<QueryOutcome> items = tabla.query(querySpec);
-		Iterator<Item> iterator = items.iterator();
-		
-		while (iterator.hasNext()) {
-			if (att.Type == TYPE.JSON) {
-				String json = iterator.next().getJSON(att.name);
-				// Replace " " for "" so empty values are recognized by the "" value
-				json = json.replace("\" \"","\"\"");
-				col.add(json);
-			}
+		MetricsProbe probe = probe("getAttributes", tableName, false);
+		QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("generalpk = :usucod")
+				.withValueMap(values)
+				.withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		probe.watch(querySpec.getRequest());
+		// All the pages are read inside the call so the whole query is measured
+		probe.call(() -> {
+			ItemCollection<QueryOutcome> items = tabla.query(querySpec);
+			Iterator<Item> iterator = items.iterator();
 			
-			if (att.Type == TYPE.CHAR) {
-				String json = iterator.next().getString(att.name);
-				col.add(json);
+			while (iterator.hasNext()) {
+				col.add(readAttribute(iterator.next(), att));
 			}
-			if (att.Type == TYPE.INT) {
-				col.add(iterator.next().getInt(att.name));
+			return items;
+		}, ItemCollection::getAccumulatedConsumedCapacity);
+		return col;
+	}
+	
+	/**
+	 * Create a query over the records of the composed key table tableName with primary key equals to pk. The query is configured (range key condition, order, page size, limit, attributes) on the returned object and its items are fetched lazily, one page at a time, while iterating.
+	 * 
+	 * @param tableName Table where to filter for PK
+	 * @param pk primary key (identifier) of the records to query
+	 * @return The query, see PartitionQuery
+	 */
+	public PartitionQuery query(String tableName, String pk) {
+		return new PartitionQuery(dynamoDB, env+"generaldk", tableName, pk, getShards(tableName), probe("query", tableName, false));
+	}
+	
+	/**
+	 * Find the primary keys of the items of the composed key table tableName with the range key rk (f.e the customer of a phone), querying the index RANGE_KEY_INDEX instead of scanning the table.
+	 * The keys are fetched lazily, one page at a time, while the stream is consumed, and they are returned in pk order.
+	 * 
+	 * The index must exist (see hasRangeKeyIndex and createRangeKeyIndex), otherwise DynamoDB rejects the query. The index is eventually consistent: items written very recently may not be found yet.
+	 * 
+	 * @param tableName Name of the composed key table
+	 * @param rk Range key of the items
+	 * @return The primary keys of the items
+	 */
+	public Stream<String> findPks(String tableName, String rk) {
+		return findPks(tableName, rk, 0);
+	}
+	
+	/**
+	 * Find the primary keys of the items of the composed key table tableName with the range key rk, see findPks(String, String)
+	 * 
+	 * @param tableName Name of the composed key table
+	 * @param rk Range key of the items
+	 * @param pageSize Maximum number of keys fetched by each Query call, 0 for pages of up to 1 MB
+	 * @return The primary keys of the items
+	 */
+	public Stream<String> findPks(String tableName, String rk, int pageSize) {
+		if (pageSize < 0) {
+			throw new IllegalArgumentException("pageSize can't be negative");
+		}
+		RangeKeyLookup lookup = new RangeKeyLookup(dynamoDB, env+"generaldk", tableName, rk, pageSize, getShards(tableName) > 1, probe("findPks", tableName, false));
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lookup, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * True when the GeneralDK table of the environment has the index RANGE_KEY_INDEX active, so findPks can be used
+	 */
+	public boolean hasRangeKeyIndex() {
+		TableDescription table = dynamoDB.describeTable(env+"generaldk").getTable();
+		if (table.getGlobalSecondaryIndexes() != null) {
+			for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+				if (RANGE_KEY_INDEX.equals(index.getIndexName())) {
+					return IndexStatus.ACTIVE.toString().equals(index.getIndexStatus());
+				}
 			}
-			if (att.Type == TYPE.SHORT) {
-				col.add(iterator.next().getShort(att.name));
+		}
+		return false;
+	}
+	
+	/**
+	 * Add the index RANGE_KEY_INDEX to the GeneralDK table of the environment, projecting only the keys. Provisioned tables get an index with the same capacity as the table.
+	 * DynamoDB builds the index in the background: findPks can be used when hasRangeKeyIndex returns true.
+	 */
+	public void createRangeKeyIndex() {
+		TableDescription table = dynamoDB.describeTable(env+"generaldk").getTable();
+		CreateGlobalSecondaryIndexAction index = new CreateGlobalSecondaryIndexAction()
+				.withIndexName(RANGE_KEY_INDEX)
+				.withKeySchema(new KeySchemaElement("generalrk", KeyType.HASH), new KeySchemaElement("generalpk", KeyType.RANGE))
+				.withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY));
+		boolean onDemand = table.getBillingModeSummary() != null && BillingMode.PAY_PER_REQUEST.toString().equals(table.getBillingModeSummary().getBillingMode());
+		if (!onDemand && table.getProvisionedThroughput() != null) {
+			index.setProvisionedThroughput(new ProvisionedThroughput(table.getProvisionedThroughput().getReadCapacityUnits(), table.getProvisionedThroughput().getWriteCapacityUnits()));
+		}
+		dynamoDB.updateTable(new UpdateTableRequest()
+				.withTableName(env+"generaldk")
+				.withAttributeDefinitions(new AttributeDefinition("generalpk", ScalarAttributeType.S), new AttributeDefinition("generalrk", ScalarAttributeType.S))
+				.withGlobalSecondaryIndexUpdates(new GlobalSecondaryIndexUpdate().withCreate(index)));
+	}
+	
+	/**
+	 * Get the attributes specified in atts of all the items identified by keys. Keys without range key are read from GeneralSK and keys with range key from GeneralDK.
+	 * The keys are grouped in BatchGetItem calls of up to 100 keys sent in parallel, and the keys left unprocessed by DynamoDB are requested again.
+	 * 
+	 * @param keys Keys of the items to fetch
+	 * @param atts Attributes to look for and return. When empty all the attributes are fetched but only the key is returned.
+	 * @return Map with the attributes found for every key. Keys without item are not included.
+	 */
+	public Map<ItemKey, Collection<Attribute>> getItems(Collection<ItemKey> keys, final Collection<Attribute> atts) {
+		// Keys are grouped by physical table and repeated keys are requested only once
+		Map<String, Map<String, ItemKey>> tables = new HashMap<String, Map<String, ItemKey>>();
+		for (ItemKey key : keys) {
+			String tblName = key.isComposed() ? env+"generaldk" : env+"generalsk";
+			Map<String, ItemKey> tableKeys = tables.get(tblName);
+			if (tableKeys == null) {
+				tableKeys = new LinkedHashMap<String, ItemKey>();
+				tables.put(tblName, tableKeys);
 			}
+			tableKeys.put(keyString(toKey(key)), key);
 		}
-		return col;
+		
+		// Only the attributes requested and the key attributes are fetched
+		final Map<String, String> names = atts.isEmpty() ? null : new HashMap<String, String>();
+		String projection = atts.isEmpty() ? null : projection(atts, names) + ", ";
+		
+		final Map<ItemKey, Collection<Attribute>> result = new ConcurrentHashMap<ItemKey, Collection<Attribute>>();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (Map.Entry<String, Map<String, ItemKey>> table : tables.entrySet()) {
+			final String tblName = table.getKey();
+			final String tableProjection = atts.isEmpty() ? null : projection + (tblName.endsWith("generaldk") ? "generalpk, generalrk" : "generalkey");
+			final List<ItemKey> tableKeys = new ArrayList<ItemKey>(table.getValue().values());
+			final MetricsProbe probe = probe("getItems", tblName, false);
+			for (int from = 0; from < tableKeys.size(); from += BatchReader.MAX_BATCH_SIZE) {
+				final List<ItemKey> chunk = tableKeys.subList(from, Math.min(from + BatchReader.MAX_BATCH_SIZE, tableKeys.size()));
+				tasks.add(() -> {
+					Map<String, ItemKey> chunkKeys = new HashMap<String, ItemKey>();
+					List<Map<String, AttributeValue>> requestKeys = new ArrayList<Map<String, AttributeValue>>(chunk.size());
+					for (ItemKey key : chunk) {
+						Map<String, AttributeValue> requestKey = toKey(key);
+						requestKeys.add(requestKey);
+						chunkKeys.put(keyString(requestKey), key);
+					}
+					for (Map<String, AttributeValue> values : BatchReader.readBatch(dynamoDB, tblName, requestKeys, tableProjection, names, probe)) {
+						result.put(chunkKeys.get(keyString(values)), readAttributes(ItemUtils.toItem(values), atts));
+					}
+					return null;
+				});
+			}
+		}
+		Workers.invokeAll(DEFAULT_BULK_PARALLELISM, tasks);
+		return result;
+	}
+	
+	/**
+	 * Enable the write-behind mode: addItem and deleteItem queue the writes in a buffer that coalesces repeated writes to the same key and sends them with BatchWriteItem.
+	 * The buffer is flushed every flushInterval milliseconds or when flushSize keys are waiting. Writers are blocked while maxPending keys are waiting.
+	 * 
+	 * Writes are not durable when addItem/deleteItem return. Call flush() on the buffer to wait for them and disableWriteBehind() (or close() on the buffer) before shutting down.
+	 * 
+	 * @param maxPending Maximum number of keys waiting in the buffer
+	 * @param flushSize Number of keys waiting that triggers a flush
+	 * @param flushInterval Maximum time in milliseconds a write waits in the buffer
+	 * @return The buffer, used to flush it and read its counters
+	 */
+	public synchronized WriteBehindBuffer enableWriteBehind(int maxPending, int flushSize, long flushInterval) {
+		disableWriteBehind();
+		writeBehind = new WriteBehindBuffer(dynamoDB, maxPending, flushSize, flushInterval, (tblName, request) -> invalidate(tblName, BulkWriter.keyOf(request)), tblName -> probe("writeBehind", tblName, true));
+		return writeBehind;
+	}
+	
+	/**
+	 * Disable the write-behind mode, sending all the writes waiting in the buffer. Writes done after this call are sent immediately.
+	 */
+	public synchronized void disableWriteBehind() {
+		WriteBehindBuffer buffer = writeBehind;
+		if (buffer != null) {
+			writeBehind = null;
+			buffer.close();
+		}
+	}
+	
+	public WriteBehindBuffer getWriteBehind() {
+		return writeBehind;
+	}
+	
+	/**
+	 * Define the listener receiving the latency, errors, throttles, retries and consumed capacity of every DynamoDB call (see MetricsRegistry).
+	 * Calls are not measured when there is no listener.
+	 * 
+	 * @param listener Listener receiving the measures, null to disable them
+	 */
+	public void setMetrics(MetricsListener listener) {
+		this.metrics = listener;
+	}
+	
+	public MetricsListener getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Limit the read and write capacity units per second used by this instance (see RateLimiter). Useful to run copies and bulk loads without throttling the rest of the traffic of the tables.
+	 * 
+	 * @param limiter Rate limiter of the calls, null to remove the limit
+	 */
+	public void setRateLimiter(RateLimiter limiter) {
+		this.rateLimiter = limiter;
+	}
+	
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+	
+	/**
+	 * Store the CHAR and JSON attributes with at least threshold characters compressed with deflate, as binary attributes with a small header, which reduces the capacity used and the size of the items.
+	 * Values that don't get smaller are stored as they are. Compressed values are decompressed transparently by getAttribute, getItem, getAttributes, getItems and query,
+	 * whatever the threshold of the instance reading them, so items written with and without compression can coexist in the same table.
+	 * Compressed values can't be used in conditions or filters, and JSON values are stored as they are received, without validating or normalizing them.
+	 * 
+	 * @param threshold Minimum number of characters of the values compressed, 0 to disable the compression
+	 */
+	public void setCompression(int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("threshold can't be negative");
+		}
+		this.compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Minimum number of characters of the CHAR and JSON values stored compressed (0 when the compression is disabled)
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+	
+	/**
+	 * Spread the items of every partition of the composed key table tableName over several partition keys, so a partition with a lot of writes isn't limited by the throughput of a single DynamoDB partition.
+	 * The item with range key rk is stored with generalpk tableName+'-'+pk+'#'+shard, where the shard is computed from rk, so reading, writing or deleting an item still takes a single call.
+	 * getAttributes, query and deleteItems read all the shards in parallel and merge their items in range key order.
+	 * 
+	 * The number of shards is part of the key of the items: set it before writing into the table, with the same value in all the instances, and don't change it once the table has items.
+	 * 
+	 * @param tableName Name of the composed key table
+	 * @param shards Number of partition keys per partition, 1 to disable the sharding
+	 */
+	public void setShards(String tableName, int shards) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("shards must be greater than 0");
+		}
+		if (shards == 1) {
+			this.shards.remove(tableName);
+		} else {
+			this.shards.put(tableName, shards);
+		}
+	}
+	
+	/**
+	 * Number of partition keys per partition of the composed key table tableName (1 when it isn't sharded)
+	 */
+	public int getShards(String tableName) {
+		Integer count = shards.get(tableName);
+		return count == null ? 1 : count;
+	}
+	
+	/**
+	 * Value of generalpk for the item of the composed key table with the keys specified
+	 */
+	private String partitionKey(String tableName, String pk, String rk) {
+		Integer count = shards.get(tableName);
+		if (count == null) {
+			return tableName+"-"+pk;
+		}
+		return shardKey(tableName, pk, (rk.hashCode() & Integer.MAX_VALUE) % count);
+	}
+	
+	/**
+	 * Value of generalpk for a shard of a partition
+	 */
+	static String shardKey(String tableName, String pk, int shard) {
+		return tableName+"-"+pk+'#'+shard;
+	}
+	
+	/**
+	 * Probe measuring (and limiting) the calls of an operation
+	 */
+	private MetricsProbe probe(String operation, String tableName, boolean write) {
+		return MetricsProbe.of(metrics, rateLimiter, operation, tableName, write);
+	}
+	
+	/**
+	 * Enable a near cache in front of the getAttribute reads of this instance. Writes and deletes done through this instance invalidate the cached items.
+	 * 
+	 * @param cache The cache to use, or null to disable it
+	 */
+	public void setNearCache(NearCache cache) {
+		this.nearCache = cache;
+	}
+	
+	public NearCache getNearCache() {
+		return nearCache;
+	}
+	
+	/**
+	 * Read the item through the near cache when it's enabled
+	 */
+	private Item cached(String tableName, String tblName, String key, Supplier<Item> loader) {
+		NearCache cache = nearCache;
+		if (cache == null) {
+			return loader.get();
+		}
+		return cache.get(tableName, tblName+'\u0000'+key, loader);
+	}
+	
+	/**
+	 * Remove the item from the near cache when it's enabled
+	 */
+	private void invalidate(String tblName, String key) {
+		NearCache cache = nearCache;
+		if (cache != null) {
+			cache.invalidate(tblName+'\u0000'+key);
+		}
+	}
+	
+	/**
+	 * Build a projection expression with the attributes, using placeholders (#a0, #a1...) added to names so reserved words can be used as attribute names
+	 */
+	static String projection(Collection<Attribute> atts, Map<String, String> names) {
+		StringBuilder projection = new StringBuilder();
+		for (Attribute at : atts) {
+			String placeholder = "#a"+names.size();
+			names.put(placeholder, at.name);
+			if (projection.length() > 0) {
+				projection.append(", ");
+			}
+			projection.append(placeholder);
+		}
+		return projection.toString();
+	}
+	
+	/**
+	 * Read the attributes present in the item, returning a new Attribute with its value for each one
+	 */
+	static Collection<Attribute> readAttributes(Item item, Collection<Attribute> atts) {
+		Collection<Attribute> found = new LinkedList<Attribute>();
+		for (Attribute at : atts) {
+			if (item.isPresent(at.name)) {
+				found.add(new Attribute(at.name, at.Type, readAttribute(item, at)));
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Read the value of the attribute att from the item. When the attribute is not present the method return null.
+	 */
+	private static Object readAttribute(Item item, Attribute att) {
+		if (!item.isPresent(att.name)) {
+			return null;
+		}
+		return att.Type.codec.read(item, att.name);
+	}
+	
+	/**
+	 * Build the DynamoDB primary key of the item identified by key
+	 */
+	private Map<String, AttributeValue> toKey(ItemKey key) {
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		if (key.isComposed()) {
+			values.put("generalpk", new AttributeValue(partitionKey(key.tableName, key.pk, key.rk)));
+			values.put("generalrk", new AttributeValue(key.tableName+"-"+key.rk));
+		} else {
+			values.put("generalkey", new AttributeValue(key.tableName+"-"+key.pk));
+		}
+		return values;
+	}
+	
+	/**
+	 * Build a string with the primary key values of the item (generalkey for GeneralSK, generalpk + generalrk for GeneralDK)
+	 */
+	static String keyString(Map<String, AttributeValue> item) {
+		AttributeValue single = item.get("generalkey");
+		if (single != null) {
+			return single.getS();
+		}
+		return item.get("generalpk").getS() + '\u0000' + item.get("generalrk").getS();
 	}
 	
 }
@@ -0,0 +1,67 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * ItemKey identifies an item of a logical table: tableName + pk for single key tables (GeneralSK) or tableName + pk + rk for composed key tables (GeneralDK).
+ * 
+ * It's used as key of the maps returned by the multi-key reads of GeneralDB (getItems).
+ *
+ */
+public final class ItemKey {
+	
+	public final String tableName;
+	public final String pk;
+	public final String rk;
+	
+	/*
+	 * Constructor used to identify an item of a single key table
+	 */
+	public ItemKey(String tableName, String pk) {
+		this(tableName, pk, null);
+	}
+	
+	/*
+	 * Constructor used to identify an item of a composed key table
+	 */
+	public ItemKey(String tableName, String pk, String rk) {
+		super();
+		if (tableName == null || pk == null) {
+			throw new IllegalArgumentException("tableName and pk are required");
+		}
+		this.tableName = tableName;
+		this.pk = pk;
+		this.rk = rk;
+	}
+	
+	/**
+	 * True when the key identifies an item of the composed key table (GeneralDK)
+	 */
+	public boolean isComposed() {
+		return rk != null;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = tableName.hashCode();
+		result = 31 * result + pk.hashCode();
+		result = 31 * result + (rk == null ? 0 : rk.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ItemKey)) {
+			return false;
+		}
+		ItemKey other = (ItemKey)obj;
+		return tableName.equals(other.tableName) && pk.equals(other.pk) && (rk == null ? other.rk == null : rk.equals(other.rk));
+	}
+
+	@Override
+	public String toString() {
+		return "ItemKey [tableName=" + tableName + ", pk=" + pk + ", rk=" + rk + "]";
+	}
+	
+}
@@ -0,0 +1,179 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+/**
+ * ItemUpdate changes some attributes of an item with a single UpdateItem call, without reading it and without rewriting the rest of its attributes.
+ *
+ * It's created with GeneralDB.update and configured before executing it:
+ *
+ * <pre>
+ * Collection&lt;Attribute&gt; updated = db.update("Customer", "5555555000")
+ *   .set(new Attribute("name", TYPE.CHAR, "John Smith"))
+ *   .remove("nickname")
+ *   .increment("visits", 1)
+ *   .when(AttributeCondition.itemExists())
+ *   .returning(Arrays.asList(new Attribute("visits", TYPE.LONG)))
+ *   .execute();
+ * </pre>
+ *
+ * Increments are atomic: concurrent updates of the same counter are all applied. When the item doesn't exist it's created with the attributes set and incremented, unless a condition prevents it.
+ *
+ */
+public class ItemUpdate {
+
+	private final GeneralDB db;
+	private final ItemKey itemKey;
+	private final String tblName;
+	private final Map<String, AttributeValue> key;
+	private final String cacheKey;
+
+	private final List<Attribute> sets = new ArrayList<Attribute>();
+	private final List<String> removes = new ArrayList<String>();
+	private final Map<String, Number> increments = new LinkedHashMap<String, Number>();
+	private AttributeCondition condition;
+	private Collection<Attribute> returning = Collections.emptyList();
+
+	ItemUpdate(GeneralDB db, ItemKey itemKey, String tblName, Map<String, AttributeValue> key, String cacheKey) {
+		this.db = db;
+		this.itemKey = itemKey;
+		this.tblName = tblName;
+		this.key = key;
+		this.cacheKey = cacheKey;
+	}
+
+	/**
+	 * Set the value of the attribute, replacing the previous one
+	 */
+	public ItemUpdate set(Attribute attribute) {
+		if (attribute.value == null) {
+			throw new IllegalArgumentException("The attribute "+attribute.name+" has no value, use remove to delete it");
+		}
+		sets.add(attribute);
+		return this;
+	}
+
+	/**
+	 * Remove the attribute from the item
+	 */
+	public ItemUpdate remove(String name) {
+		removes.add(name);
+		return this;
+	}
+
+	/**
+	 * Add delta to the numeric attribute atomically. A missing attribute is created with the value delta.
+	 */
+	public ItemUpdate increment(String name, Number delta) {
+		increments.put(name, delta);
+		return this;
+	}
+
+	/**
+	 * Only update the item when the condition is true. Otherwise execute throws ConditionalCheckFailedException and the item isn't changed.
+	 */
+	public ItemUpdate when(AttributeCondition condition) {
+		this.condition = condition;
+		return this;
+	}
+
+	/**
+	 * Attributes returned by execute, with their values after the update. By default nothing is returned.
+	 */
+	public ItemUpdate returning(Collection<Attribute> atts) {
+		this.returning = atts;
+		return this;
+	}
+
+	/**
+	 * Update the item
+	 *
+	 * @return The attributes requested with returning present in the item after the update
+	 * @throws com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException When the condition is false
+	 */
+	public Collection<Attribute> execute() {
+		UpdateItemRequest request = request();
+		Map<String, AttributeValue> item = db.updateItem(itemKey.tableName, tblName, request, cacheKey);
+		if (returning.isEmpty() || item == null) {
+			return Collections.emptyList();
+		}
+		return GeneralDB.readAttributes(ItemUtils.toItem(item), returning);
+	}
+
+	/**
+	 * Build the UpdateItem request: SET for the attributes set, REMOVE for the attributes removed and ADD for the increments
+	 */
+	UpdateItemRequest request() {
+		if (sets.isEmpty() && removes.isEmpty() && increments.isEmpty()) {
+			throw new IllegalStateException("Nothing to update");
+		}
+		ExpressionAttributes attributes = new ExpressionAttributes();
+		StringBuilder expression = new StringBuilder();
+		if (!sets.isEmpty()) {
+			Map<String, AttributeValue> values = db.toAttributeValues(sets);
+			expression.append("SET ");
+			for (int i = 0; i < sets.size(); i++) {
+				Attribute at = sets.get(i);
+				expression.append(i > 0 ? ", " : "").append(attributes.name(at.name)).append(" = ").append(attributes.value(values.get(at.name)));
+			}
+		}
+		if (!removes.isEmpty()) {
+			expression.append(expression.length() > 0 ? " REMOVE " : "REMOVE ");
+			for (int i = 0; i < removes.size(); i++) {
+				expression.append(i > 0 ? ", " : "").append(attributes.name(removes.get(i)));
+			}
+		}
+		if (!increments.isEmpty()) {
+			expression.append(expression.length() > 0 ? " ADD " : "ADD ");
+			int i = 0;
+			for (Map.Entry<String, Number> increment : increments.entrySet()) {
+				String delta = new BigDecimal(increment.getValue().toString()).toPlainString();
+				expression.append(i++ > 0 ? ", " : "").append(attributes.name(increment.getKey())).append(' ').append(attributes.value(new AttributeValue().withN(delta)));
+			}
+		}
+		UpdateItemRequest request = new UpdateItemRequest()
+				.withTableName(tblName)
+				.withKey(key)
+				.withUpdateExpression(expression.toString());
+		if (condition != null) {
+			request.setConditionExpression(condition.expression(attributes, key.containsKey("generalkey") ? "generalkey" : "generalpk"));
+		}
+		return request
+				.withExpressionAttributeNames(attributes.getNames())
+				.withExpressionAttributeValues(attributes.getValues())
+				.withReturnValues(returning.isEmpty() ? ReturnValue.NONE : ReturnValue.ALL_NEW);
+	}
+
+	ItemKey itemKey() {
+		return itemKey;
+	}
+
+	Map<String, AttributeValue> key() {
+		return key;
+	}
+
+	String tblName() {
+		return tblName;
+	}
+
+	String cacheKey() {
+		return cacheKey;
+	}
+
+	@Override
+	public String toString() {
+		return "ItemUpdate [key=" + itemKey + ", set=" + sets.size() + ", remove=" + removes + ", increment=" + increments.keySet() + "]";
+	}
+
+}
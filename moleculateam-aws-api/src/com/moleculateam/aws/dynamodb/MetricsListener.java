@@ -0,0 +1,41 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * MetricsListener receives the measures of the DynamoDB calls done by a GeneralDB. It's defined with GeneralDB.setMetrics (see MetricsRegistry for an in-memory implementation).
+ *
+ * operation is the GeneralDB method that made the call (f.e "addItem", "query", "getItems") and tableName the logical table (f.e "Customer").
+ * Calls covering several logical tables (getItems, copies, write-behind flushes) use the physical table name (f.e "TEST-generaldk").
+ *
+ * Methods are called from the threads doing the calls, so implementations must be thread safe and fast.
+ *
+ */
+public interface MetricsListener {
+
+	/**
+	 * A DynamoDB call ended
+	 *
+	 * @param operation GeneralDB operation
+	 * @param tableName Logical table name
+	 * @param nanos Duration of the call, including the retries done by the client
+	 * @param success False when the call ended with an exception
+	 */
+	void operation(String operation, String tableName, long nanos, boolean success);
+
+	/**
+	 * A request was throttled by DynamoDB (an exception of the client or items returned as unprocessed by a batch call)
+	 */
+	default void throttled(String operation, String tableName) {
+	}
+
+	/**
+	 * A request was sent again, by the client after an error or by GeneralDB for the unprocessed items of a batch call
+	 */
+	default void retried(String operation, String tableName) {
+	}
+
+	/**
+	 * Capacity units consumed by a call, as returned by DynamoDB (ReturnConsumedCapacity)
+	 */
+	default void consumedCapacity(String operation, String tableName, double readUnits, double writeUnits) {
+	}
+}
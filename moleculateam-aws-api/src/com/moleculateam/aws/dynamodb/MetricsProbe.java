@@ -0,0 +1,197 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+
+/**
+ * MetricsProbe measures the DynamoDB calls of an operation over a table and reports them to a MetricsListener and to a RateLimiter, which makes the calls wait for capacity.
+ *
+ * NONE is used when there is no listener nor limiter: it runs the calls without measuring them, so the calls pay nothing when metrics are disabled.
+ * The probe is attached to the requests as progress listener to count the retries done by the client, and ThrottleHandler uses it to count the throttled attempts.
+ */
+class MetricsProbe implements ProgressListener {
+
+	static final MetricsProbe NONE = new MetricsProbe(null, null, null, null, false);
+
+	private final MetricsListener listener;
+	private final RateLimiter limiter;
+	private final String operation;
+	private final String tableName;
+	private final boolean write;
+
+	private MetricsProbe(MetricsListener listener, RateLimiter limiter, String operation, String tableName, boolean write) {
+		this.listener = listener;
+		this.limiter = limiter;
+		this.operation = operation;
+		this.tableName = tableName;
+		this.write = write;
+	}
+
+	/**
+	 * Create the probe of an operation
+	 *
+	 * @param listener Listener receiving the measures (null when metrics are disabled)
+	 * @param limiter Rate limiter of the calls (null when the calls are not limited)
+	 * @param operation GeneralDB operation
+	 * @param tableName Logical table name
+	 * @param write True when the calls consume write capacity
+	 */
+	static MetricsProbe of(MetricsListener listener, RateLimiter limiter, String operation, String tableName, boolean write) {
+		if (listener == null && limiter == null) {
+			return NONE;
+		}
+		return new MetricsProbe(listener, limiter, operation, tableName, write);
+	}
+
+	/**
+	 * Value of ReturnConsumedCapacity for the requests: TOTAL when measuring, NONE (the DynamoDB default) otherwise. The specs of the document API don't accept null.
+	 */
+	ReturnConsumedCapacity returnConsumedCapacity() {
+		return this == NONE ? ReturnConsumedCapacity.NONE : ReturnConsumedCapacity.TOTAL;
+	}
+
+	/**
+	 * Attach the probe to the request to count the retries of the client and the throttled attempts
+	 */
+	<R extends AmazonWebServiceRequest> R watch(R request) {
+		if (this != NONE) {
+			request.setGeneralProgressListener(this);
+		}
+		return request;
+	}
+
+	/**
+	 * Run a call measuring its duration and the capacity it consumed. When there is a limiter the call waits first for one capacity unit.
+	 *
+	 * @param call DynamoDB call
+	 * @param capacity Gets the consumed capacity from the result
+	 */
+	<T> T call(Supplier<T> call, Function<T, ConsumedCapacity> capacity) {
+		if (this == NONE) {
+			return call.get();
+		}
+		T result = measure(call);
+		limit(consumed(capacity.apply(result)));
+		return result;
+	}
+
+	/**
+	 * Run a batch call measuring its duration and the capacity it consumed in every table
+	 *
+	 * @param call DynamoDB call
+	 * @param capacity Gets the consumed capacities from the result
+	 */
+	<T> T callBatch(Supplier<T> call, Function<T, List<ConsumedCapacity>> capacity) {
+		if (this == NONE) {
+			return call.get();
+		}
+		T result = measure(call);
+		List<ConsumedCapacity> consumed = capacity.apply(result);
+		if (consumed != null) {
+			double units = 0;
+			for (ConsumedCapacity tableCapacity : consumed) {
+				units += consumed(tableCapacity);
+			}
+			limit(units);
+		}
+		return result;
+	}
+
+	/**
+	 * A batch call returned unprocessed items, which are going to be sent again
+	 */
+	void unprocessed() {
+		throttled();
+		if (listener != null) {
+			listener.retried(operation, tableName);
+		}
+	}
+
+	@Override
+	public void progressChanged(ProgressEvent progressEvent) {
+		if (listener != null && progressEvent.getEventType() == ProgressEventType.CLIENT_REQUEST_RETRY_EVENT) {
+			listener.retried(operation, tableName);
+		}
+	}
+
+	private <T> T measure(Supplier<T> call) {
+		if (limiter != null) {
+			limiter.acquire(write, 1);
+		}
+		long start = System.nanoTime();
+		T result;
+		try {
+			result = call.get();
+		} catch (RuntimeException e) {
+			if (listener != null) {
+				listener.operation(operation, tableName, System.nanoTime() - start, false);
+			}
+			throw e;
+		}
+		if (listener != null) {
+			listener.operation(operation, tableName, System.nanoTime() - start, true);
+		}
+		return result;
+	}
+
+	/**
+	 * Report the capacity consumed to the listener and return the units (0 when DynamoDB didn't return it)
+	 */
+	private double consumed(ConsumedCapacity capacity) {
+		if (capacity == null || capacity.getCapacityUnits() == null) {
+			return 0;
+		}
+		// With TOTAL DynamoDB only returns CapacityUnits, which are read or write units depending on the call
+		double units = capacity.getCapacityUnits();
+		if (listener != null) {
+			listener.consumedCapacity(operation, tableName, write ? 0 : units, write ? units : 0);
+		}
+		return units;
+	}
+
+	/**
+	 * Correct the unit taken from the limiter before the call with the units consumed
+	 */
+	private void limit(double units) {
+		if (limiter != null && units > 0) {
+			limiter.consumed(write, 1, units);
+		}
+	}
+
+	private void throttled() {
+		if (listener != null) {
+			listener.throttled(operation, tableName);
+		}
+		if (limiter != null) {
+			limiter.throttled(write);
+		}
+	}
+
+	/**
+	 * Request handler of the clients created by ClientRegistry counting the attempts throttled by DynamoDB (including the ones retried by the client)
+	 */
+	static class ThrottleHandler extends RequestHandler2 {
+		@Override
+		public void afterAttempt(HandlerAfterAttemptContext context) {
+			Exception exception = context.getException();
+			if (exception instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException)exception)) {
+				ProgressListener progressListener = context.getRequest().getOriginalRequest().getGeneralProgressListener();
+				if (progressListener instanceof MetricsProbe) {
+					((MetricsProbe)progressListener).throttled();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MetricsRegistry is a lightweight in-memory MetricsListener. It keeps, per operation and logical table, the number of calls, errors, throttles and retries, the capacity units consumed and a latency histogram.
+ *
+ * <pre>
+ * MetricsRegistry registry = new MetricsRegistry();
+ * db.setMetrics(registry);
+ * ...
+ * System.out.println(registry.dump());
+ * double p99 = registry.get("getItem", "Customer").getPercentileMillis(99);
+ * </pre>
+ *
+ * Recording only updates counters (no locks, no allocation once the operation and table have been seen).
+ *
+ */
+public class MetricsRegistry implements MetricsListener {
+
+	private final Map<String, Map<String, OperationStats>> operations = new ConcurrentHashMap<String, Map<String, OperationStats>>();
+
+	/**
+	 * Measures of an operation over a logical table
+	 */
+	public static class OperationStats {
+		// Latencies are counted in microseconds in 4 buckets per power of 2 (error below 25%)
+		private static final int BUCKETS = 4 * 40;
+
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder throttles = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final DoubleAdder readUnits = new DoubleAdder();
+		private final DoubleAdder writeUnits = new DoubleAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+		void record(long nanos, boolean success) {
+			requests.increment();
+			if (!success) {
+				errors.increment();
+			}
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			latencies.incrementAndGet(bucket(nanos / 1000));
+		}
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public long getThrottles() {
+			return throttles.sum();
+		}
+
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		public double getReadUnits() {
+			return readUnits.sum();
+		}
+
+		public double getWriteUnits() {
+			return writeUnits.sum();
+		}
+
+		public double getMeanMillis() {
+			long count = requests.sum();
+			return count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+		}
+
+		public double getMaxMillis() {
+			return maxNanos.get() / 1e6;
+		}
+
+		/**
+		 * Latency in milliseconds below which the percentile p (0-100) of the calls ended. It's the upper bound of the histogram bucket, so it overestimates up to 25%.
+		 */
+		public double getPercentileMillis(double p) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = latencies.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long)Math.ceil(total * p / 100));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(upperBound(i) / 1000.0, getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("requests=%d errors=%d throttles=%d retries=%d rcu=%.1f wcu=%.1f mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+					getRequests(), getErrors(), getThrottles(), getRetries(), getReadUnits(), getWriteUnits(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+		}
+
+		/**
+		 * Bucket of a latency: values below 4 have their own bucket, the rest use the 2 bits after the highest one
+		 */
+		private static int bucket(long micros) {
+			if (micros < 4) {
+				return (int)Math.max(0, micros);
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(micros);
+			int bucket = (exponent - 1) * 4 + (int)((micros >>> (exponent - 2)) & 3);
+			return Math.min(bucket, BUCKETS - 1);
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < 4) {
+				return bucket + 1;
+			}
+			int exponent = bucket / 4 + 1;
+			return (long)(5 + bucket % 4) << (exponent - 2);
+		}
+	}
+
+	@Override
+	public void operation(String operation, String tableName, long nanos, boolean success) {
+		stats(operation, tableName).record(nanos, success);
+	}
+
+	@Override
+	public void throttled(String operation, String tableName) {
+		stats(operation, tableName).throttles.increment();
+	}
+
+	@Override
+	public void retried(String operation, String tableName) {
+		stats(operation, tableName).retries.increment();
+	}
+
+	@Override
+	public void consumedCapacity(String operation, String tableName, double readUnits, double writeUnits) {
+		OperationStats stats = stats(operation, tableName);
+		stats.readUnits.add(readUnits);
+		stats.writeUnits.add(writeUnits);
+	}
+
+	/**
+	 * Measures of the operation over the logical table, or null when there are none
+	 */
+	public OperationStats get(String operation, String tableName) {
+		Map<String, OperationStats> tables = operations.get(operation);
+		return tables == null ? null : tables.get(tableName);
+	}
+
+	/**
+	 * All the measures by operation and logical table, sorted by name
+	 */
+	public Map<String, Map<String, OperationStats>> getStats() {
+		Map<String, Map<String, OperationStats>> stats = new TreeMap<String, Map<String, OperationStats>>();
+		for (Map.Entry<String, Map<String, OperationStats>> operation : operations.entrySet()) {
+			stats.put(operation.getKey(), Collections.unmodifiableMap(new TreeMap<String, OperationStats>(operation.getValue())));
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Remove all the measures
+	 */
+	public void reset() {
+		operations.clear();
+	}
+
+	/**
+	 * Text with a line per operation and logical table
+	 */
+	public String dump() {
+		StringBuilder dump = new StringBuilder();
+		for (Map.Entry<String, Map<String, OperationStats>> operation : getStats().entrySet()) {
+			for (Map.Entry<String, OperationStats> table : operation.getValue().entrySet()) {
+				dump.append(operation.getKey()).append(' ').append(table.getKey()).append(' ').append(table.getValue()).append(System.lineSeparator());
+			}
+		}
+		return dump.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+
+	private OperationStats stats(String operation, String tableName) {
+		Map<String, OperationStats> tables = operations.get(operation);
+		if (tables == null) {
+			tables = operations.computeIfAbsent(operation, key -> new ConcurrentHashMap<String, OperationStats>());
+		}
+		OperationStats stats = tables.get(tableName);
+		if (stats == null) {
+			stats = tables.computeIfAbsent(tableName, key -> new OperationStats());
+		}
+		return stats;
+	}
+}
@@ -0,0 +1,327 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+/**
+ * NearCache is an in-process read-through cache of the items read by GeneralDB.getAttribute. It's enabled with GeneralDB.setNearCache.
+ *
+ * The cache is bounded by number of entries and by an estimation of the bytes used. When a bound is exceeded the least recently used entries are evicted.
+ * Entries expire after a TTL that can be defined per logical table (f.e "Customer"). Items not found are also cached so repeated reads of a missing key don't reach DynamoDB.
+ *
+ * Concurrent misses on the same key trigger a single read: the other callers wait for it and share the result.
+ * Writes and deletes done through the same GeneralDB instance invalidate the affected entries.
+ *
+ */
+public class NearCache {
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final Item NOT_FOUND = new Item();
+
+	private final Segment[] segments;
+	private final long defaultTtl;
+	private final Map<String, Long> ttls = new ConcurrentHashMap<String, Long>();
+	private final Map<String, CompletableFuture<Item>> loading = new ConcurrentHashMap<String, CompletableFuture<Item>>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private static class Entry {
+		final Item item;
+		final long bytes;
+		final long expiresAt;
+
+		Entry(Item item, long bytes, long expiresAt) {
+			this.item = item;
+			this.bytes = bytes;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * Part of the cache with its own lock and its own share of the bounds
+	 */
+	private class Segment {
+		final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		final int maxEntries;
+		final long maxBytes;
+		long bytes;
+		// Incremented on every invalidation so a read started before it doesn't store a stale item
+		long generation;
+
+		Segment(int maxEntries, long maxBytes) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized Entry get(String key, long now) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expiresAt <= now) {
+				remove(key);
+				return null;
+			}
+			return entry;
+		}
+
+		synchronized void put(String key, Entry entry, long expectedGeneration) {
+			if (generation != expectedGeneration) {
+				return;
+			}
+			remove(key);
+			entries.put(key, entry);
+			bytes += entry.bytes;
+			Iterator<Entry> eldest = entries.values().iterator();
+			while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+				bytes -= eldest.next().bytes;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+
+		synchronized void remove(String key) {
+			Entry entry = entries.remove(key);
+			if (entry != null) {
+				bytes -= entry.bytes;
+			}
+		}
+
+		synchronized void invalidate(String key) {
+			generation++;
+			remove(key);
+		}
+
+		synchronized void invalidatePrefix(String prefix) {
+			generation++;
+			Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, Entry> entry = it.next();
+				if (entry.getKey().startsWith(prefix)) {
+					bytes -= entry.getValue().bytes;
+					it.remove();
+				}
+			}
+		}
+
+		synchronized void clear() {
+			generation++;
+			entries.clear();
+			bytes = 0;
+		}
+
+		synchronized long generation() {
+			return generation;
+		}
+	}
+
+	/**
+	 * Constructor used to define the bounds of the cache
+	 *
+	 * @param maxEntries Maximum number of items cached
+	 * @param maxBytes Maximum estimated size in bytes of the items cached
+	 * @param ttlMillis Time to live of the entries of the tables without a specific TTL
+	 */
+	public NearCache(int maxEntries, long maxBytes, long ttlMillis) {
+		if (maxEntries < 1 || maxBytes < 1 || ttlMillis < 1) {
+			throw new IllegalArgumentException("maxEntries, maxBytes and ttlMillis must be greater than 0");
+		}
+		// A power of two of segments, no more than the entries (or bytes) allowed, sharing the bounds so they add up to the bounds of the cache
+		int count = Integer.highestOneBit((int)Math.min(MAX_SEGMENTS, Math.min(maxEntries, maxBytes)));
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0), maxBytes / count + (i < maxBytes % count ? 1 : 0));
+		}
+		this.defaultTtl = ttlMillis;
+	}
+
+	/**
+	 * Define the time to live of the entries of a logical table
+	 *
+	 * @param tableName Logical table name (f.e "Customer")
+	 * @param ttlMillis Time to live in milliseconds
+	 */
+	public void setTtl(String tableName, long ttlMillis) {
+		if (ttlMillis < 1) {
+			throw new IllegalArgumentException("ttlMillis must be greater than 0");
+		}
+		ttls.put(tableName, ttlMillis);
+	}
+
+	/**
+	 * Get the cached item or read it with the loader. Concurrent misses on the same key share a single call to the loader.
+	 *
+	 * @param tableName Logical table name, used to find the TTL
+	 * @param key Cache key (physical table and primary key)
+	 * @param loader Reads the item from DynamoDB, returns null when the item doesn't exist
+	 * @return The item or null when it doesn't exist
+	 */
+	Item get(String tableName, String key, Supplier<Item> loader) {
+		Segment segment = segmentFor(key);
+		Entry entry = segment.get(key, System.currentTimeMillis());
+		if (entry != null) {
+			hits.increment();
+			return entry.item == NOT_FOUND ? null : entry.item;
+		}
+		misses.increment();
+
+		CompletableFuture<Item> load = new CompletableFuture<Item>();
+		CompletableFuture<Item> running = loading.putIfAbsent(key, load);
+		if (running != null) {
+			// Another thread is already reading the key
+			try {
+				return running.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+			}
+		}
+		try {
+			long generation = segment.generation();
+			Item item = loader.get();
+			Item cached = item == null ? NOT_FOUND : item;
+			Long ttl = ttls.get(tableName);
+			segment.put(key, new Entry(cached, estimateSize(key, item), System.currentTimeMillis() + (ttl == null ? defaultTtl : ttl)), generation);
+			load.complete(item);
+			return item;
+		} catch (RuntimeException e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, load);
+		}
+	}
+
+	/**
+	 * Remove the entry of the key
+	 */
+	void invalidate(String key) {
+		segmentFor(key).invalidate(key);
+		loading.remove(key);
+	}
+
+	/**
+	 * Remove all the entries with keys starting with prefix (f.e all the items of a partition)
+	 */
+	void invalidatePrefix(String prefix) {
+		for (Segment segment : segments) {
+			segment.invalidatePrefix(prefix);
+		}
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Number of reads answered by the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Number of reads not found in the cache (including the ones that waited for a concurrent read)
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Number of entries removed to keep the cache bounded
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Number of entries cached
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Estimated bytes used by the entries cached
+	 */
+	public long bytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				bytes += segment.bytes;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "NearCache [size=" + size() + ", bytes=" + bytes() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private Segment segmentFor(String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
+
+	/**
+	 * Rough size of the entry: 2 bytes per char of the key and of the attribute names and strings of the item, the size of its binaries and numbers, plus the entry overhead.
+	 * It walks the values of the item instead of serializing it, so sizing an entry costs little compared to loading it.
+	 */
+	private static long estimateSize(String key, Item item) {
+		long size = 64 + 2L * key.length();
+		if (item != null) {
+			for (Map.Entry<String, Object> attribute : item.attributes()) {
+				size += 2L * attribute.getKey().length() + estimateSize(attribute.getValue());
+			}
+		}
+		return size;
+	}
+
+	private static long estimateSize(Object value) {
+		if (value instanceof String) {
+			return 2L * ((String)value).length();
+		}
+		if (value instanceof byte[]) {
+			return ((byte[])value).length;
+		}
+		if (value instanceof ByteBuffer) {
+			return ((ByteBuffer)value).remaining();
+		}
+		if (value instanceof Collection) {
+			long size = 16;
+			for (Object element : (Collection<?>)value) {
+				size += estimateSize(element);
+			}
+			return size;
+		}
+		if (value instanceof Map) {
+			long size = 16;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+				size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+			}
+			return size;
+		}
+		// Numbers, booleans and nulls
+		return 16;
+	}
+}
@@ -0,0 +1,71 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * ParallelScan reads a whole DynamoDB table splitting it in segments (Segment/TotalSegments). Each segment is scanned by its own worker following LastEvaluatedKey until the last page.
+ */
+class ParallelScan {
+
+	/**
+	 * Receives the pages fetched by the scan workers. It's called concurrently from different segments.
+	 * lastKey is the LastEvaluatedKey of the page, the key to resume the segment after it (null for the last page).
+	 */
+	interface PageHandler {
+		void page(int segment, List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastKey);
+	}
+
+	/**
+	 * Scan all the items of the table using totalSegments segments scanned in parallel
+	 *
+	 * @param client DynamoDB client used to scan
+	 * @param tableName Physical name of the table
+	 * @param totalSegments Number of segments (and workers) used
+	 * @param handler Handler receiving every page fetched
+	 * @param probe Probe measuring the calls
+	 */
+	static void run(final AmazonDynamoDB client, final String tableName, final int totalSegments, final PageHandler handler, final MetricsProbe probe) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(totalSegments);
+		for (int i = 0; i < totalSegments; i++) {
+			final int segment = i;
+			tasks.add(() -> {
+				scanSegment(client, tableName, segment, totalSegments, null, handler, probe);
+				return null;
+			});
+		}
+		Workers.invokeAll(totalSegments, tasks);
+	}
+
+	/**
+	 * Scan all the pages of a single segment
+	 *
+	 * @param startKey Key after which the segment is scanned (null to scan it from the beginning)
+	 */
+	static void scanSegment(AmazonDynamoDB client, String tableName, int segment, int totalSegments, Map<String, AttributeValue> startKey, PageHandler handler, MetricsProbe probe) {
+		Map<String, AttributeValue> lastKey = startKey;
+		do {
+			ScanRequest scanRequest = probe.watch(new ScanRequest()
+					.withTableName(tableName)
+					.withSegment(segment)
+					.withTotalSegments(totalSegments)
+					.withExclusiveStartKey(lastKey)
+					.withReturnConsumedCapacity(probe.returnConsumedCapacity()));
+			ScanResult result = probe.call(() -> client.scan(scanRequest), ScanResult::getConsumedCapacity);
+			lastKey = result.getLastEvaluatedKey();
+			if (lastKey != null && lastKey.isEmpty()) {
+				lastKey = null;
+			}
+			if (!result.getItems().isEmpty()) {
+				handler.page(segment, result.getItems(), lastKey);
+			}
+		} while (lastKey != null);
+	}
+}
@@ -0,0 +1,337 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+/**
+ * PartitionQuery reads the items of a partition of a composed key table (all the items with the same tableName and pk) lazily, one page at a time, so partitions of any size are read with constant memory.
+ *
+ * It's created with GeneralDB.query and configured before iterating:
+ *
+ * <pre>
+ * db.query("CustomerPhone", "5555555000")
+ *   .where(RangeCondition.beginsWith("(+1)"))
+ *   .reverse()
+ *   .pageSize(100)
+ *   .limit(1000)
+ *   .attributes(Arrays.asList(new Attribute("PhoneType", TYPE.CHAR)))
+ *   .stream()
+ * </pre>
+ *
+ * Every QueryItem returned has a continuation token. A new query with the same parameters and startAfter(token) resumes after that item.
+ *
+ * When the table is sharded (see GeneralDB.setShards) the first page of every shard is fetched in parallel and the items of the shards are merged in range key order.
+ *
+ */
+public class PartitionQuery implements Iterable<QueryItem> {
+
+	private final AmazonDynamoDB client;
+	private final String tblName;
+	private final String tableName;
+	private final String pk;
+	private final int shards;
+	private final MetricsProbe probe;
+
+	private RangeCondition condition;
+	private boolean forward = true;
+	private int pageSize;
+	private long limit = Long.MAX_VALUE;
+	private String startToken;
+	private Collection<Attribute> atts = Collections.emptyList();
+
+	PartitionQuery(AmazonDynamoDB client, String tblName, String tableName, String pk, int shards, MetricsProbe probe) {
+		this.client = client;
+		this.tblName = tblName;
+		this.tableName = tableName;
+		this.pk = pk;
+		this.shards = shards;
+		this.probe = probe;
+	}
+
+	/**
+	 * Only return the items with range key matching the condition
+	 */
+	public PartitionQuery where(RangeCondition condition) {
+		this.condition = condition;
+		return this;
+	}
+
+	/**
+	 * Return the items in ascending (true, default) or descending (false) range key order
+	 */
+	public PartitionQuery forward(boolean forward) {
+		this.forward = forward;
+		return this;
+	}
+
+	/**
+	 * Return the items in descending range key order
+	 */
+	public PartitionQuery reverse() {
+		return forward(false);
+	}
+
+	/**
+	 * Maximum number of items fetched by each Query call. By default DynamoDB returns pages of up to 1 MB.
+	 */
+	public PartitionQuery pageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be greater than 0");
+		}
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * Maximum number of items returned
+	 */
+	public PartitionQuery limit(long limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit can't be negative");
+		}
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Resume the query after the item with the continuation token specified (see QueryItem.getToken)
+	 */
+	public PartitionQuery startAfter(String token) {
+		this.startToken = token;
+		return this;
+	}
+
+	/**
+	 * Attributes to return with each item. By default only the keys are returned.
+	 */
+	public PartitionQuery attributes(Collection<Attribute> atts) {
+		this.atts = atts;
+		return this;
+	}
+
+	@Override
+	public Iterator<QueryItem> iterator() {
+		final Iterator<Map<String, AttributeValue>> items = shards == 1 ? new PageIterator(tableName+"-"+pk) : new MergeIterator();
+		return new Iterator<QueryItem>() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public QueryItem next() {
+				return toQueryItem(items.next());
+			}
+		};
+	}
+
+	/**
+	 * Sequential stream of the items. Pages are fetched as the stream is consumed.
+	 */
+	public Stream<QueryItem> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Build the Query request of the page that starts after startKey
+	 */
+	QueryRequest request(String generalpk, Map<String, AttributeValue> startKey, int pageLimit) {
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":pk", new AttributeValue(generalpk));
+		String keyCondition = "generalpk = :pk";
+		if (condition != null) {
+			keyCondition += " and "+condition.expression();
+			values.put(":rk", new AttributeValue(tableName+"-"+condition.value));
+			if (condition.to != null) {
+				values.put(":rkto", new AttributeValue(tableName+"-"+condition.to));
+			}
+		}
+
+		// Only the attributes requested and the range key (used to build the tokens) are fetched
+		Map<String, String> names = new HashMap<String, String>();
+		String projection = atts.isEmpty() ? "generalrk" : GeneralDB.projection(atts, names)+", generalrk";
+
+		QueryRequest request = new QueryRequest()
+				.withTableName(tblName)
+				.withKeyConditionExpression(keyCondition)
+				.withExpressionAttributeValues(values)
+				.withProjectionExpression(projection)
+				.withScanIndexForward(forward)
+				.withExclusiveStartKey(startKey)
+				.withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		if (!names.isEmpty()) {
+			request.withExpressionAttributeNames(names);
+		}
+		if (pageLimit > 0) {
+			request.withLimit(pageLimit);
+		}
+		return probe.watch(request);
+	}
+
+	/**
+	 * Convert an item fetched into a QueryItem
+	 */
+	QueryItem toQueryItem(Map<String, AttributeValue> values) {
+		String rk = values.get("generalrk").getS();
+		Collection<Attribute> found = atts.isEmpty() ? Collections.<Attribute>emptyList() : GeneralDB.readAttributes(ItemUtils.toItem(values), atts);
+		return new QueryItem(pk, rk.substring(tableName.length()+1), found, Base64.getUrlEncoder().withoutPadding().encodeToString(rk.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Build the key to start after the item identified by the token. The token is the range key, so it's valid for any shard.
+	 */
+	Map<String, AttributeValue> startKey(String generalpk, String token) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("generalpk", new AttributeValue(generalpk));
+		try {
+			key.put("generalrk", new AttributeValue(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token "+token, e);
+		}
+		return key;
+	}
+
+	/**
+	 * Iterator over the items of a generalpk, fetching the next page when the current one is consumed
+	 */
+	private class PageIterator implements Iterator<Map<String, AttributeValue>> {
+		private final String generalpk;
+		private Iterator<Map<String, AttributeValue>> page = Collections.emptyIterator();
+		private Map<String, AttributeValue> lastKey;
+		private boolean lastPage;
+		private long returned;
+
+		PageIterator(String generalpk) {
+			this.generalpk = generalpk;
+			this.lastKey = startToken == null ? null : startKey(generalpk, startToken);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (returned >= limit) {
+				return false;
+			}
+			while (!page.hasNext() && !lastPage) {
+				long remaining = limit - returned;
+				int pageLimit = pageSize > 0 ? (int)Math.min(pageSize, remaining) : (remaining < Integer.MAX_VALUE ? (int)remaining : 0);
+				QueryRequest request = request(generalpk, lastKey, pageLimit);
+				QueryResult result = probe.call(() -> client.query(request), QueryResult::getConsumedCapacity);
+				List<Map<String, AttributeValue>> items = result.getItems();
+				page = items.iterator();
+				lastKey = result.getLastEvaluatedKey();
+				lastPage = lastKey == null || lastKey.isEmpty();
+			}
+			return page.hasNext();
+		}
+
+		@Override
+		public Map<String, AttributeValue> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			returned++;
+			return page.next();
+		}
+	}
+
+	/**
+	 * Iterator merging the items of all the shards in range key order
+	 */
+	private class MergeIterator implements Iterator<Map<String, AttributeValue>> {
+		private final PriorityQueue<Head> heads;
+		private long returned;
+
+		MergeIterator() {
+			Comparator<Head> order = (a, b) -> compareRangeKeys(a.rk, b.rk);
+			heads = new PriorityQueue<Head>(shards, forward ? order : order.reversed());
+			List<PageIterator> iterators = new ArrayList<PageIterator>(shards);
+			List<Callable<Boolean>> firstPages = new ArrayList<Callable<Boolean>>(shards);
+			for (int shard = 0; shard < shards; shard++) {
+				PageIterator iterator = new PageIterator(GeneralDB.shardKey(tableName, pk, shard));
+				iterators.add(iterator);
+				firstPages.add(iterator::hasNext);
+			}
+			Workers.invokeAll(shards, firstPages);
+			for (PageIterator iterator : iterators) {
+				advance(iterator);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return returned < limit && !heads.isEmpty();
+		}
+
+		@Override
+		public Map<String, AttributeValue> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			returned++;
+			Head head = heads.poll();
+			advance(head.iterator);
+			return head.item;
+		}
+
+		private void advance(PageIterator iterator) {
+			if (iterator.hasNext()) {
+				heads.add(new Head(iterator.next(), iterator));
+			}
+		}
+	}
+
+	/**
+	 * Next item of a shard
+	 */
+	private static class Head {
+		final Map<String, AttributeValue> item;
+		final String rk;
+		final PageIterator iterator;
+
+		Head(Map<String, AttributeValue> item, PageIterator iterator) {
+			this.item = item;
+			this.rk = item.get("generalrk").getS();
+			this.iterator = iterator;
+		}
+	}
+
+	/**
+	 * Compare range keys as DynamoDB sorts them (by UTF-8 bytes, the same order as the code points)
+	 */
+	static int compareRangeKeys(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			if (ca != cb) {
+				return Integer.compare(ca, cb);
+			}
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return Integer.compare(a.length() - i, b.length() - j);
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collection;
+
+/**
+ * QueryItem is an item returned by a partition query (see GeneralDB.query): its keys, the attributes requested and the continuation token that resumes the query after it.
+ *
+ */
+public class QueryItem {
+	
+	public final String pk;
+	public final String rk;
+	public final Collection<Attribute> attributes;
+	private final String token;
+	
+	QueryItem(String pk, String rk, Collection<Attribute> attributes, String token) {
+		this.pk = pk;
+		this.rk = rk;
+		this.attributes = attributes;
+		this.token = token;
+	}
+	
+	/**
+	 * Continuation token to resume the query with the item that follows this one (see PartitionQuery.startAfter)
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryItem [pk=" + pk + ", rk=" + rk + ", attributes=" + attributes + "]";
+	}
+	
+}
@@ -0,0 +1,90 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * RangeCondition is a condition on the range key of a composed key table, used to query a part of a partition (see GeneralDB.query).
+ * 
+ * Range keys are compared as strings, in the same order DynamoDB stores them.
+ *
+ */
+public class RangeCondition {
+	
+	enum Operator { BEGINS_WITH, BETWEEN, GREATER_THAN, GREATER_OR_EQUAL, LESS_THAN, LESS_OR_EQUAL };
+	
+	final Operator operator;
+	final String value;
+	final String to;
+	
+	private RangeCondition(Operator operator, String value, String to) {
+		this.operator = operator;
+		this.value = value;
+		this.to = to;
+	}
+	
+	/**
+	 * Range keys starting with prefix
+	 */
+	public static RangeCondition beginsWith(String prefix) {
+		return new RangeCondition(Operator.BEGINS_WITH, prefix, null);
+	}
+	
+	/**
+	 * Range keys between from and to (both included)
+	 */
+	public static RangeCondition between(String from, String to) {
+		return new RangeCondition(Operator.BETWEEN, from, to);
+	}
+	
+	/**
+	 * Range keys greater than rk
+	 */
+	public static RangeCondition greaterThan(String rk) {
+		return new RangeCondition(Operator.GREATER_THAN, rk, null);
+	}
+	
+	/**
+	 * Range keys greater than or equal to rk
+	 */
+	public static RangeCondition greaterOrEqual(String rk) {
+		return new RangeCondition(Operator.GREATER_OR_EQUAL, rk, null);
+	}
+	
+	/**
+	 * Range keys less than rk
+	 */
+	public static RangeCondition lessThan(String rk) {
+		return new RangeCondition(Operator.LESS_THAN, rk, null);
+	}
+	
+	/**
+	 * Range keys less than or equal to rk
+	 */
+	public static RangeCondition lessOrEqual(String rk) {
+		return new RangeCondition(Operator.LESS_OR_EQUAL, rk, null);
+	}
+	
+	/**
+	 * Build the part of the key condition expression on generalrk. The values are :rk and :rkto.
+	 */
+	String expression() {
+		switch (operator) {
+		case BEGINS_WITH:
+			return "begins_with(generalrk, :rk)";
+		case BETWEEN:
+			return "generalrk BETWEEN :rk AND :rkto";
+		case GREATER_THAN:
+			return "generalrk > :rk";
+		case GREATER_OR_EQUAL:
+			return "generalrk >= :rk";
+		case LESS_THAN:
+			return "generalrk < :rk";
+		default:
+			return "generalrk <= :rk";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RangeCondition [operator=" + operator + ", value=" + value + (to == null ? "" : ", to=" + to) + "]";
+	}
+	
+}
@@ -0,0 +1,92 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+/**
+ * RangeKeyLookup iterates the primary keys of the items of a composed key table with a range key, querying the index on generalrk (see GeneralDB.findPks) one page at a time.
+ *
+ * The index has generalrk as partition key and generalpk as sort key, so the items of a logical table are selected with begins_with on generalpk and returned in pk order.
+ * On sharded tables the shard suffix of generalpk is removed.
+ *
+ */
+class RangeKeyLookup implements Iterator<String> {
+
+	private final AmazonDynamoDB client;
+	private final String tblName;
+	private final String tableName;
+	private final String rk;
+	private final int pageSize;
+	private final boolean sharded;
+	private final MetricsProbe probe;
+
+	private Iterator<Map<String, AttributeValue>> page = Collections.emptyIterator();
+	private Map<String, AttributeValue> lastKey;
+	private boolean lastPage;
+
+	RangeKeyLookup(AmazonDynamoDB client, String tblName, String tableName, String rk, int pageSize, boolean sharded, MetricsProbe probe) {
+		this.client = client;
+		this.tblName = tblName;
+		this.tableName = tableName;
+		this.rk = rk;
+		this.pageSize = pageSize;
+		this.sharded = sharded;
+		this.probe = probe;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!page.hasNext() && !lastPage) {
+			QueryRequest request = request();
+			QueryResult result = probe.call(() -> client.query(request), QueryResult::getConsumedCapacity);
+			List<Map<String, AttributeValue>> items = result.getItems();
+			page = items.iterator();
+			lastKey = result.getLastEvaluatedKey();
+			lastPage = lastKey == null || lastKey.isEmpty();
+		}
+		return page.hasNext();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		// Remove the prefix tableName+'-' and the shard suffix of generalpk
+		String pk = page.next().get("generalpk").getS().substring(tableName.length() + 1);
+		if (sharded) {
+			int shard = pk.lastIndexOf('#');
+			if (shard >= 0) {
+				pk = pk.substring(0, shard);
+			}
+		}
+		return pk;
+	}
+
+	private QueryRequest request() {
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":rk", new AttributeValue(tableName+"-"+rk));
+		values.put(":pk", new AttributeValue(tableName+"-"));
+		QueryRequest request = new QueryRequest()
+				.withTableName(tblName)
+				.withIndexName(GeneralDB.RANGE_KEY_INDEX)
+				.withKeyConditionExpression("generalrk = :rk AND begins_with(generalpk, :pk)")
+				.withExpressionAttributeValues(values)
+				.withProjectionExpression("generalpk")
+				.withExclusiveStartKey(lastKey)
+				.withReturnConsumedCapacity(probe.returnConsumedCapacity());
+		if (pageSize > 0) {
+			request.setLimit(pageSize);
+		}
+		return probe.watch(request);
+	}
+}
@@ -0,0 +1,200 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * RateLimiter limits the read and write capacity units per second used by a GeneralDB. It's enabled with GeneralDB.setRateLimiter.
+ *
+ * Each budget is a token bucket filled at the current rate (with a burst of one second). Every call takes one unit before being sent and, when DynamoDB returns the capacity really consumed, the difference is taken afterwards,
+ * so large items and batch calls slow down the next calls.
+ *
+ * The rate adapts to the table: it's halved every time DynamoDB throttles a call and it ramps up again by a tenth of the limit every second without throttles, until the limit configured.
+ * A background job using its own limited GeneralDB only takes the capacity left over by the rest of the traffic on the same table.
+ *
+ */
+public class RateLimiter {
+
+	private final TokenBucket read;
+	private final TokenBucket write;
+
+	/**
+	 * Budget of a kind of capacity unit
+	 */
+	static class TokenBucket {
+		private static final long DECREASE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+		private static final long INCREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+		private final LongAdder throttles = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private double limit;
+		private double rate;
+		private double tokens;
+		private long lastRefill = System.nanoTime();
+		private long lastDecrease = lastRefill - DECREASE_INTERVAL;
+		private long lastChange = lastRefill;
+
+		TokenBucket(double limit) {
+			setLimit(limit);
+			this.tokens = rate;
+		}
+
+		synchronized void setLimit(double limit) {
+			if (limit <= 0) {
+				throw new IllegalArgumentException("The capacity units per second must be greater than 0");
+			}
+			this.limit = limit;
+			this.rate = limit;
+		}
+
+		/**
+		 * Take the units and return the nanoseconds to wait before sending the call: 0 when the bucket has tokens, the time to pay the debt otherwise
+		 */
+		synchronized long reserve(double units) {
+			long now = refill();
+			long wait = tokens >= 0 ? 0 : (long)(-tokens / rate * 1e9);
+			tokens -= units;
+			if (rate < limit && now - lastChange >= INCREASE_INTERVAL) {
+				// No throttles for a while, there is room to go faster
+				rate = Math.min(limit, rate + limit / 10);
+				lastChange = now;
+			}
+			return wait;
+		}
+
+		/**
+		 * Take (or give back when negative) the difference between the units consumed and the units reserved
+		 */
+		synchronized void adjust(double units) {
+			refill();
+			tokens = Math.min(rate, tokens - units);
+		}
+
+		synchronized void throttled() {
+			throttles.increment();
+			long now = System.nanoTime();
+			// The throttles of concurrent calls (or of the retries of the same storm) halve the rate only once
+			if (now - lastDecrease >= DECREASE_INTERVAL) {
+				rate = Math.max(Math.min(1, limit), rate / 2);
+				tokens = Math.min(tokens, 0);
+				lastDecrease = now;
+			}
+			lastChange = now;
+		}
+
+		private long refill() {
+			long now = System.nanoTime();
+			tokens = Math.min(rate, tokens + (now - lastRefill) / 1e9 * rate);
+			lastRefill = now;
+			return now;
+		}
+
+		synchronized double getRate() {
+			return rate;
+		}
+
+		synchronized double getLimit() {
+			return limit;
+		}
+	}
+
+	/**
+	 * @param readUnitsPerSecond Maximum read capacity units per second
+	 * @param writeUnitsPerSecond Maximum write capacity units per second
+	 */
+	public RateLimiter(double readUnitsPerSecond, double writeUnitsPerSecond) {
+		this.read = new TokenBucket(readUnitsPerSecond);
+		this.write = new TokenBucket(writeUnitsPerSecond);
+	}
+
+	/**
+	 * Change the maximum read capacity units per second. The current rate is set to the new limit.
+	 */
+	public void setReadLimit(double readUnitsPerSecond) {
+		read.setLimit(readUnitsPerSecond);
+	}
+
+	/**
+	 * Change the maximum write capacity units per second. The current rate is set to the new limit.
+	 */
+	public void setWriteLimit(double writeUnitsPerSecond) {
+		write.setLimit(writeUnitsPerSecond);
+	}
+
+	public double getReadLimit() {
+		return read.getLimit();
+	}
+
+	public double getWriteLimit() {
+		return write.getLimit();
+	}
+
+	/**
+	 * Read capacity units per second currently allowed (lower than the limit after throttles)
+	 */
+	public double getReadRate() {
+		return read.getRate();
+	}
+
+	/**
+	 * Write capacity units per second currently allowed (lower than the limit after throttles)
+	 */
+	public double getWriteRate() {
+		return write.getRate();
+	}
+
+	/**
+	 * Number of throttled calls seen
+	 */
+	public long getThrottles() {
+		return read.throttles.sum() + write.throttles.sum();
+	}
+
+	/**
+	 * Total time in milliseconds the calls waited for capacity
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(read.waitNanos.sum() + write.waitNanos.sum());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RateLimiter [read=%.1f/%.1f, write=%.1f/%.1f, throttles=%d, waitMillis=%d]", getReadRate(), getReadLimit(), getWriteRate(), getWriteLimit(), getThrottles(), getWaitMillis());
+	}
+
+	/**
+	 * Wait until the budget allows a new call and take the units estimated for it
+	 *
+	 * @param writeCall True for calls consuming write units
+	 * @param units Units estimated for the call
+	 */
+	void acquire(boolean writeCall, double units) {
+		TokenBucket bucket = writeCall ? write : read;
+		long wait = bucket.reserve(units);
+		if (wait > 0) {
+			bucket.waitNanos.add(wait);
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException("Interrupted while waiting for capacity", e);
+			}
+		}
+	}
+
+	/**
+	 * Correct the units taken for a call with the units it really consumed
+	 */
+	void consumed(boolean writeCall, double reserved, double units) {
+		(writeCall ? write : read).adjust(units - reserved);
+	}
+
+	/**
+	 * DynamoDB throttled a call
+	 */
+	void throttled(boolean writeCall) {
+		(writeCall ? write : read).throttled();
+	}
+}
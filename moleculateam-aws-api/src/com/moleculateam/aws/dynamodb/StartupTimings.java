@@ -0,0 +1,70 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * StartupTimings reports the cold start of the client shared by a GeneralDB (see GeneralDB.getStartupTimings and GeneralDB.warmUp). Every step is -1 until it's done.
+ *
+ */
+public class StartupTimings {
+
+	private final boolean lazy;
+	private final long connectMillis;
+	private final long credentialsMillis;
+	private final long tablesMillis;
+	private final long readyMillis;
+
+	StartupTimings(boolean lazy, long connectMillis, long credentialsMillis, long tablesMillis, long readyMillis) {
+		this.lazy = lazy;
+		this.connectMillis = connectMillis;
+		this.credentialsMillis = credentialsMillis;
+		this.tablesMillis = tablesMillis;
+		this.readyMillis = readyMillis;
+	}
+
+	/**
+	 * True when the client was created on its first use instead of by the constructor of GeneralDB
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Milliseconds spent building the client
+	 */
+	public long getConnectMillis() {
+		return connectMillis;
+	}
+
+	/**
+	 * Milliseconds spent resolving the credentials by the warm-up (0 when the backend doesn't use AWS credentials)
+	 */
+	public long getCredentialsMillis() {
+		return credentialsMillis;
+	}
+
+	/**
+	 * Milliseconds spent by the warm-up describing the tables, which opens the connections of the pool
+	 */
+	public long getTablesMillis() {
+		return tablesMillis;
+	}
+
+	/**
+	 * Milliseconds from APIStatus.loadTime (or the start of the JVM when the parameters weren't loaded) until the end of the warm-up
+	 */
+	public long getReadyMillis() {
+		return readyMillis;
+	}
+
+	/**
+	 * True when the warm-up finished
+	 */
+	public boolean isReady() {
+		return readyMillis >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "StartupTimings [lazy=" + lazy + ", connect=" + connectMillis + "ms, credentials=" + credentialsMillis + "ms, tables=" + tablesMillis + "ms, ready=" + readyMillis + "ms]";
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * StatisticsScan counts the items and bytes of every logical table stored in a physical table with a parallel segmented scan.
+ *
+ * Every segment has its own counters, changed only by the worker scanning it, so the workers share nothing while scanning. The counters are merged when all the segments finish.
+ * Only the counters are kept, the items are discarded after measuring them.
+ *
+ * DynamoDB returns the items of a partition key together, and all of them in the same segment, so the items of each partition are counted as a run of consecutive items
+ * and every segment only keeps its topPartitions largest runs instead of a counter per partition.
+ *
+ */
+class StatisticsScan {
+
+	private static final Comparator<Partition> BY_ITEMS = Comparator.<Partition>comparingLong(partition -> partition.items).thenComparing(partition -> partition.pk, Comparator.reverseOrder());
+
+	private static class Partition {
+		final String pk;
+		final long items;
+
+		Partition(String pk, long items) {
+			this.pk = pk;
+			this.items = items;
+		}
+	}
+
+	/**
+	 * Counters of a logical table in a segment
+	 */
+	private static class Counters {
+		long items;
+		long bytes;
+		long maxBytes;
+		// Smallest of the largest partitions first
+		final PriorityQueue<Partition> top = new PriorityQueue<Partition>(BY_ITEMS);
+	}
+
+	/**
+	 * Counters of all the logical tables found by a segment
+	 */
+	private static class Segment {
+		final Map<String, Counters> tables = new HashMap<String, Counters>();
+		final int topPartitions;
+		// Partition whose items are being counted
+		Counters runTable;
+		String runPk;
+		long runItems;
+
+		Segment(int topPartitions) {
+			this.topPartitions = topPartitions;
+		}
+
+		void add(Map<String, AttributeValue> item, boolean composedKey) {
+			String key = item.get(composedKey ? "generalpk" : "generalkey").getS();
+			int separator = key.indexOf('-');
+			String tableName = separator < 0 ? key : key.substring(0, separator);
+			Counters counters = tables.get(tableName);
+			if (counters == null) {
+				counters = new Counters();
+				tables.put(tableName, counters);
+			}
+			long size = EmbeddedDynamoDB.size(item);
+			counters.items++;
+			counters.bytes += size;
+			counters.maxBytes = Math.max(counters.maxBytes, size);
+			if (composedKey && topPartitions > 0) {
+				String pk = key.substring(separator + 1);
+				if (counters != runTable || !pk.equals(runPk)) {
+					endRun();
+					runTable = counters;
+					runPk = pk;
+				}
+				runItems++;
+			}
+		}
+
+		void endRun() {
+			if (runPk != null) {
+				runTable.top.add(new Partition(runPk, runItems));
+				if (runTable.top.size() > topPartitions) {
+					runTable.top.poll();
+				}
+				runPk = null;
+				runItems = 0;
+			}
+		}
+	}
+
+	/**
+	 * Scan the table and return the statistics of every logical table found, by table name
+	 *
+	 * @param client DynamoDB client used to scan
+	 * @param tableName Physical name of the table
+	 * @param composedKey True for tables with generalpk and generalrk, false for tables with generalkey
+	 * @param totalSegments Number of segments (and workers) used
+	 * @param topPartitions Number of partitions with most items returned for each logical table
+	 * @param probe Probe measuring the scan
+	 */
+	static List<TableStatistics> run(AmazonDynamoDB client, String tableName, final boolean composedKey, int totalSegments, int topPartitions, MetricsProbe probe) {
+		final Segment[] segments = new Segment[totalSegments];
+		for (int i = 0; i < totalSegments; i++) {
+			segments[i] = new Segment(topPartitions);
+		}
+		ParallelScan.run(client, tableName, totalSegments, (segment, items, lastKey) -> {
+			Segment counters = segments[segment];
+			for (Map<String, AttributeValue> item : items) {
+				counters.add(item, composedKey);
+			}
+		}, probe);
+
+		// The workers finished, merge their counters
+		Map<String, Counters> tables = new TreeMap<String, Counters>();
+		Map<String, Map<String, Long>> partitions = new HashMap<String, Map<String, Long>>();
+		for (Segment segment : segments) {
+			segment.endRun();
+			for (Map.Entry<String, Counters> table : segment.tables.entrySet()) {
+				Counters counters = tables.get(table.getKey());
+				if (counters == null) {
+					counters = new Counters();
+					tables.put(table.getKey(), counters);
+					partitions.put(table.getKey(), new HashMap<String, Long>());
+				}
+				Counters segmentCounters = table.getValue();
+				counters.items += segmentCounters.items;
+				counters.bytes += segmentCounters.bytes;
+				counters.maxBytes = Math.max(counters.maxBytes, segmentCounters.maxBytes);
+				for (Partition partition : segmentCounters.top) {
+					partitions.get(table.getKey()).merge(partition.pk, partition.items, Long::sum);
+				}
+			}
+		}
+
+		List<TableStatistics> statistics = new ArrayList<TableStatistics>(tables.size());
+		for (Map.Entry<String, Counters> table : tables.entrySet()) {
+			List<Partition> top = new ArrayList<Partition>();
+			for (Map.Entry<String, Long> partition : partitions.get(table.getKey()).entrySet()) {
+				top.add(new Partition(partition.getKey(), partition.getValue()));
+			}
+			top.sort(BY_ITEMS.reversed());
+			Map<String, Long> topPartitionItems = new LinkedHashMap<String, Long>();
+			for (Partition partition : top.subList(0, Math.min(topPartitions, top.size()))) {
+				topPartitionItems.put(partition.pk, partition.items);
+			}
+			Counters counters = table.getValue();
+			statistics.add(new TableStatistics(table.getKey(), composedKey, counters.items, counters.bytes, counters.maxBytes, topPartitionItems));
+		}
+		return statistics;
+	}
+}
@@ -0,0 +1,26 @@
+package com.moleculateam.aws.dynamodb;
+
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+
+/**
+ * StorageBackend creates the storage used by the GeneralDB instances of a region and profile. It's selected with ClientRegistry.setBackend or with the system property "com.moleculateam.aws.backend" ("dynamodb" or "embedded").
+ *
+ * GeneralDB only uses the GeneralSK and GeneralDK operations of the AmazonDynamoDB interface (PutItem, GetItem, DeleteItem, UpdateItem, Query, Scan, BatchWriteItem, BatchGetItem, TransactWriteItems, DescribeTable for the warm-up, and Query and UpdateTable on the index GeneralDB.RANGE_KEY_INDEX), so a backend is an implementation of those calls.
+ * DYNAMODB connects to AWS. EMBEDDED keeps the items in memory (see EmbeddedDynamoDB), one engine per region and profile shared by all the instances of the process.
+ *
+ */
+@FunctionalInterface
+public interface StorageBackend {
+
+	StorageBackend DYNAMODB = ClientRegistry::build;
+	StorageBackend EMBEDDED = (region, profileName) -> new EmbeddedDynamoDB();
+
+	/**
+	 * Create the client of the region and profile specified
+	 *
+	 * @param region The AWS region to connect (null to use the default region chain)
+	 * @param profileName Name of the AWS profile to use (null to use the default credentials chain)
+	 */
+	AmazonDynamoDB connect(Regions region, String profileName);
+}
@@ -0,0 +1,61 @@
+package com.moleculateam.aws.dynamodb;
+
+/**
+ * SyncResult is returned by the sync methods of GeneralDB (sync_SK_ToTarget and syncToTarget) with the number of items of the target inserted, updated, deleted and left unchanged.
+ *
+ */
+public class SyncResult {
+	
+	private final long inserted;
+	private final long updated;
+	private final long deleted;
+	private final long unchanged;
+	
+	SyncResult(long inserted, long updated, long deleted, long unchanged) {
+		this.inserted = inserted;
+		this.updated = updated;
+		this.deleted = deleted;
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * Number of items of the source that didn't exist in the target
+	 */
+	public long getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * Number of items of the target overwritten because their attributes were different in the source
+	 */
+	public long getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * Number of items of the target deleted because they didn't exist in the source
+	 */
+	public long getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * Number of items with the same attributes in the source and the target, not written
+	 */
+	public long getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * Number of items written into the target
+	 */
+	public long getWritten() {
+		return inserted + updated + deleted;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncResult [inserted=" + inserted + ", updated=" + updated + ", deleted=" + deleted + ", unchanged=" + unchanged + "]";
+	}
+	
+}
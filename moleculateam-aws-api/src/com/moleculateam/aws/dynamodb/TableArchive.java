@@ -0,0 +1,554 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * TableArchive exports a DynamoDB table into compressed files of a local directory and imports them back into a table.
+ *
+ * The export scans the table in parallel segments and every segment writes its own file (f.e "generalsk.3-8.gz" for the segment 3 of 8): a header followed by a gzip member per scan page,
+ * written to a FileChannel through a bounded buffer, so each segment keeps a single page in memory.
+ * Items are written in a compact binary format: the number of attributes and, for each one, its name and its typed value, with lengths as varints.
+ *
+ * After every page the segment saves a checkpoint (length of the file, items written and LastEvaluatedKey). An export into a directory with checkpoints resumes every segment after its last page,
+ * dropping what was written after the checkpoint. The import streams every file into the table with BatchWriteItem and saves the number of items read every CHECKPOINT_ITEMS, so it resumes too.
+ *
+ */
+class TableArchive {
+
+	private static final byte[] HEADER = {'G', 'D', 'B', 'X', 1};
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHECKPOINT_ITEMS = 1000;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int NUMBER = 2;
+	private static final int BINARY = 3;
+	private static final int BOOLEAN = 4;
+	private static final int STRING_SET = 5;
+	private static final int NUMBER_SET = 6;
+	private static final int BINARY_SET = 7;
+	private static final int LIST = 8;
+	private static final int MAP = 9;
+
+	/**
+	 * Progress saved for a file: its length and the items written (export) or read (import), and the key to resume the scan
+	 */
+	private static class Checkpoint {
+		final long length;
+		final long items;
+		final boolean done;
+		final Map<String, AttributeValue> lastKey;
+
+		Checkpoint(long length, long items, boolean done, Map<String, AttributeValue> lastKey) {
+			this.length = length;
+			this.items = items;
+			this.done = done;
+			this.lastKey = lastKey;
+		}
+	}
+
+	/**
+	 * Export the items of the table into the files "filePrefix.segment-totalSegments.gz" of the directory
+	 *
+	 * @param client DynamoDB client used to scan
+	 * @param tableName Physical name of the table
+	 * @param directory Directory of the files
+	 * @param filePrefix Prefix of the file names (the table name without environment)
+	 * @param keyPrefix Only the items with a key starting with this prefix are exported (null for all)
+	 * @param totalSegments Number of segments (and workers) used
+	 * @param listener Listener notified after each page written (may be null)
+	 * @param probe Probe measuring the calls
+	 * @return Number of items exported by this call
+	 */
+	static long export(final AmazonDynamoDB client, final String tableName, final Path directory, final String filePrefix, final String keyPrefix, final int totalSegments, final CopyListener listener, final MetricsProbe probe) {
+		try {
+			Files.createDirectories(directory);
+			for (Path file : files(directory, filePrefix)) {
+				if (!file.getFileName().toString().endsWith("-"+totalSegments+".gz")) {
+					throw new IllegalArgumentException(directory+" has an export of "+filePrefix+" with another number of segments ("+file.getFileName()+"), use the same number of workers to resume it");
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		final AtomicLong exported = new AtomicLong();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(totalSegments);
+		for (int i = 0; i < totalSegments; i++) {
+			final int segment = i;
+			tasks.add(() -> {
+				exportSegment(client, tableName, directory.resolve(filePrefix+"."+segment+"-"+totalSegments+".gz"), keyPrefix, segment, totalSegments, exported, listener, probe);
+				return null;
+			});
+		}
+		Workers.invokeAll(totalSegments, tasks);
+		return exported.get();
+	}
+
+	/**
+	 * Import the items of the files "filePrefix.*.gz" of the directory into the table
+	 *
+	 * @param client DynamoDB client used to write
+	 * @param tableName Physical name of the table
+	 * @param directory Directory of the files
+	 * @param filePrefix Prefix of the file names (the table name without environment)
+	 * @param keyPrefix Only the items with a key starting with this prefix are imported (null for all)
+	 * @param workers Number of files imported in parallel
+	 * @param listener Listener notified after each group of items written (may be null)
+	 * @param probe Probe measuring the calls
+	 * @return Number of items imported by this call
+	 */
+	static long load(final AmazonDynamoDB client, final String tableName, Path directory, String filePrefix, final String keyPrefix, int workers, final CopyListener listener, final MetricsProbe probe) {
+		List<Path> files;
+		try {
+			files = files(directory, filePrefix);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		final AtomicLong imported = new AtomicLong();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final int index = i;
+			final Path file = files.get(i);
+			tasks.add(() -> {
+				importFile(client, tableName, file, keyPrefix, index, imported, listener, probe);
+				return null;
+			});
+		}
+		Workers.invokeAll(workers, tasks);
+		return imported.get();
+	}
+
+	private static void exportSegment(AmazonDynamoDB client, final String tableName, Path file, final String keyPrefix, int segment, int totalSegments, final AtomicLong exported, final CopyListener listener, MetricsProbe probe) throws IOException {
+		final Path checkpointFile = file.resolveSibling(file.getFileName()+".checkpoint");
+		Checkpoint checkpoint = readCheckpoint(checkpointFile);
+		if (checkpoint != null && checkpoint.done) {
+			return;
+		}
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			final ChannelOutput out = new ChannelOutput(channel);
+			if (checkpoint == null) {
+				channel.truncate(0);
+				out.write(HEADER);
+				out.flush();
+				checkpoint = new Checkpoint(HEADER.length, 0, false, null);
+			} else {
+				// Drop the pages written after the checkpoint, they are scanned again
+				channel.truncate(checkpoint.length);
+				channel.position(checkpoint.length);
+			}
+			final ItemBuffer page = new ItemBuffer();
+			final long[] items = {checkpoint.items};
+			ParallelScan.scanSegment(client, tableName, segment, totalSegments, checkpoint.lastKey, (seg, pageItems, lastKey) -> {
+				page.reset();
+				int written = 0;
+				for (Map<String, AttributeValue> item : pageItems) {
+					if (matches(item, keyPrefix)) {
+						page.writeItem(item);
+						written++;
+					}
+				}
+				try {
+					if (written > 0) {
+						try (GzipMember member = new GzipMember(out)) {
+							page.writeTo(member);
+						}
+						out.flush();
+						channel.force(false);
+					}
+					items[0] += written;
+					saveCheckpoint(checkpointFile, new Checkpoint(channel.position(), items[0], false, lastKey));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				long total = exported.addAndGet(written);
+				if (listener != null && written > 0) {
+					listener.progress(tableName, seg, total);
+				}
+			}, probe);
+			saveCheckpoint(checkpointFile, new Checkpoint(channel.position(), items[0], true, null));
+		}
+	}
+
+	private static void importFile(AmazonDynamoDB client, String tableName, Path file, String keyPrefix, int index, AtomicLong imported, CopyListener listener, MetricsProbe probe) throws IOException {
+		Path checkpointFile = file.resolveSibling(file.getFileName()+"."+tableName+".imported");
+		Checkpoint checkpoint = readCheckpoint(checkpointFile);
+		if (checkpoint != null && checkpoint.done) {
+			return;
+		}
+		long skip = checkpoint == null ? 0 : checkpoint.items;
+		long read = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			InputStream raw = Channels.newInputStream(channel);
+			byte[] header = new byte[HEADER.length];
+			new DataInputStream(raw).readFully(header);
+			if (!Arrays.equals(header, HEADER)) {
+				throw new IOException(file+" is not an export of GeneralDB");
+			}
+			if (channel.size() > HEADER.length) {
+				// GZIPInputStream reads the gzip members one after the other
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, BUFFER_SIZE), BUFFER_SIZE))) {
+					List<WriteRequest> batch = new ArrayList<WriteRequest>(BatchWriter.MAX_BATCH_SIZE);
+					Map<String, AttributeValue> item;
+					while ((item = readItem(in)) != null) {
+						if (++read <= skip) {
+							continue;
+						}
+						if (matches(item, keyPrefix)) {
+							batch.add(new WriteRequest(new PutRequest(item)));
+						}
+						if (batch.size() == BatchWriter.MAX_BATCH_SIZE) {
+							write(client, tableName, batch, index, imported, listener, probe);
+						}
+						if (read % CHECKPOINT_ITEMS == 0) {
+							write(client, tableName, batch, index, imported, listener, probe);
+							saveCheckpoint(checkpointFile, new Checkpoint(0, read, false, null));
+						}
+					}
+					write(client, tableName, batch, index, imported, listener, probe);
+				}
+			}
+		}
+		saveCheckpoint(checkpointFile, new Checkpoint(0, read, true, null));
+	}
+
+	private static void write(AmazonDynamoDB client, String tableName, List<WriteRequest> batch, int index, AtomicLong imported, CopyListener listener, MetricsProbe probe) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<WriteRequest> failed = BatchWriter.writeBatch(client, tableName, batch, probe);
+		if (!failed.isEmpty()) {
+			throw new AmazonClientException(failed.size()+" items could not be imported into "+tableName);
+		}
+		long total = imported.addAndGet(batch.size());
+		batch.clear();
+		if (listener != null) {
+			listener.progress(tableName, index, total);
+		}
+	}
+
+	private static List<Path> files(Path directory, String filePrefix) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		if (Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, filePrefix+".*.gz")) {
+				for (Path file : stream) {
+					files.add(file);
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static boolean matches(Map<String, AttributeValue> item, String keyPrefix) {
+		if (keyPrefix == null) {
+			return true;
+		}
+		AttributeValue key = item.containsKey("generalkey") ? item.get("generalkey") : item.get("generalpk");
+		return key != null && key.getS() != null && key.getS().startsWith(keyPrefix);
+	}
+
+	private static Checkpoint readCheckpoint(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+		long length = in.readLong();
+		long items = in.readLong();
+		boolean done = in.readBoolean();
+		return new Checkpoint(length, items, done, readItem(in));
+	}
+
+	/**
+	 * Write the checkpoint into a temporary file and rename it, so a crash never leaves a partial checkpoint
+	 */
+	private static void saveCheckpoint(Path file, Checkpoint checkpoint) throws IOException {
+		ItemBuffer buffer = new ItemBuffer();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeLong(checkpoint.length);
+		out.writeLong(checkpoint.items);
+		out.writeBoolean(checkpoint.done);
+		if (checkpoint.lastKey != null) {
+			buffer.writeItem(checkpoint.lastKey);
+		}
+		Path temp = file.resolveSibling(file.getFileName()+".tmp");
+		Files.write(temp, buffer.toByteArray());
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Buffer where the items are encoded before being compressed
+	 */
+	private static class ItemBuffer extends ByteArrayOutputStream {
+
+		ItemBuffer() {
+			super(BUFFER_SIZE);
+		}
+
+		void writeItem(Map<String, AttributeValue> item) {
+			writeVarint(item.size());
+			for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+				writeString(attribute.getKey());
+				writeValue(attribute.getValue());
+			}
+		}
+
+		private void writeValue(AttributeValue value) {
+			if (value.getS() != null) {
+				write(STRING);
+				writeString(value.getS());
+			} else if (value.getN() != null) {
+				write(NUMBER);
+				writeString(value.getN());
+			} else if (value.getB() != null) {
+				write(BINARY);
+				writeBytes(value.getB());
+			} else if (value.getBOOL() != null) {
+				write(BOOLEAN);
+				write(value.getBOOL() ? 1 : 0);
+			} else if (value.getSS() != null) {
+				write(STRING_SET);
+				writeVarint(value.getSS().size());
+				for (String s : value.getSS()) {
+					writeString(s);
+				}
+			} else if (value.getNS() != null) {
+				write(NUMBER_SET);
+				writeVarint(value.getNS().size());
+				for (String n : value.getNS()) {
+					writeString(n);
+				}
+			} else if (value.getBS() != null) {
+				write(BINARY_SET);
+				writeVarint(value.getBS().size());
+				for (ByteBuffer b : value.getBS()) {
+					writeBytes(b);
+				}
+			} else if (value.getL() != null) {
+				write(LIST);
+				writeVarint(value.getL().size());
+				for (AttributeValue element : value.getL()) {
+					writeValue(element);
+				}
+			} else if (value.getM() != null) {
+				write(MAP);
+				writeItem(value.getM());
+			} else {
+				write(NULL);
+			}
+		}
+
+		private void writeString(String s) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		private void writeBytes(ByteBuffer b) {
+			ByteBuffer bytes = b.duplicate();
+			int length = bytes.remaining();
+			writeVarint(length);
+			if (count + length > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(count + length, buf.length * 2));
+			}
+			bytes.get(buf, count, length);
+			count += length;
+		}
+
+		private void writeVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+	}
+
+	/**
+	 * Read an item, or null at the end of the stream
+	 */
+	private static Map<String, AttributeValue> readItem(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first < 0) {
+			return null;
+		}
+		return readAttributes(in, readVarint(in, first));
+	}
+
+	private static Map<String, AttributeValue> readAttributes(DataInputStream in, int size) throws IOException {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>((int)(size / 0.75f) + 1);
+		for (int i = 0; i < size; i++) {
+			String name = readString(in);
+			item.put(name, readValue(in));
+		}
+		return item;
+	}
+
+	private static AttributeValue readValue(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case STRING:
+			return new AttributeValue().withS(readString(in));
+		case NUMBER:
+			return new AttributeValue().withN(readString(in));
+		case BINARY:
+			return new AttributeValue().withB(readBytes(in));
+		case BOOLEAN:
+			return new AttributeValue().withBOOL(in.readUnsignedByte() == 1);
+		case STRING_SET:
+		case NUMBER_SET: {
+			int size = readVarint(in, in.readUnsignedByte());
+			List<String> values = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(readString(in));
+			}
+			return type == STRING_SET ? new AttributeValue().withSS(values) : new AttributeValue().withNS(values);
+		}
+		case BINARY_SET: {
+			int size = readVarint(in, in.readUnsignedByte());
+			List<ByteBuffer> values = new ArrayList<ByteBuffer>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(readBytes(in));
+			}
+			return new AttributeValue().withBS(values);
+		}
+		case LIST: {
+			int size = readVarint(in, in.readUnsignedByte());
+			List<AttributeValue> values = new ArrayList<AttributeValue>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(readValue(in));
+			}
+			return new AttributeValue().withL(values);
+		}
+		case MAP:
+			return new AttributeValue().withM(readAttributes(in, readVarint(in, in.readUnsignedByte())));
+		case NULL:
+			return new AttributeValue().withNULL(true);
+		default:
+			throw new IOException("Unknown attribute type "+type);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarint(in, in.readUnsignedByte())];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarint(in, in.readUnsignedByte())];
+		in.readFully(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private static int readVarint(DataInputStream in, int first) throws IOException {
+		int value = first & 0x7F;
+		int shift = 7;
+		int b = first;
+		while ((b & 0x80) != 0) {
+			b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		return value;
+	}
+
+	/**
+	 * OutputStream writing to the channel through a fixed direct buffer
+	 */
+	private static class ChannelOutput extends OutputStream {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		ChannelOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			buffer.put((byte)b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * A gzip member: closing it writes the trailer and releases the deflater but leaves the file open for the next member
+	 */
+	private static class GzipMember extends GZIPOutputStream {
+
+		GzipMember(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			def.end();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * TableStatistics is returned by GeneralDB.statistics with the number of items and the bytes used by a logical table, and its partitions with most items.
+ *
+ * The sizes are the item sizes of DynamoDB: the UTF-8 length of the attribute names plus the size of the values, including the key attributes (which have the table name as prefix).
+ *
+ */
+public class TableStatistics {
+
+	private final String tableName;
+	private final boolean composedKey;
+	private final long itemCount;
+	private final long totalBytes;
+	private final long maxItemBytes;
+	private final Map<String, Long> topPartitions;
+
+	TableStatistics(String tableName, boolean composedKey, long itemCount, long totalBytes, long maxItemBytes, Map<String, Long> topPartitions) {
+		this.tableName = tableName;
+		this.composedKey = composedKey;
+		this.itemCount = itemCount;
+		this.totalBytes = totalBytes;
+		this.maxItemBytes = maxItemBytes;
+		this.topPartitions = Collections.unmodifiableMap(topPartitions);
+	}
+
+	/**
+	 * Logical table name, the part of the keys before the first '-'
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * True for the tables with a range key (stored in generaldk), false for the tables with a single key (stored in generalsk)
+	 */
+	public boolean isComposedKey() {
+		return composedKey;
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * Sum of the sizes of all the items in bytes
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Size of the largest item in bytes (DynamoDB rejects items over 400 KB)
+	 */
+	public long getMaxItemBytes() {
+		return maxItemBytes;
+	}
+
+	public long getAverageItemBytes() {
+		return itemCount == 0 ? 0 : totalBytes / itemCount;
+	}
+
+	/**
+	 * Pks with most items and their number of items, from the largest partition. On sharded tables every shard is a partition (pk#shard).
+	 * It's empty for the tables with a single key, where every item is its own partition.
+	 */
+	public Map<String, Long> getTopPartitions() {
+		return topPartitions;
+	}
+
+	@Override
+	public String toString() {
+		return "TableStatistics [tableName=" + tableName + ", composedKey=" + composedKey + ", items=" + itemCount + ", totalBytes=" + totalBytes + ", maxItemBytes=" + maxItemBytes + ", topPartitions=" + topPartitions + "]";
+	}
+
+}
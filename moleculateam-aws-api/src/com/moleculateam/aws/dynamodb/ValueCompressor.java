@@ -0,0 +1,189 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ValueCompressor stores large CHAR and JSON values as binary attributes compressed with deflate.
+ *
+ * A compressed value starts with a header of 8 bytes: the magic 'G' 'D' 'Z', the codec version and the length of the UTF-8 value as an int, followed by the deflate stream.
+ * The Deflater, Inflater and buffers are taken from a bounded pool and returned after each value, so compressing or reading a value only allocates the result
+ * and the pool works with any kind of threads (f.e a virtual thread per call). The native memory of the ones that don't fit in the pool is released, and buffers grown by large values
+ * are not kept.
+ *
+ */
+class ValueCompressor {
+
+	static final int HEADER_SIZE = 8;
+	private static final byte VERSION = 1;
+	private static final int MAX_LENGTH = 64 << 20;
+
+	private static final int BUFFER_SIZE = 64 << 10;
+	// Buffers larger than this are dropped when they are returned to the pool
+	private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+	private static final BlockingQueue<Buffers> POOL = new ArrayBlockingQueue<Buffers>(2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * State reused by the values compressed or read, used by one thread at a time
+	 */
+	private static class Buffers {
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		final Inflater inflater = new Inflater(true);
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer text = ByteBuffer.allocate(BUFFER_SIZE);
+		byte[] output = new byte[BUFFER_SIZE];
+
+		byte[] output(int size) {
+			if (output.length < size) {
+				output = new byte[Math.max(size, output.length * 2)];
+			}
+			return output;
+		}
+	}
+
+	private static Buffers acquire() {
+		Buffers buffers = POOL.poll();
+		return buffers == null ? new Buffers() : buffers;
+	}
+
+	private static void release(Buffers buffers) {
+		if (buffers.text.capacity() > MAX_POOLED_BUFFER_SIZE) {
+			buffers.text = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		if (buffers.output.length > MAX_POOLED_BUFFER_SIZE) {
+			buffers.output = new byte[BUFFER_SIZE];
+		}
+		if (!POOL.offer(buffers)) {
+			buffers.deflater.end();
+			buffers.inflater.end();
+		}
+	}
+
+	/**
+	 * Compress the value when it has at least threshold characters
+	 *
+	 * @param value Value of a CHAR or JSON attribute
+	 * @param threshold Minimum number of characters of the values compressed
+	 * @return The compressed value with its header, or null when the value is smaller than the threshold or doesn't get smaller
+	 */
+	static byte[] compress(String value, int threshold) {
+		if (value.length() < threshold) {
+			return null;
+		}
+		Buffers buffers = acquire();
+		try {
+			return compress(buffers, value);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	private static byte[] compress(Buffers buffers, String value) {
+		ByteBuffer text = encode(buffers, value);
+		int length = text.remaining();
+		byte[] output = buffers.output(HEADER_SIZE + length);
+		Deflater deflater = buffers.deflater;
+		deflater.reset();
+		deflater.setInput(text.array(), 0, length);
+		deflater.finish();
+		int size = HEADER_SIZE;
+		while (!deflater.finished() && size < length) {
+			size += deflater.deflate(output, size, length - size);
+		}
+		if (!deflater.finished()) {
+			// Not worth it, the compressed value isn't smaller
+			return null;
+		}
+		output[0] = 'G';
+		output[1] = 'D';
+		output[2] = 'Z';
+		output[3] = VERSION;
+		output[4] = (byte)(length >>> 24);
+		output[5] = (byte)(length >>> 16);
+		output[6] = (byte)(length >>> 8);
+		output[7] = (byte)length;
+		byte[] compressed = new byte[size];
+		System.arraycopy(output, 0, compressed, 0, size);
+		return compressed;
+	}
+
+	/**
+	 * True when the binary value was written by compress
+	 */
+	static boolean isCompressed(byte[] value) {
+		return value.length >= HEADER_SIZE && value[0] == 'G' && value[1] == 'D' && value[2] == 'Z' && value[3] == VERSION;
+	}
+
+	/**
+	 * Decompress a value written by compress
+	 *
+	 * @param value Compressed value with its header
+	 * @return The original value
+	 */
+	static String decompress(byte[] value) {
+		if (!isCompressed(value)) {
+			throw new IllegalArgumentException("The value is not a compressed attribute");
+		}
+		int length = (value[4] & 0xFF) << 24 | (value[5] & 0xFF) << 16 | (value[6] & 0xFF) << 8 | (value[7] & 0xFF);
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException("Invalid length "+length+" of a compressed attribute");
+		}
+		Buffers buffers = acquire();
+		try {
+			return decompress(buffers, value, length);
+		} finally {
+			release(buffers);
+		}
+	}
+
+	private static String decompress(Buffers buffers, byte[] value, int length) {
+		byte[] output = buffers.output(length);
+		Inflater inflater = buffers.inflater;
+		inflater.reset();
+		inflater.setInput(value, HEADER_SIZE, value.length - HEADER_SIZE);
+		try {
+			int size = 0;
+			while (size < length) {
+				int inflated = inflater.inflate(output, size, length - size);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IllegalArgumentException("Truncated compressed attribute");
+				}
+				size += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupted compressed attribute", e);
+		}
+		return new String(output, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Encode the value as UTF-8 into the buffer, which grows when the value doesn't fit
+	 */
+	private static ByteBuffer encode(Buffers buffers, String value) {
+		int maxLength = value.length() * 3;
+		if (buffers.text.capacity() < maxLength) {
+			buffers.text = ByteBuffer.allocate(Math.max(maxLength, buffers.text.capacity() * 2));
+		}
+		ByteBuffer text = buffers.text;
+		text.clear();
+		CharsetEncoder encoder = buffers.encoder;
+		encoder.reset();
+		CharBuffer chars = CharBuffer.wrap(value);
+		CoderResult result = encoder.encode(chars, text, true);
+		if (!result.isUnderflow()) {
+			throw new IllegalStateException("UTF-8 encoding of the value failed: "+result);
+		}
+		encoder.flush(text);
+		text.flip();
+		return text;
+	}
+}
@@ -0,0 +1,86 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Workers runs a group of tasks on a bounded pool of daemon threads and waits until all of them finish.
+ *
+ * The first failure cancels the remaining tasks and is rethrown to the caller.
+ */
+class Workers {
+
+	private static final AtomicInteger poolCount = new AtomicInteger();
+
+	/**
+	 * Creates a thread factory for daemon threads named with the prefix specified
+	 *
+	 * @param prefix Prefix of the thread names
+	 */
+	static ThreadFactory threadFactory(String prefix) {
+		final String name = prefix + "-" + poolCount.incrementAndGet() + "-";
+		final AtomicInteger threadCount = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Run all the tasks using at most poolSize threads and wait for them to finish
+	 *
+	 * @param poolSize Maximum number of tasks running at the same time
+	 * @param tasks Tasks to run
+	 */
+	static void invokeAll(int poolSize, Collection<? extends Callable<?>> tasks) {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(poolSize, tasks.size())), threadFactory("generaldb-worker"));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+			for (Callable<?> task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			for (Future<?> future : futures) {
+				await(future);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Wait for the future to finish, rethrowing its failure as an unchecked exception
+	 *
+	 * @param future Future to wait for
+	 */
+	static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while waiting for workers", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new AmazonClientException(cause.getMessage(), cause);
+		}
+	}
+}
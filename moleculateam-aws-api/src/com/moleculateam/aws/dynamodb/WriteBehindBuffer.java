@@ -0,0 +1,331 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * WriteBehindBuffer queues the writes (addItem) and deletes (deleteItem) of a GeneralDB and sends them later using BatchWriteItem. It's enabled with GeneralDB.enableWriteBehind.
+ *
+ * Repeated writes to the same key while it's waiting in the buffer are coalesced: only the last one is sent.
+ * Writes that could not be delivered are retried on the next flush unless a newer write to the same key was sent or is waiting, so the last write always wins.
+ * The buffer is flushed by a background thread every flushInterval milliseconds or when flushSize keys are waiting, whatever happens first.
+ * When maxPending keys are waiting the writers are blocked until the next flush makes room (back-pressure).
+ *
+ * Writes are not durable when addItem/deleteItem return and reads don't see the writes still waiting in the buffer.
+ * flush() sends everything waiting and close() does the same before stopping the background thread; both throw an exception when some writes could not be delivered.
+ *
+ */
+public class WriteBehindBuffer {
+
+	private final AmazonDynamoDB client;
+	private final int flushSize;
+	private final Semaphore room;
+	private final Map<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+	private final Queue<String> order = new ConcurrentLinkedQueue<String>();
+	private final Queue<Pending> retries = new ConcurrentLinkedQueue<Pending>();
+	// Sequence of the last write added for every key not yet written
+	private final Map<String, Long> latest = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final ScheduledExecutorService flusher;
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final BiConsumer<String, WriteRequest> onWritten;
+	private final Function<String, MetricsProbe> probes;
+	private volatile boolean closed;
+	private volatile RuntimeException lastError;
+
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	private static class Pending {
+		final String tableName;
+		final String key;
+		final WriteRequest request;
+		final long sequence;
+
+		Pending(String tableName, String key, WriteRequest request, long sequence) {
+			this.tableName = tableName;
+			this.key = key;
+			this.request = request;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * @param client DynamoDB client used to write
+	 * @param maxPending Maximum number of keys waiting in the buffer before blocking the writers
+	 * @param flushSize Number of keys waiting that triggers a flush
+	 * @param flushInterval Maximum time in milliseconds a write waits in the buffer
+	 * @param onWritten Callback called with every request after it's written (may be null)
+	 * @param probes Gives the probe measuring the calls to every table
+	 */
+	WriteBehindBuffer(AmazonDynamoDB client, int maxPending, int flushSize, long flushInterval, BiConsumer<String, WriteRequest> onWritten, Function<String, MetricsProbe> probes) {
+		if (maxPending < 1 || flushSize < 1 || flushInterval < 1) {
+			throw new IllegalArgumentException("maxPending, flushSize and flushInterval must be greater than 0");
+		}
+		this.client = client;
+		this.flushSize = Math.min(flushSize, maxPending);
+		this.room = new Semaphore(maxPending);
+		this.onWritten = onWritten;
+		this.probes = probes;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(Workers.threadFactory("generaldb-write-behind"));
+		this.flusher.scheduleWithFixedDelay(this::backgroundFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queue a write request, replacing the request waiting for the same key. Blocks while the buffer is full.
+	 *
+	 * @param tableName Physical name of the table
+	 * @param request Put or delete request
+	 */
+	void add(String tableName, WriteRequest request) {
+		if (closed) {
+			throw new IllegalStateException("The write-behind buffer is closed");
+		}
+		String key = tableName+'\u0000'+BulkWriter.keyOf(request);
+		final Pending entry = new Pending(tableName, key, request, sequence.incrementAndGet());
+		latest.merge(key, entry.sequence, Math::max);
+		// A write to a key already waiting just replaces the request
+		if (pending.computeIfPresent(key, (k, previous) -> entry) != null) {
+			coalesced.increment();
+			return;
+		}
+		try {
+			room.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while waiting for room in the write-behind buffer", e);
+		}
+		if (pending.put(key, entry) == null) {
+			order.add(key);
+		} else {
+			// Another writer added the key meanwhile
+			coalesced.increment();
+			room.release();
+		}
+		if (pending.size() >= flushSize && flushRequested.compareAndSet(false, true)) {
+			try {
+				flusher.execute(this::backgroundFlush);
+			} catch (RejectedExecutionException e) {
+				// The buffer is being closed, close flushes everything
+			}
+		}
+	}
+
+	/**
+	 * Send all the writes waiting in the buffer and wait until they are written
+	 *
+	 * @throws AmazonClientException when some writes could not be delivered. They are kept and sent again on the next flush.
+	 */
+	public void flush() {
+		flushLock.lock();
+		try {
+			int failures = drain();
+			if (failures > 0) {
+				throw new AmazonClientException(failures+" writes could not be delivered", lastError);
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Stop the background flush and send all the writes waiting in the buffer. After close the buffer doesn't accept new writes.
+	 *
+	 * @throws AmazonClientException when some writes could not be delivered
+	 */
+	public void close() {
+		closed = true;
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Number of keys waiting in the buffer (plus writes waiting for a retry)
+	 */
+	public int getPending() {
+		return pending.size() + retries.size();
+	}
+
+	/**
+	 * Number of writes replaced by a later write to the same key before being sent
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Number of writes sent to DynamoDB
+	 */
+	public long getWritten() {
+		return written.sum();
+	}
+
+	/**
+	 * Number of times a write could not be delivered (including the ones delivered later by a retry)
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Last error returned by DynamoDB, or null
+	 */
+	public RuntimeException getLastError() {
+		return lastError;
+	}
+
+	private void backgroundFlush() {
+		flushRequested.set(false);
+		if (!flushLock.tryLock()) {
+			// An explicit flush is already running
+			return;
+		}
+		try {
+			drain();
+		} catch (RuntimeException e) {
+			lastError = e;
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Send the writes waiting for a retry and the ones in the buffer. Returns the number of writes that failed.
+	 */
+	private int drain() {
+		int failures = 0;
+		Map<String, List<Pending>> tables = new HashMap<String, List<Pending>>();
+		for (Pending retry = retries.poll(); retry != null; retry = retries.poll()) {
+			if (superseded(retry)) {
+				coalesced.increment();
+			} else {
+				group(tables, retry);
+			}
+		}
+		// Only the keys waiting when the drain starts are sent, so a flush ends even when writers keep adding keys
+		int keys = pending.size();
+		for (String key = keys > 0 ? order.poll() : null; key != null; key = --keys > 0 ? order.poll() : null) {
+			Pending entry = pending.remove(key);
+			room.release();
+			if (entry != null) {
+				group(tables, entry);
+			}
+			if (groupedSize(tables) >= BatchWriter.MAX_BATCH_SIZE) {
+				failures += send(tables);
+			}
+		}
+		return failures + send(tables);
+	}
+
+	private static void group(Map<String, List<Pending>> tables, Pending entry) {
+		List<Pending> table = tables.get(entry.tableName);
+		if (table == null) {
+			table = new ArrayList<Pending>();
+			tables.put(entry.tableName, table);
+		}
+		table.add(entry);
+	}
+
+	private static int groupedSize(Map<String, List<Pending>> tables) {
+		int size = 0;
+		for (List<Pending> table : tables.values()) {
+			size = Math.max(size, table.size());
+		}
+		return size;
+	}
+
+	/**
+	 * True when a newer write to the same key was added after the entry, so sending the entry again would overwrite it
+	 */
+	private boolean superseded(Pending entry) {
+		Long newest = latest.get(entry.key);
+		return newest != null && newest > entry.sequence;
+	}
+
+	/**
+	 * Write the grouped requests and clear them. The requests not written are queued for a retry.
+	 */
+	private int send(Map<String, List<Pending>> tables) {
+		int failures = 0;
+		for (Map.Entry<String, List<Pending>> table : tables.entrySet()) {
+			// A retried request and a newer request for the same key can be in the same drain, only the newer one is sent
+			Map<String, Pending> unique = new HashMap<String, Pending>();
+			for (Pending entry : table.getValue()) {
+				Pending previous = unique.put(entry.key, entry);
+				if (previous != null) {
+					coalesced.increment();
+					if (previous.sequence > entry.sequence) {
+						unique.put(entry.key, previous);
+					}
+				}
+			}
+			failures += write(table.getKey(), unique);
+		}
+		tables.clear();
+		return failures;
+	}
+
+	private int write(String tableName, Map<String, Pending> entries) {
+		List<WriteRequest> requests = new ArrayList<WriteRequest>(entries.size());
+		for (Pending entry : entries.values()) {
+			requests.add(entry.request);
+		}
+		List<WriteRequest> unprocessed;
+		try {
+			unprocessed = BatchWriter.write(client, tableName, requests, probes.apply(tableName));
+		} catch (RuntimeException e) {
+			lastError = e;
+			unprocessed = requests;
+		}
+		int failures = 0;
+		for (WriteRequest request : unprocessed) {
+			Pending entry = entries.remove(tableName+'\u0000'+BulkWriter.keyOf(request));
+			if (entry == null) {
+				continue;
+			}
+			if (superseded(entry)) {
+				// A newer write to the key was added while this one was being sent, it replaces the retry
+				coalesced.increment();
+			} else {
+				retries.add(entry);
+				failures++;
+			}
+		}
+		failed.add(unprocessed.size());
+		written.add(entries.size());
+		for (Pending entry : entries.values()) {
+			latest.remove(entry.key, entry.sequence);
+			if (onWritten != null) {
+				onWritten.accept(tableName, entry.request);
+			}
+		}
+		return failures;
+	}
+}
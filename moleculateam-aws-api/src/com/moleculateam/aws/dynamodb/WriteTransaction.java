@@ -0,0 +1,187 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionCheck;
+import com.amazonaws.services.dynamodbv2.model.Delete;
+import com.amazonaws.services.dynamodbv2.model.Put;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+/**
+ * WriteTransaction collects puts, deletes, updates and condition checks of items of any table (GeneralSK and GeneralDK) and writes all of them, or none, with a single TransactWriteItems call.
+ *
+ * It's created with GeneralDB.transaction:
+ *
+ * <pre>
+ * db.transaction()
+ *   .put("Customer", "5555555000", customer)
+ *   .when(AttributeCondition.itemNotExists())
+ *   .put("CustomerPhone", "5555555000", "(+1)555-0101", phone)
+ *   .update(db.update("Stats", "customers").increment("count", 1))
+ *   .commit();
+ * </pre>
+ *
+ * A transaction has up to 100 actions and each item can only appear in one of them. When DynamoDB cancels it, commit throws WriteTransactionException with the reason of every action that failed.
+ *
+ */
+public class WriteTransaction {
+
+	static final int MAX_ACTIONS = 100;
+
+	private final GeneralDB db;
+	private final List<TransactWriteItem> actions = new ArrayList<TransactWriteItem>();
+	private final List<ItemUpdate> targets = new ArrayList<ItemUpdate>();
+	private String clientRequestToken;
+
+	WriteTransaction(GeneralDB db) {
+		this.db = db;
+	}
+
+	/**
+	 * Write the item of the table tableName with a single key identifier, replacing the previous one
+	 */
+	public WriteTransaction put(String tableName, String pk, Collection<Attribute> attributes) {
+		return put(db.update(tableName, pk), attributes);
+	}
+
+	/**
+	 * Write the item of the table tableName identified by the composed key, replacing the previous one
+	 */
+	public WriteTransaction put(String tableName, String pk, String rk, Collection<Attribute> attributes) {
+		return put(db.update(tableName, pk, rk), attributes);
+	}
+
+	private WriteTransaction put(ItemUpdate target, Collection<Attribute> attributes) {
+		Map<String, AttributeValue> item = db.toAttributeValues(attributes);
+		item.putAll(target.key());
+		return add(target, new TransactWriteItem().withPut(new Put().withTableName(target.tblName()).withItem(item)));
+	}
+
+	/**
+	 * Delete the item of the table tableName with a single key identifier
+	 */
+	public WriteTransaction delete(String tableName, String pk) {
+		ItemUpdate target = db.update(tableName, pk);
+		return add(target, new TransactWriteItem().withDelete(new Delete().withTableName(target.tblName()).withKey(target.key())));
+	}
+
+	/**
+	 * Delete the item of the table tableName identified by the composed key
+	 */
+	public WriteTransaction delete(String tableName, String pk, String rk) {
+		ItemUpdate target = db.update(tableName, pk, rk);
+		return add(target, new TransactWriteItem().withDelete(new Delete().withTableName(target.tblName()).withKey(target.key())));
+	}
+
+	/**
+	 * Change some attributes of an item (see GeneralDB.update). The condition of the update is checked as part of the transaction, and the attributes to return are ignored.
+	 */
+	public WriteTransaction update(ItemUpdate update) {
+		UpdateItemRequest request = update.request();
+		return add(update, new TransactWriteItem().withUpdate(new Update()
+				.withTableName(request.getTableName())
+				.withKey(request.getKey())
+				.withUpdateExpression(request.getUpdateExpression())
+				.withConditionExpression(request.getConditionExpression())
+				.withExpressionAttributeNames(request.getExpressionAttributeNames())
+				.withExpressionAttributeValues(request.getExpressionAttributeValues())));
+	}
+
+	/**
+	 * Cancel the transaction unless the item of the table tableName with a single key identifier matches the condition. The item isn't changed.
+	 */
+	public WriteTransaction check(String tableName, String pk, AttributeCondition condition) {
+		return check(db.update(tableName, pk), condition);
+	}
+
+	/**
+	 * Cancel the transaction unless the item of the table tableName identified by the composed key matches the condition. The item isn't changed.
+	 */
+	public WriteTransaction check(String tableName, String pk, String rk, AttributeCondition condition) {
+		return check(db.update(tableName, pk, rk), condition);
+	}
+
+	private WriteTransaction check(ItemUpdate target, AttributeCondition condition) {
+		ExpressionAttributes attributes = new ExpressionAttributes();
+		String expression = condition.expression(attributes, keyName(target.key()));
+		return add(target, new TransactWriteItem().withConditionCheck(new ConditionCheck()
+				.withTableName(target.tblName())
+				.withKey(target.key())
+				.withConditionExpression(expression)
+				.withExpressionAttributeNames(attributes.getNames())
+				.withExpressionAttributeValues(attributes.getValues())));
+	}
+
+	/**
+	 * Only write the last put or delete added when the condition is true, otherwise the whole transaction is cancelled. Updates have their own condition (see ItemUpdate.when).
+	 */
+	public WriteTransaction when(AttributeCondition condition) {
+		if (actions.isEmpty()) {
+			throw new IllegalStateException("Add a put or delete before its condition");
+		}
+		TransactWriteItem action = actions.get(actions.size() - 1);
+		Map<String, AttributeValue> key = targets.get(targets.size() - 1).key();
+		ExpressionAttributes attributes = new ExpressionAttributes();
+		String expression = condition.expression(attributes, keyName(key));
+		if (action.getPut() != null) {
+			action.getPut().withConditionExpression(expression).withExpressionAttributeNames(attributes.getNames()).withExpressionAttributeValues(attributes.getValues());
+		} else if (action.getDelete() != null) {
+			action.getDelete().withConditionExpression(expression).withExpressionAttributeNames(attributes.getNames()).withExpressionAttributeValues(attributes.getValues());
+		} else {
+			throw new IllegalStateException("when only applies to a put or a delete");
+		}
+		return this;
+	}
+
+	/**
+	 * Make the commit idempotent: commits with the same token in the next 10 minutes don't write the items again
+	 */
+	public WriteTransaction clientRequestToken(String token) {
+		this.clientRequestToken = token;
+		return this;
+	}
+
+	/**
+	 * Number of actions added
+	 */
+	public int size() {
+		return actions.size();
+	}
+
+	/**
+	 * Write all the actions with a single TransactWriteItems call
+	 *
+	 * @throws WriteTransactionException When DynamoDB cancels the transaction, with the reason of every action that failed
+	 */
+	public void commit() {
+		if (actions.isEmpty()) {
+			return;
+		}
+		db.transactWriteItems(actions, targets, clientRequestToken);
+	}
+
+	private WriteTransaction add(ItemUpdate target, TransactWriteItem action) {
+		if (actions.size() == MAX_ACTIONS) {
+			throw new IllegalStateException("A transaction can't have more than "+MAX_ACTIONS+" actions");
+		}
+		actions.add(action);
+		targets.add(target);
+		return this;
+	}
+
+	private static String keyName(Map<String, AttributeValue> key) {
+		return key.containsKey("generalkey") ? "generalkey" : "generalpk";
+	}
+
+	@Override
+	public String toString() {
+		return "WriteTransaction [actions=" + actions.size() + "]";
+	}
+
+}
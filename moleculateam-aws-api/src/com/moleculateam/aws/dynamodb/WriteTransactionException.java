@@ -0,0 +1,42 @@
+package com.moleculateam.aws.dynamodb;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+
+/**
+ * WriteTransactionException is thrown by WriteTransaction.commit when DynamoDB cancels the transaction. None of its writes were applied.
+ *
+ * The reasons have the key of every action that caused the cancellation with the code returned by DynamoDB:
+ * ConditionalCheckFailed (its condition was false), TransactionConflict (the item was being changed by another transaction or write),
+ * ItemCollectionSizeLimitExceeded, ProvisionedThroughputExceeded, ThrottlingError or ValidationError.
+ *
+ */
+public class WriteTransactionException extends AmazonClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<ItemKey, String> reasons;
+
+	WriteTransactionException(Map<ItemKey, String> reasons, TransactionCanceledException cause) {
+		super("Transaction cancelled: " + reasons, cause);
+		this.reasons = Collections.unmodifiableMap(reasons);
+	}
+
+	/**
+	 * Code of the cancellation reason of every action that failed, in the order the actions were added
+	 */
+	public Map<ItemKey, String> getReasons() {
+		return reasons;
+	}
+
+	/**
+	 * True when the transaction was cancelled only because some conditions were false, so retrying it won't succeed
+	 */
+	public boolean isConditionFailed() {
+		return !reasons.isEmpty() && Collections.singleton("ConditionalCheckFailed").containsAll(reasons.values());
+	}
+
+}
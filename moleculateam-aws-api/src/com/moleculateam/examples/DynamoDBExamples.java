@@ -1,5 +1,6 @@
 package com.moleculateam.examples;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -49,6 +50,19 @@ public class DynamoDBExamples {
 		db.deleteItems("CustomerPhone", "5555555000");
 		db.deleteItem("Customer", "5555555000");
 		
+		// The same customer and phones saved with a single call: all of them are written or none
+		db.transaction()
+			.put("Customer", "5555555000", Arrays.asList(new Attribute("name", TYPE.CHAR, "John Smith"), new Attribute("age", TYPE.INT, 29)))
+			.put("CustomerPhone", "5555555000", "(+1)555-555-555", Arrays.asList(new Attribute("PhoneType", TYPE.CHAR, "home")))
+			.put("CustomerPhone", "5555555000", "(+1)111-111-111", Arrays.asList(new Attribute("PhoneType", TYPE.CHAR, "work")))
+			.commit();
+		
+		db.transaction()
+			.delete("CustomerPhone", "5555555000", "(+1)555-555-555")
+			.delete("CustomerPhone", "5555555000", "(+1)111-111-111")
+			.delete("Customer", "5555555000")
+			.commit();
+		
 		/*
 		 * Example 2 - Customer example using JSON (recommended for non-relational db):
 		 * Add customer and his phones using table Customer
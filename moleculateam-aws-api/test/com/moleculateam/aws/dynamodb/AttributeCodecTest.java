@@ -0,0 +1,102 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class AttributeCodecTest {
+
+	private GeneralDB db;
+
+	@Before
+	public void createDB() {
+		db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+	}
+
+	@Test
+	public void everyTypeIsReadAsItWasWritten() {
+		Collection<Attribute> attributes = Arrays.asList(
+				new Attribute("char", TYPE.CHAR, "\u00f1and\u00fa"),
+				new Attribute("int", TYPE.INT, 42),
+				new Attribute("json", TYPE.JSON, "{\"name\":\"John\",\"phones\":[1,2]}"),
+				new Attribute("short", TYPE.SHORT, (short)7),
+				new Attribute("long", TYPE.LONG, 1L << 40),
+				new Attribute("double", TYPE.DOUBLE, 2.5),
+				new Attribute("bool", TYPE.BOOL, true),
+				new Attribute("binary", TYPE.BINARY, new byte[] {1, 2, 3}),
+				new Attribute("buffer", TYPE.BINARY, ByteBuffer.wrap(new byte[] {4, 5})),
+				new Attribute("strings", TYPE.STRING_SET, Arrays.asList("a", "b", "a")),
+				new Attribute("numbers", TYPE.NUMBER_SET, Arrays.asList(1, 2.5, 3L)));
+		db.addItem("Customer", "1", attributes);
+		db.addItem("CustomerPhone", "1", "555-0101", attributes);
+
+		for (Collection<Attribute> item : Arrays.asList(db.getItem("Customer", "1", attributes, true), db.getItem("CustomerPhone", "1", "555-0101", attributes, true))) {
+			Map<String, Object> values = values(item);
+			assertEquals(attributes.size(), values.size());
+			assertEquals("\u00f1and\u00fa", values.get("char"));
+			assertEquals(42, values.get("int"));
+			assertEquals("{\"name\":\"John\",\"phones\":[1,2]}", values.get("json"));
+			assertEquals((short)7, values.get("short"));
+			assertEquals(1L << 40, values.get("long"));
+			assertEquals(2.5, values.get("double"));
+			assertEquals(true, values.get("bool"));
+			assertArrayEquals(new byte[] {1, 2, 3}, (byte[])values.get("binary"));
+			assertArrayEquals(new byte[] {4, 5}, (byte[])values.get("buffer"));
+			assertEquals(new HashSet<String>(Arrays.asList("a", "b")), values.get("strings"));
+			assertEquals(new HashSet<BigDecimal>(Arrays.asList(new BigDecimal("1"), new BigDecimal("2.5"), new BigDecimal("3"))), values.get("numbers"));
+		}
+		assertEquals(1L << 40, db.getAttribute("Customer", "1", new Attribute("long", TYPE.LONG)));
+		assertEquals(true, db.getAttribute("CustomerPhone", "1", "555-0101", new Attribute("bool", TYPE.BOOL)));
+	}
+
+	@Test
+	public void typedGettersReturnTheDefaultWhenTheValueIsMissing() {
+		Collection<Attribute> attributes = Arrays.asList(new Attribute("long", TYPE.LONG, -5L), new Attribute("double", TYPE.DOUBLE, 0.25), new Attribute("bool", TYPE.BOOL, false));
+		db.addItem("Customer", "1", attributes);
+		db.addItem("CustomerPhone", "1", "555-0101", attributes);
+
+		assertEquals(-5L, db.getLong("Customer", "1", "long", 99));
+		assertEquals(0.25, db.getDouble("Customer", "1", "double", 99), 0);
+		assertFalse(db.getBoolean("Customer", "1", "bool", true));
+		assertEquals(-5L, db.getLong("CustomerPhone", "1", "555-0101", "long", 99));
+		assertEquals(0.25, db.getDouble("CustomerPhone", "1", "555-0101", "double", 99), 0);
+		assertFalse(db.getBoolean("CustomerPhone", "1", "555-0101", "bool", true));
+
+		// Missing attribute
+		assertEquals(99, db.getLong("Customer", "1", "other", 99));
+		assertEquals(99, db.getDouble("CustomerPhone", "1", "555-0101", "other", 99), 0);
+		assertTrue(db.getBoolean("Customer", "1", "other", true));
+		// Missing item
+		assertEquals(99, db.getLong("Customer", "2", "long", 99));
+		assertEquals(99, db.getDouble("Customer", "2", "double", 99), 0);
+		assertTrue(db.getBoolean("CustomerPhone", "1", "555-0102", "bool", true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptySetsAreRejected() {
+		db.addItem("Customer", "1", Collections.singletonList(new Attribute("strings", TYPE.STRING_SET, Collections.emptySet())));
+	}
+
+	private static Map<String, Object> values(Collection<Attribute> attributes) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (Attribute attribute : attributes) {
+			values.put(attribute.name, attribute.value);
+		}
+		return values;
+	}
+}
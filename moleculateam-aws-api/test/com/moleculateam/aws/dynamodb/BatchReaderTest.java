@@ -0,0 +1,116 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class BatchReaderTest {
+
+	/**
+	 * Leaves the second half of the keys of every call unprocessed, like DynamoDB when a call exceeds the throughput of the table
+	 */
+	private static class PartialDynamoDB extends EmbeddedDynamoDB {
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+			calls.incrementAndGet();
+			Map<String, KeysAndAttributes> processed = new HashMap<String, KeysAndAttributes>();
+			Map<String, KeysAndAttributes> unprocessed = new HashMap<String, KeysAndAttributes>();
+			for (Map.Entry<String, KeysAndAttributes> table : request.getRequestItems().entrySet()) {
+				List<Map<String, AttributeValue>> keys = table.getValue().getKeys();
+				int half = (keys.size() + 1) / 2;
+				processed.put(table.getKey(), copy(table.getValue(), keys.subList(0, half)));
+				if (half < keys.size()) {
+					unprocessed.put(table.getKey(), copy(table.getValue(), keys.subList(half, keys.size())));
+				}
+			}
+			return super.batchGetItem(request.clone().withRequestItems(processed)).withUnprocessedKeys(unprocessed);
+		}
+
+		private static KeysAndAttributes copy(KeysAndAttributes keysAndAttributes, List<Map<String, AttributeValue>> keys) {
+			return keysAndAttributes.clone().withKeys(new ArrayList<Map<String, AttributeValue>>(keys));
+		}
+	}
+
+	private PartialDynamoDB client;
+	private GeneralDB db;
+
+	@Before
+	public void load() {
+		client = new PartialDynamoDB();
+		db = new GeneralDB(client, "TEST-");
+		for (int i = 0; i < 150; i++) {
+			db.addItem("Customer", "c" + i, Arrays.asList(new Attribute("name", TYPE.CHAR, "customer " + i), new Attribute("n", TYPE.INT, i)));
+			db.addItem("CustomerPhone", "c" + i, "555-" + i, Arrays.asList(new Attribute("name", TYPE.CHAR, "phone " + i)));
+		}
+	}
+
+	@Test
+	public void unprocessedKeysAreRequestedAgain() {
+		List<ItemKey> keys = new ArrayList<ItemKey>();
+		for (int i = 0; i < 150; i++) {
+			keys.add(new ItemKey("Customer", "c" + i));
+			keys.add(new ItemKey("CustomerPhone", "c" + i, "555-" + i));
+		}
+
+		Map<ItemKey, Collection<Attribute>> items = db.getItems(keys, Arrays.asList(new Attribute("name", TYPE.CHAR)));
+
+		assertEquals(300, items.size());
+		for (int i = 0; i < 150; i++) {
+			assertEquals("customer " + i, value(items.get(new ItemKey("Customer", "c" + i))));
+			assertEquals("phone " + i, value(items.get(new ItemKey("CustomerPhone", "c" + i, "555-" + i))));
+		}
+		// Groups of 100 keys (and 50), each one read in several calls
+		assertTrue(client.calls.get() > 4);
+	}
+
+	@Test
+	public void missingAndRepeatedKeys() {
+		List<ItemKey> keys = Arrays.asList(new ItemKey("Customer", "c1"), new ItemKey("Customer", "c1"), new ItemKey("Customer", "missing"), new ItemKey("CustomerPhone", "c1", "555-2"));
+
+		Map<ItemKey, Collection<Attribute>> items = db.getItems(keys, Arrays.asList(new Attribute("n", TYPE.INT)));
+
+		assertEquals(Collections.singletonMap(new ItemKey("Customer", "c1"), 1), values(items));
+	}
+
+	@Test
+	public void withoutAttributesOnlyTheKeysAreReturned() {
+		Map<ItemKey, Collection<Attribute>> items = db.getItems(Arrays.asList(new ItemKey("Customer", "c7"), new ItemKey("CustomerPhone", "c7", "555-7")), Collections.<Attribute>emptyList());
+
+		assertEquals(2, items.size());
+		assertTrue(items.get(new ItemKey("Customer", "c7")).isEmpty());
+		assertFalse(items.containsKey(new ItemKey("Customer", "c8")));
+	}
+
+	private static Object value(Collection<Attribute> attributes) {
+		assertEquals(1, attributes.size());
+		return attributes.iterator().next().value;
+	}
+
+	private static Map<ItemKey, Object> values(Map<ItemKey, Collection<Attribute>> items) {
+		Map<ItemKey, Object> values = new HashMap<ItemKey, Object>();
+		for (Map.Entry<ItemKey, Collection<Attribute>> item : items.entrySet()) {
+			values.put(item.getKey(), value(item.getValue()));
+		}
+		return values;
+	}
+}
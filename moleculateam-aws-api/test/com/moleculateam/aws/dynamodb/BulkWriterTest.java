@@ -0,0 +1,81 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class BulkWriterTest {
+
+	private static final String TABLE = "TEST-generalsk";
+
+	@Test
+	public void keyRepeatedInSeveralChunksKeepsItsLastWrite() {
+		EmbeddedDynamoDB client = new EmbeddedDynamoDB();
+		BulkWriter<Integer> writer = new BulkWriter<Integer>(client, 4);
+		int keys = 1000;
+		int writes = 5000;
+		for (int i = 0; i < writes; i++) {
+			String key = "Customer-" + (i % keys);
+			// The last write of every seventh key is a delete
+			if (i >= writes - keys && i % 7 == 0) {
+				writer.add(TABLE, new WriteRequest(new DeleteRequest(key(key))), i);
+			} else {
+				writer.add(TABLE, new WriteRequest(new PutRequest(item(key, i))), i);
+			}
+		}
+		writer.finish();
+
+		assertTrue(writer.failed().isEmpty());
+		for (int i = writes - keys; i < writes; i++) {
+			Map<String, AttributeValue> item = client.getItem(new GetItemRequest(TABLE, key("Customer-" + (i % keys)))).getItem();
+			if (i % 7 == 0) {
+				assertNull(item);
+			} else {
+				assertEquals(Integer.toString(i), item.get("version").getN());
+			}
+		}
+	}
+
+	@Test
+	public void addItemsKeepsTheLastItemOfRepeatedKeys() {
+		GeneralDB db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		List<BulkItem> items = new ArrayList<BulkItem>();
+		for (int i = 0; i < 300; i++) {
+			items.add(new BulkItem("c" + (i % 40), Arrays.asList(new Attribute("version", TYPE.INT, i))));
+		}
+		Collections.shuffle(items.subList(0, 200));
+
+		BulkWriteResult result = db.addItems("Customer", items);
+
+		assertTrue(result.getFailed().isEmpty());
+		for (int i = 260; i < 300; i++) {
+			assertEquals(i, db.getAttribute("Customer", "c" + (i % 40), new Attribute("version", TYPE.INT)));
+		}
+	}
+
+	private static Map<String, AttributeValue> key(String generalkey) {
+		return Collections.singletonMap("generalkey", new AttributeValue(generalkey));
+	}
+
+	private static Map<String, AttributeValue> item(String generalkey, int version) {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(key(generalkey));
+		item.put("version", new AttributeValue().withN(Integer.toString(version)));
+		return item;
+	}
+}
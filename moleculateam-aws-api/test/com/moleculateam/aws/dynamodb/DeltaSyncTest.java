@@ -0,0 +1,104 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class DeltaSyncTest {
+
+	private EmbeddedDynamoDB sourceClient;
+	private EmbeddedDynamoDB targetClient;
+	private GeneralDB source;
+	private GeneralDB target;
+
+	@Before
+	public void load() {
+		sourceClient = new EmbeddedDynamoDB();
+		targetClient = new EmbeddedDynamoDB();
+		source = new GeneralDB(sourceClient, "TEST-");
+		target = new GeneralDB(targetClient, "PROD-");
+		for (int i = 0; i < 200; i++) {
+			source.addItem("Customer", "c" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+			source.addItem("CustomerPhone", "c" + (i % 10), "555-" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+		}
+		// The target has 150 items equal, 20 different and 30 missing, plus 5 items the source doesn't have
+		for (int i = 0; i < 170; i++) {
+			target.addItem("Customer", "c" + i, Arrays.asList(new Attribute("n", TYPE.INT, i < 150 ? i : -i)));
+			target.addItem("CustomerPhone", "c" + (i % 10), "555-" + i, Arrays.asList(new Attribute("n", TYPE.INT, i < 150 ? i : -i)));
+		}
+		for (int i = 0; i < 5; i++) {
+			target.addItem("Customer", "old" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+			target.addItem("CustomerPhone", "old", "555-" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+		}
+	}
+
+	@Test
+	public void onlyTheDifferencesAreWritten() {
+		AtomicLong written = new AtomicLong();
+		SyncResult result = source.sync_SK_ToTarget(target, false, 3, (tableName, segment, copied) -> written.set(Math.max(written.get(), copied)));
+
+		assertEquals(30, result.getInserted());
+		assertEquals(20, result.getUpdated());
+		assertEquals(0, result.getDeleted());
+		assertEquals(150, result.getUnchanged());
+		assertEquals(50, result.getWritten());
+		assertEquals(50, written.get());
+		assertEquals(205, targetClient.getItemCount("PROD-generalsk"));
+		assertEquals(160, target.getAttribute("Customer", "c160", new Attribute("n", TYPE.INT)));
+
+		result = source.syncToTarget(target, false, 3, null);
+
+		assertEquals(30, result.getInserted());
+		assertEquals(20, result.getUpdated());
+		assertEquals(150, result.getUnchanged());
+		assertEquals(205, targetClient.getItemCount("PROD-generaldk"));
+	}
+
+	@Test
+	public void missingItemsAreDeleted() {
+		SyncResult result = source.sync_SK_ToTarget(target, true, 2, null);
+		assertEquals(5, result.getDeleted());
+		assertEquals(items(sourceClient, "TEST-generalsk"), items(targetClient, "PROD-generalsk"));
+
+		result = source.syncToTarget(target, true, 2, null);
+		assertEquals(5, result.getDeleted());
+		assertEquals(items(sourceClient, "TEST-generaldk"), items(targetClient, "PROD-generaldk"));
+
+		// Nothing is written the second time
+		result = source.syncToTarget(target, true, 2, null);
+		assertEquals(0, result.getWritten());
+		assertEquals(200, result.getUnchanged());
+	}
+
+	@Test
+	public void theOrderOfTheSetElementsDoesNotMatter() {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("generalkey", new AttributeValue("Customer-tags"));
+		item.put("tags", new AttributeValue().withSS("a", "b", "c"));
+		sourceClient.putItem(new PutItemRequest("TEST-generalsk", item));
+		item = new HashMap<String, AttributeValue>(item);
+		item.put("tags", new AttributeValue().withSS("c", "a", "b"));
+		targetClient.putItem(new PutItemRequest("PROD-generalsk", item));
+
+		SyncResult result = source.sync_SK_ToTarget(target, false, 1, null);
+
+		assertEquals(151, result.getUnchanged());
+	}
+
+	private static Set<Map<String, AttributeValue>> items(EmbeddedDynamoDB client, String tableName) {
+		return new HashSet<Map<String, AttributeValue>>(client.scan(new ScanRequest(tableName)).getItems());
+	}
+}
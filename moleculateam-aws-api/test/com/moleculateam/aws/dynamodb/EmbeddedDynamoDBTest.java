@@ -0,0 +1,257 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class EmbeddedDynamoDBTest {
+
+	private EmbeddedDynamoDB client;
+
+	@Before
+	public void load() {
+		client = new EmbeddedDynamoDB();
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		for (int i = 0; i < 23; i++) {
+			db.addItem("Customer", "c" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+		}
+		// Partitions of 5 items, so pages of 5 items end exactly at the end of a partition
+		for (int p = 0; p < 5; p++) {
+			for (int r = 0; r < 5; r++) {
+				db.addItem("Phone", "p" + p, "r" + r, Arrays.asList(new Attribute("n", TYPE.INT, r)));
+			}
+		}
+	}
+
+	@Test
+	public void itemsAreWrittenReadAndDeleted() {
+		Map<String, AttributeValue> customer = client.getItem(new GetItemRequest("TEST-generalsk", skKey("Customer-c3"))).getItem();
+		assertEquals("3", customer.get("n").getN());
+		assertEquals(Collections.singletonMap("n", new AttributeValue().withN("3")),
+				client.getItem(new GetItemRequest("TEST-generalsk", skKey("Customer-c3")).withProjectionExpression("#n").withExpressionAttributeNames(Collections.singletonMap("#n", "n"))).getItem());
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(skKey("Customer-c3"));
+		item.put("n", new AttributeValue().withN("33"));
+		assertEquals(customer, client.putItem(new PutItemRequest("TEST-generalsk", item).withReturnValues(ReturnValue.ALL_OLD)).getAttributes());
+		assertEquals(item, client.getItem(new GetItemRequest("TEST-generalsk", skKey("Customer-c3"))).getItem());
+
+		Map<String, AttributeValue> phone = client.deleteItem(new DeleteItemRequest("TEST-generaldk", dkKey("Phone-p1", "Phone-r2")).withReturnValues(ReturnValue.ALL_OLD)).getAttributes();
+		assertEquals("2", phone.get("n").getN());
+		assertNull(client.getItem(new GetItemRequest("TEST-generaldk", dkKey("Phone-p1", "Phone-r2"))).getItem());
+		assertNull(client.deleteItem(new DeleteItemRequest("TEST-generaldk", dkKey("Phone-p1", "Phone-r2"))).getAttributes());
+		assertEquals(24, client.getItemCount("TEST-generaldk"));
+		assertEquals(0, client.getItemCount("TEST-other"));
+	}
+
+	@Test
+	public void keyConditionsSelectARangeOfThePartition() {
+		assertEquals(Arrays.asList("r0", "r1", "r2", "r3", "r4"), rks("generalpk = :pk", null, null, true));
+		assertEquals(Arrays.asList("r4", "r3", "r2", "r1", "r0"), rks("generalpk = :pk", null, null, false));
+		assertEquals(Arrays.asList("r1", "r2", "r3"), rks("generalpk = :pk and generalrk between :a and :b", "Phone-r1", "Phone-r3", true));
+		assertEquals(Arrays.asList("r3", "r4"), rks("generalpk = :pk and generalrk > :a", "Phone-r2", null, true));
+		assertEquals(Arrays.asList("r2", "r1", "r0"), rks("generalpk = :pk and generalrk <= :a", "Phone-r2", null, false));
+		assertEquals(Arrays.asList("r2"), rks("generalpk = :pk and begins_with(generalrk, :a)", "Phone-r2", null, true));
+		assertEquals(Collections.emptyList(), rks("generalpk = :pk and generalrk < :a", "Phone-r0", null, true));
+	}
+
+	@Test
+	public void rangeKeysAreSortedByCodePoint() {
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		// U+1F600 is after U+FF61, although its first UTF-16 char (U+D83D) is before
+		for (String rk : new String[] {"\uD83D\uDE00x", "z", "\uFF61", "\uD83D\uDE00", "a", "\uDBFF\uDFFFa"}) {
+			db.addItem("Emoji", "e1", rk, Collections.<Attribute>emptyList());
+		}
+
+		assertEquals(Arrays.asList("a", "z", "\uFF61", "\uD83D\uDE00", "\uD83D\uDE00x", "\uDBFF\uDFFFa"), rks(db.query("Emoji", "e1")));
+		assertEquals(Arrays.asList("\uD83D\uDE00", "\uD83D\uDE00x"), rks(db.query("Emoji", "e1").where(RangeCondition.beginsWith("\uD83D\uDE00"))));
+		assertEquals(Arrays.asList("\uDBFF\uDFFFa"), rks(db.query("Emoji", "e1").where(RangeCondition.beginsWith("\uDBFF\uDFFF"))));
+		assertEquals(Arrays.asList("\uD83D\uDE00", "\uD83D\uDE00x", "\uDBFF\uDFFFa"), rks(db.query("Emoji", "e1").where(RangeCondition.greaterThan("\uFFFF"))));
+		assertEquals(Arrays.asList("\uFF61", "z", "a"), rks(db.query("Emoji", "e1").where(RangeCondition.lessThan("\uD83D\uDE00")).reverse()));
+	}
+
+	@Test
+	public void scanSegmentsSplitTheTable() {
+		for (String table : new String[] {"TEST-generalsk", "TEST-generaldk"}) {
+			for (int totalSegments = 1; totalSegments <= 4; totalSegments++) {
+				Set<Map<String, AttributeValue>> keys = new HashSet<Map<String, AttributeValue>>();
+				int items = 0;
+				for (int segment = 0; segment < totalSegments; segment++) {
+					ScanResult result = client.scan(new ScanRequest(table).withSegment(segment).withTotalSegments(totalSegments));
+					assertNull(result.getLastEvaluatedKey());
+					for (Map<String, AttributeValue> item : result.getItems()) {
+						keys.add(key(item));
+						items++;
+					}
+				}
+				assertEquals(client.getItemCount(table), items);
+				assertEquals("No item is returned by two segments", items, keys.size());
+			}
+		}
+	}
+
+	@Test
+	public void batchCallsKeepTheLimitsOfDynamoDB() {
+		List<WriteRequest> writes = new ArrayList<WriteRequest>();
+		List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+		for (int i = 0; i < 26; i++) {
+			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(skKey("Batch-" + i));
+			item.put("n", new AttributeValue().withN(Integer.toString(i)));
+			writes.add(new WriteRequest(new PutRequest(item)));
+			keys.add(skKey("Batch-" + i));
+		}
+		assertValidationError(() -> client.batchWriteItem(new BatchWriteItemRequest(Collections.singletonMap("TEST-generalsk", writes))));
+		assertValidationError(() -> client.batchWriteItem(new BatchWriteItemRequest(Collections.singletonMap("TEST-generalsk", Arrays.asList(writes.get(0), writes.get(0))))));
+		assertEquals(23, client.getItemCount("TEST-generalsk"));
+
+		assertTrue(client.batchWriteItem(new BatchWriteItemRequest(Collections.singletonMap("TEST-generalsk", writes.subList(0, 25)))).getUnprocessedItems().isEmpty());
+		assertEquals(48, client.getItemCount("TEST-generalsk"));
+
+		List<Map<String, AttributeValue>> items = client.batchGetItem(new BatchGetItemRequest(Collections.singletonMap("TEST-generalsk", new KeysAndAttributes().withKeys(keys)))).getResponses().get("TEST-generalsk");
+		assertEquals(25, items.size());
+		while (keys.size() <= 100) {
+			keys.add(skKey("Missing-" + keys.size()));
+		}
+		assertValidationError(() -> client.batchGetItem(new BatchGetItemRequest(Collections.singletonMap("TEST-generalsk", new KeysAndAttributes().withKeys(keys)))));
+	}
+
+	@Test
+	public void scanPagesNeverExceedTheLimit() {
+		for (String table : new String[] {"TEST-generalsk", "TEST-generaldk"}) {
+			for (int totalSegments : new int[] {1, 3}) {
+				Set<Map<String, AttributeValue>> keys = new HashSet<Map<String, AttributeValue>>();
+				int items = 0;
+				for (int segment = 0; segment < totalSegments; segment++) {
+					Map<String, AttributeValue> lastKey = null;
+					do {
+						ScanResult result = client.scan(new ScanRequest(table).withLimit(5).withSegment(segment).withTotalSegments(totalSegments).withExclusiveStartKey(lastKey));
+						assertTrue(result.getItems().size() <= 5);
+						if (result.getItems().size() == 5) {
+							assertNotNull("A full page returns its last key", result.getLastEvaluatedKey());
+						}
+						for (Map<String, AttributeValue> item : result.getItems()) {
+							keys.add(key(item));
+							items++;
+						}
+						lastKey = result.getLastEvaluatedKey();
+					} while (lastKey != null);
+				}
+				assertEquals(client.getItemCount(table), items);
+				assertEquals("No item is returned twice", items, keys.size());
+			}
+		}
+	}
+
+	@Test
+	public void queryPagesFollowTheLimit() {
+		assertEquals(Arrays.asList(5, 0), queryPageSizes(5));
+		assertEquals(Arrays.asList(2, 2, 1), queryPageSizes(2));
+		assertEquals(Collections.singletonList(5), queryPageSizes(10));
+	}
+
+	@Test
+	public void deletedPartitionsAreNotScanned() {
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		db.deleteItems("Phone", "p0");
+		db.deleteItem("Customer", "c0");
+
+		ScanResult items = client.scan(new ScanRequest("TEST-generalsk"));
+		ScanResult partitions = client.scan(new ScanRequest("TEST-generaldk"));
+
+		assertEquals(22, items.getItems().size());
+		assertEquals(20, partitions.getItems().size());
+		assertNull(partitions.getLastEvaluatedKey());
+	}
+
+	private List<Integer> queryPageSizes(int limit) {
+		List<Integer> sizes = new ArrayList<Integer>();
+		Map<String, AttributeValue> lastKey = null;
+		do {
+			QueryResult result = client.query(new QueryRequest("TEST-generaldk")
+					.withKeyConditionExpression("generalpk = :pk")
+					.withExpressionAttributeValues(Collections.singletonMap(":pk", new AttributeValue("Phone-p1")))
+					.withLimit(limit)
+					.withExclusiveStartKey(lastKey));
+			sizes.add(result.getItems().size());
+			lastKey = result.getLastEvaluatedKey();
+		} while (lastKey != null);
+		return sizes;
+	}
+
+	private List<String> rks(String keyCondition, String a, String b, boolean forward) {
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":pk", new AttributeValue("Phone-p1"));
+		if (a != null) {
+			values.put(":a", new AttributeValue(a));
+		}
+		if (b != null) {
+			values.put(":b", new AttributeValue(b));
+		}
+		List<String> rks = new ArrayList<String>();
+		for (Map<String, AttributeValue> item : client.query(new QueryRequest("TEST-generaldk").withKeyConditionExpression(keyCondition).withExpressionAttributeValues(values).withScanIndexForward(forward)).getItems()) {
+			rks.add(item.get("generalrk").getS().substring("Phone-".length()));
+		}
+		return rks;
+	}
+
+	private static List<String> rks(PartitionQuery query) {
+		return query.stream().map(item -> item.rk).collect(Collectors.toList());
+	}
+
+	private static void assertValidationError(Runnable call) {
+		try {
+			call.run();
+			fail("DynamoDB rejects the call");
+		} catch (AmazonServiceException e) {
+			assertEquals("ValidationException", e.getErrorCode());
+		}
+	}
+
+	private static Map<String, AttributeValue> skKey(String generalkey) {
+		return Collections.singletonMap("generalkey", new AttributeValue(generalkey));
+	}
+
+	private static Map<String, AttributeValue> dkKey(String generalpk, String generalrk) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("generalpk", new AttributeValue(generalpk));
+		key.put("generalrk", new AttributeValue(generalrk));
+		return key;
+	}
+
+	private static Map<String, AttributeValue> key(Map<String, AttributeValue> item) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>(item);
+		key.remove("n");
+		return key;
+	}
+}
@@ -0,0 +1,110 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class ItemUpdateTest {
+
+	private GeneralDB db;
+
+	@Before
+	public void load() {
+		db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		db.addItem("Customer", "1", Arrays.asList(new Attribute("name", TYPE.CHAR, "John"), new Attribute("nickname", TYPE.CHAR, "Johnny"), new Attribute("visits", TYPE.LONG, 3L)));
+		db.addItem("CustomerPhone", "1", "555-0101", Arrays.asList(new Attribute("type", TYPE.CHAR, "home"), new Attribute("calls", TYPE.INT, 1)));
+	}
+
+	@Test
+	public void setRemoveAndIncrementOnlyChangeTheirAttributes() {
+		Collection<Attribute> updated = db.update("Customer", "1")
+				.set(new Attribute("name", TYPE.CHAR, "John Smith"))
+				.remove("nickname")
+				.increment("visits", 2)
+				.returning(Arrays.asList(new Attribute("name", TYPE.CHAR), new Attribute("nickname", TYPE.CHAR), new Attribute("visits", TYPE.LONG)))
+				.execute();
+
+		Map<String, Object> values = values(updated);
+		assertEquals(2, values.size());
+		assertEquals("John Smith", values.get("name"));
+		assertEquals(5L, values.get("visits"));
+		assertNull(db.getAttribute("Customer", "1", new Attribute("nickname", TYPE.CHAR)));
+
+		// Without returning nothing is returned
+		assertEquals(0, db.update("Customer", "1").increment("visits", -0.5).execute().size());
+		assertEquals(4.5, db.getDouble("Customer", "1", "visits", 0), 0);
+	}
+
+	@Test
+	public void composedKeyItemsAreUpdated() {
+		db.update("CustomerPhone", "1", "555-0101").set(new Attribute("type", TYPE.CHAR, "work")).increment("calls", 1).execute();
+
+		assertEquals("work", db.getAttribute("CustomerPhone", "1", "555-0101", new Attribute("type", TYPE.CHAR)));
+		assertEquals(2, db.getLong("CustomerPhone", "1", "555-0101", "calls", 0));
+	}
+
+	@Test
+	public void concurrentIncrementsAreAllApplied() {
+		List<Callable<Object>> increments = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < 200; i++) {
+			increments.add(() -> db.update("Customer", "counter").increment("n", 1).execute());
+		}
+		Workers.invokeAll(8, increments);
+
+		// The item didn't exist, the first increment created it
+		assertEquals(200, db.getLong("Customer", "counter", "n", 0));
+	}
+
+	@Test
+	public void failedConditionLeavesTheItemUnchanged() {
+		db.update("Customer", "1").set(new Attribute("name", TYPE.CHAR, "John Smith")).when(AttributeCondition.equalTo(new Attribute("visits", TYPE.LONG, 3L))).execute();
+		try {
+			db.update("Customer", "1").set(new Attribute("name", TYPE.CHAR, "Jane")).increment("visits", 1).when(AttributeCondition.greaterThan(new Attribute("visits", TYPE.LONG, 3L))).execute();
+			fail("The condition is false");
+		} catch (ConditionalCheckFailedException e) {
+			// expected
+		}
+		try {
+			db.update("Customer", "2").set(new Attribute("name", TYPE.CHAR, "Jane")).when(AttributeCondition.itemExists()).execute();
+			fail("The item doesn't exist");
+		} catch (ConditionalCheckFailedException e) {
+			// expected
+		}
+
+		assertEquals("John Smith", db.getAttribute("Customer", "1", new Attribute("name", TYPE.CHAR)));
+		assertEquals(3, db.getLong("Customer", "1", "visits", 0));
+		assertEquals("", db.getAttribute("Customer", "2", new Attribute("name", TYPE.CHAR)));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void emptyUpdateIsRejected() {
+		db.update("Customer", "1").execute();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setWithoutValueIsRejected() {
+		db.update("Customer", "1").set(new Attribute("name", TYPE.CHAR));
+	}
+
+	private static Map<String, Object> values(Collection<Attribute> attributes) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (Attribute attribute : attributes) {
+			values.put(attribute.name, attribute.value);
+		}
+		return values;
+	}
+}
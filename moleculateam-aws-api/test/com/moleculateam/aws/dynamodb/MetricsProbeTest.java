@@ -0,0 +1,19 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class MetricsProbeTest {
+
+	@Test
+	public void callsAreNotMeasuredWithoutListenerNorLimiter() {
+		boolean debug = APIStatus.debug;
+		APIStatus.debug = true;
+		try {
+			assertSame(MetricsProbe.NONE, MetricsProbe.of(null, null, "getItem", "Customer", false));
+		} finally {
+			APIStatus.debug = debug;
+		}
+	}
+}
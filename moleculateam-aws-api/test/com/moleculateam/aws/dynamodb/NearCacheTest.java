@@ -0,0 +1,187 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class NearCacheTest {
+
+	private static final Attribute NAME = new Attribute("name", TYPE.CHAR);
+
+	/**
+	 * Counts the GetItem calls, which take delay milliseconds
+	 */
+	private static class CountingDynamoDB extends EmbeddedDynamoDB {
+		final AtomicInteger gets = new AtomicInteger();
+		volatile long delay;
+
+		@Override
+		public GetItemResult getItem(GetItemRequest request) {
+			gets.incrementAndGet();
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.getItem(request);
+		}
+	}
+
+	private CountingDynamoDB client;
+	private GeneralDB db;
+	private NearCache cache;
+
+	@Before
+	public void createDB() {
+		client = new CountingDynamoDB();
+		db = new GeneralDB(client, "TEST-");
+		db.addItem("Customer", "1", name("John"));
+		db.addItem("CustomerPhone", "1", "555-0101", name("home"));
+		cache = new NearCache(1000, 1024 * 1024, 60000);
+		db.setNearCache(cache);
+	}
+
+	@Test
+	public void repeatedReadsAreServedFromTheCache() {
+		assertEquals("John", db.getAttribute("Customer", "1", NAME));
+		assertEquals("John", db.getAttribute("Customer", "1", NAME));
+		assertEquals("home", db.getAttribute("CustomerPhone", "1", "555-0101", NAME));
+		assertEquals("home", db.getAttribute("CustomerPhone", "1", "555-0101", NAME));
+
+		assertEquals(2, client.gets.get());
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void missingItemsAreCached() {
+		assertEquals("", db.getAttribute("Customer", "2", NAME));
+		assertEquals("", db.getAttribute("Customer", "2", NAME));
+		assertNull(db.getAttribute("CustomerPhone", "1", "555-0102", NAME));
+		assertNull(db.getAttribute("CustomerPhone", "1", "555-0102", NAME));
+
+		assertEquals(2, client.gets.get());
+	}
+
+	@Test
+	public void writesInvalidateTheirItem() {
+		db.getAttribute("Customer", "1", NAME);
+		db.addItem("Customer", "1", name("John Smith"));
+		assertEquals("John Smith", db.getAttribute("Customer", "1", NAME));
+
+		db.deleteItem("Customer", "1");
+		assertEquals("", db.getAttribute("Customer", "1", NAME));
+
+		db.getAttribute("CustomerPhone", "1", "555-0101", NAME);
+		db.update("CustomerPhone", "1", "555-0101").set(new Attribute("name", TYPE.CHAR, "work")).execute();
+		assertEquals("work", db.getAttribute("CustomerPhone", "1", "555-0101", NAME));
+
+		db.deleteItems("CustomerPhone", "1");
+		assertNull(db.getAttribute("CustomerPhone", "1", "555-0101", NAME));
+	}
+
+	@Test
+	public void queuedWritesInvalidateTheirItem() {
+		WriteBehindBuffer buffer = db.enableWriteBehind(100, 100, 3600000);
+		try {
+			db.getAttribute("Customer", "1", NAME);
+			db.addItem("Customer", "1", name("John Smith"));
+			// The item is read again, although the write is still queued
+			db.getAttribute("Customer", "1", NAME);
+			assertEquals(2, client.gets.get());
+
+			buffer.flush();
+			assertEquals("John Smith", db.getAttribute("Customer", "1", NAME));
+
+			db.deleteItem("Customer", "1");
+			db.getAttribute("Customer", "1", NAME);
+			assertEquals(4, client.gets.get());
+		} finally {
+			db.disableWriteBehind();
+		}
+		assertEquals("", db.getAttribute("Customer", "1", NAME));
+	}
+
+	@Test
+	public void entriesExpireAfterTheTtlOfTheirTable() throws InterruptedException {
+		cache.setTtl("Customer", 50);
+		db.getAttribute("Customer", "1", NAME);
+		db.getAttribute("CustomerPhone", "1", "555-0101", NAME);
+		Thread.sleep(100);
+
+		db.getAttribute("Customer", "1", NAME);
+		db.getAttribute("CustomerPhone", "1", "555-0101", NAME);
+
+		// Only the Customer entry expired
+		assertEquals(3, client.gets.get());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void concurrentMissesShareOneRead() {
+		client.delay = 200;
+		List<Callable<Object>> reads = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < 8; i++) {
+			reads.add(() -> db.getAttribute("Customer", "1", NAME));
+		}
+		Workers.invokeAll(8, reads);
+
+		assertEquals(1, client.gets.get());
+		assertEquals("John", db.getAttribute("Customer", "1", NAME));
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreEvicted() {
+		cache = new NearCache(64, 1024 * 1024, 60000);
+		db.setNearCache(cache);
+		for (int i = 0; i < 500; i++) {
+			db.getAttribute("Customer", "missing" + i, NAME);
+		}
+
+		assertTrue(cache.size() <= 64);
+		assertEquals(500 - cache.size(), cache.getEvictions());
+	}
+
+	@Test
+	public void smallCachesKeepTheirMaximum() {
+		for (int maxEntries : new int[] {1, 5, 17, 40}) {
+			cache = new NearCache(maxEntries, 1024 * 1024, 60000);
+			db.setNearCache(cache);
+			for (int i = 0; i < 500; i++) {
+				db.getAttribute("Customer", "missing" + i, NAME);
+			}
+
+			assertEquals(maxEntries, cache.size());
+		}
+	}
+
+	@Test
+	public void clearRemovesEveryEntry() {
+		db.getAttribute("Customer", "1", NAME);
+		cache.clear();
+		db.getAttribute("Customer", "1", NAME);
+
+		assertEquals(2, client.gets.get());
+	}
+
+	private static Collection<Attribute> name(String name) {
+		return Collections.singletonList(new Attribute("name", TYPE.CHAR, name));
+	}
+}
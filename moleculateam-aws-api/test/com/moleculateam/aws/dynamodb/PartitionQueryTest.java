@@ -0,0 +1,89 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class PartitionQueryTest {
+
+	private GeneralDB db;
+
+	@Before
+	public void load() {
+		db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		int n = 0;
+		for (String rk : new String[] {"b1", "a2", "c1", "a1", "b2", "a3"}) {
+			db.addItem("Phone", "p1", rk, Arrays.asList(new Attribute("n", TYPE.INT, n++)));
+		}
+		db.addItem("Phone", "p2", "a1", Collections.<Attribute>emptyList());
+		db.addItem("Phones", "p1", "a1", Collections.<Attribute>emptyList());
+	}
+
+	@Test
+	public void itemsAreReturnedInRangeKeyOrder() {
+		assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "b2", "c1"), rks(db.query("Phone", "p1")));
+		assertEquals(Arrays.asList("c1", "b2", "b1", "a3", "a2", "a1"), rks(db.query("Phone", "p1").reverse()));
+		assertEquals(Collections.emptyList(), rks(db.query("Phone", "p3")));
+	}
+
+	@Test
+	public void rangeConditionsSelectThePartOfThePartition() {
+		assertEquals(Arrays.asList("a1", "a2", "a3"), rks(db.query("Phone", "p1").where(RangeCondition.beginsWith("a"))));
+		assertEquals(Arrays.asList("a2", "a3", "b1"), rks(db.query("Phone", "p1").where(RangeCondition.between("a2", "b1"))));
+		assertEquals(Arrays.asList("b2", "c1"), rks(db.query("Phone", "p1").where(RangeCondition.greaterThan("b1"))));
+		assertEquals(Arrays.asList("b1", "b2", "c1"), rks(db.query("Phone", "p1").where(RangeCondition.greaterOrEqual("b1"))));
+		assertEquals(Arrays.asList("a1"), rks(db.query("Phone", "p1").where(RangeCondition.lessThan("a2"))));
+		assertEquals(Arrays.asList("a2", "a1"), rks(db.query("Phone", "p1").where(RangeCondition.lessOrEqual("a2")).reverse()));
+	}
+
+	@Test
+	public void pagesAndLimitReturnTheFirstItems() {
+		assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "b2", "c1"), rks(db.query("Phone", "p1").pageSize(4)));
+		assertEquals(Arrays.asList("a1", "a2", "a3", "b1"), rks(db.query("Phone", "p1").pageSize(3).limit(4)));
+		assertEquals(Arrays.asList("c1", "b2"), rks(db.query("Phone", "p1").reverse().limit(2)));
+		assertEquals(Collections.emptyList(), rks(db.query("Phone", "p1").limit(0)));
+	}
+
+	@Test
+	public void tokenResumesTheQueryAfterItsItem() {
+		List<QueryItem> first = db.query("Phone", "p1").pageSize(2).limit(3).stream().collect(Collectors.toList());
+		String token = first.get(2).getToken();
+
+		assertEquals(Arrays.asList("b1", "b2", "c1"), rks(db.query("Phone", "p1").pageSize(2).startAfter(token)));
+		assertEquals(Arrays.asList("a2", "a1"), rks(db.query("Phone", "p1").reverse().startAfter(token)));
+		assertEquals(Arrays.asList("b1"), rks(db.query("Phone", "p1").where(RangeCondition.lessOrEqual("b1")).startAfter(token)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidTokenIsRejected() {
+		db.query("Phone", "p1").startAfter("not a token").iterator();
+	}
+
+	@Test
+	public void requestedAttributesAreReturned() {
+		List<QueryItem> items = db.query("Phone", "p1")
+				.where(RangeCondition.beginsWith("b"))
+				.attributes(Arrays.asList(new Attribute("n", TYPE.INT), new Attribute("missing", TYPE.CHAR)))
+				.stream()
+				.collect(Collectors.toList());
+
+		assertEquals(2, items.size());
+		assertEquals("p1", items.get(0).pk);
+		assertEquals(1, items.get(0).attributes.size());
+		assertEquals(0, items.get(0).attributes.iterator().next().value);
+		assertEquals(4, items.get(1).attributes.iterator().next().value);
+		assertEquals(Collections.emptyList(), db.query("Phone", "p1").limit(1).iterator().next().attributes);
+	}
+
+	private static List<String> rks(PartitionQuery query) {
+		return query.stream().map(item -> item.rk).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,64 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RangeKeyLookupTest {
+
+	private GeneralDB db;
+
+	@Before
+	public void load() {
+		db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		for (int i = 0; i < 25; i++) {
+			db.addItem("CustomerPhone", "c" + (100 + i), "555-0101", Collections.<Attribute>emptyList());
+			db.addItem("CustomerPhone", "c" + (100 + i), "555-" + i, Collections.<Attribute>emptyList());
+		}
+		// Same range key in other logical tables
+		db.addItem("CustomerPhones", "c1", "555-0101", Collections.<Attribute>emptyList());
+		db.addItem("Customer", "c1", "555-0101", Collections.<Attribute>emptyList());
+	}
+
+	@Test
+	public void primaryKeysAreFoundByTheirRangeKey() {
+		assertTrue(db.hasRangeKeyIndex());
+		List<String> pks = new ArrayList<String>();
+		for (int i = 0; i < 25; i++) {
+			pks.add("c" + (100 + i));
+		}
+
+		for (int pageSize : new int[] {0, 1, 7, 25, 100}) {
+			assertEquals(pks, db.findPks("CustomerPhone", "555-0101", pageSize).collect(Collectors.toList()));
+		}
+		assertEquals(Arrays.asList("c107"), db.findPks("CustomerPhone", "555-7").collect(Collectors.toList()));
+		assertEquals(Collections.emptyList(), db.findPks("CustomerPhone", "555-0102").collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shardSuffixIsRemoved() {
+		db.setShards("Device", 4);
+		for (int i = 0; i < 10; i++) {
+			db.addItem("Device", "d" + i, "serial-" + i, Collections.<Attribute>emptyList());
+			db.addItem("Device", "d" + i, "model-x", Collections.<Attribute>emptyList());
+		}
+
+		assertEquals(Arrays.asList("d3"), db.findPks("Device", "serial-3").collect(Collectors.toList()));
+		List<String> pks = db.findPks("Device", "model-x", 3).collect(Collectors.toList());
+		Collections.sort(pks);
+		assertEquals(Arrays.asList("d0", "d1", "d2", "d3", "d4", "d5", "d6", "d7", "d8", "d9"), pks);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativePageSizeIsRejected() {
+		db.findPks("CustomerPhone", "555-0101", -1);
+	}
+}
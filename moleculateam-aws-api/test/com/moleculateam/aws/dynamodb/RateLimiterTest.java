@@ -0,0 +1,105 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class RateLimiterTest {
+
+	@Test
+	public void throttlesHalveTheRateOnce() {
+		RateLimiter limiter = new RateLimiter(100, 40);
+
+		limiter.throttled(true);
+		// The throttles of the same storm count once
+		limiter.throttled(true);
+
+		assertEquals(20, limiter.getWriteRate(), 0);
+		assertEquals(100, limiter.getReadRate(), 0);
+		assertEquals(2, limiter.getThrottles());
+	}
+
+	@Test
+	public void rateNeverGoesBelowOneUnit() throws InterruptedException {
+		RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(4);
+		for (int i = 0; i < 5; i++) {
+			bucket.throttled();
+			Thread.sleep(110);
+		}
+
+		assertEquals(1, bucket.getRate(), 0);
+	}
+
+	@Test
+	public void rateRampsUpAgainWithoutThrottles() throws InterruptedException {
+		RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(100);
+		bucket.throttled();
+		assertEquals(50, bucket.getRate(), 0);
+
+		Thread.sleep(1100);
+		bucket.reserve(1);
+
+		assertEquals(60, bucket.getRate(), 0);
+	}
+
+	@Test
+	public void debtIsPaidByTheNextCall() {
+		RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(100);
+		assertEquals(0, bucket.reserve(1));
+		// The call consumed 151 units instead of 1: the bucket owes about half a second
+		bucket.adjust(150);
+
+		long wait = bucket.reserve(1);
+
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(400));
+		assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(510));
+	}
+
+	@Test
+	public void unprocessedItemsSlowDownTheWrites() {
+		// Leaves the first item of every call unprocessed, until 3 calls are done
+		EmbeddedDynamoDB client = new EmbeddedDynamoDB() {
+			int calls;
+
+			@Override
+			public synchronized BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+				if (++calls > 3) {
+					return super.batchWriteItem(request);
+				}
+				Map<String, List<WriteRequest>> items = request.getRequestItems();
+				String table = items.keySet().iterator().next();
+				List<WriteRequest> writes = items.get(table);
+				BatchWriteItemResult result = super.batchWriteItem(request.clone().withRequestItems(Collections.singletonMap(table, writes.subList(1, writes.size()))));
+				return result.withUnprocessedItems(Collections.singletonMap(table, new ArrayList<WriteRequest>(writes.subList(0, 1))));
+			}
+		};
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		RateLimiter limiter = new RateLimiter(1000, 1000);
+		db.setRateLimiter(limiter);
+		List<BulkItem> items = new ArrayList<BulkItem>();
+		for (int i = 0; i < 10; i++) {
+			items.add(new BulkItem("c" + i, Arrays.asList(new Attribute("n", TYPE.INT, i))));
+		}
+
+		BulkWriteResult result = db.addItems("Customer", items);
+
+		assertEquals(10, result.getWritten());
+		assertEquals(3, limiter.getThrottles());
+		assertTrue(limiter.getWriteRate() < 1000);
+		assertEquals(1000, limiter.getReadRate(), 0);
+		assertEquals(10, client.getItemCount("TEST-generalsk"));
+	}
+}
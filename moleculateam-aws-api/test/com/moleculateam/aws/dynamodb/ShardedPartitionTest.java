@@ -0,0 +1,105 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class ShardedPartitionTest {
+
+	private static final Attribute N = new Attribute("n", TYPE.INT);
+
+	private EmbeddedDynamoDB client;
+	private GeneralDB db;
+	private List<String> rks;
+
+	@Before
+	public void load() {
+		client = new EmbeddedDynamoDB();
+		db = new GeneralDB(client, "TEST-");
+		db.setShards("Event", 4);
+		rks = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			String rk = String.format("e%03d", i);
+			rks.add(rk);
+			db.addItem("Event", "device", rk, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+		}
+		db.addItem("Event", "other", "e000", Collections.<Attribute>emptyList());
+	}
+
+	@Test
+	public void itemsAreSpreadOverTheShards() {
+		Set<String> partitions = new HashSet<String>();
+		for (Map<String, AttributeValue> item : client.scan(new ScanRequest("TEST-generaldk")).getItems()) {
+			partitions.add(item.get("generalpk").getS());
+		}
+
+		// The 4 shards of device and the shard of the single item of other
+		assertEquals(5, partitions.size());
+		assertTrue(partitions.containsAll(Arrays.asList("Event-device#0", "Event-device#1", "Event-device#2", "Event-device#3")));
+		assertEquals(4, db.getShards("Event"));
+		assertEquals(1, db.getShards("Phone"));
+	}
+
+	@Test
+	public void singleItemsAreReadAndDeleted() {
+		assertEquals(42, db.getAttribute("Event", "device", "e042", N));
+		db.deleteItem("Event", "device", "e042");
+		assertNull(db.getAttribute("Event", "device", "e042", N));
+	}
+
+	@Test
+	public void queriesMergeTheShardsInRangeKeyOrder() {
+		assertEquals(rks, rks(db.query("Event", "device")));
+		assertEquals(rks, rks(db.query("Event", "device").pageSize(7)));
+
+		List<String> reversed = new ArrayList<String>(rks);
+		Collections.reverse(reversed);
+		assertEquals(reversed, rks(db.query("Event", "device").reverse().pageSize(5)));
+
+		assertEquals(rks.subList(0, 10), rks(db.query("Event", "device").pageSize(3).limit(10)));
+		assertEquals(rks.subList(20, 30), rks(db.query("Event", "device").where(RangeCondition.beginsWith("e02"))));
+
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < 100; i++) {
+			values.add(i);
+		}
+		assertEquals(values, new ArrayList<Object>(db.getAttributes("Event", "device", N)));
+	}
+
+	@Test
+	public void tokensResumeEveryShard() {
+		List<QueryItem> first = db.query("Event", "device").pageSize(4).limit(37).stream().collect(Collectors.toList());
+
+		assertEquals(rks.subList(37, 100), rks(db.query("Event", "device").pageSize(4).startAfter(first.get(36).getToken())));
+	}
+
+	@Test
+	public void deleteItemsRemovesEveryShard() {
+		assertEquals(100, db.deleteItems("Event", "device", true));
+		assertEquals(101, client.getItemCount("TEST-generaldk"));
+
+		assertEquals(100, db.deleteItems("Event", "device"));
+		assertEquals(1, client.getItemCount("TEST-generaldk"));
+		assertEquals(Collections.emptyList(), rks(db.query("Event", "device")));
+	}
+
+	private static List<String> rks(PartitionQuery query) {
+		return query.stream().map(item -> item.rk).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,205 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+public class TableArchiveTest {
+
+	/**
+	 * Returns scan pages of 7 items of generalsk, so every segment writes several gzip members
+	 */
+	private static class SmallPagesDynamoDB extends EmbeddedDynamoDB {
+		@Override
+		public ScanResult scan(ScanRequest request) {
+			return super.scan(request.getTableName().endsWith("generalsk") ? request.clone().withLimit(7) : request);
+		}
+	}
+
+	/**
+	 * Fails the BatchWriteItem calls after the first ones
+	 */
+	private static class FailingDynamoDB extends EmbeddedDynamoDB {
+		final AtomicInteger allowed = new AtomicInteger(Integer.MAX_VALUE);
+
+		@Override
+		public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+			if (allowed.getAndDecrement() <= 0) {
+				throw new AmazonServiceException("Service unavailable");
+			}
+			return super.batchWriteItem(request);
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SmallPagesDynamoDB client;
+	private GeneralDB db;
+	private Path directory;
+
+	@Before
+	public void load() throws IOException {
+		client = new SmallPagesDynamoDB();
+		db = new GeneralDB(client, "TEST-");
+		for (int i = 0; i < 100; i++) {
+			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+			item.put("generalkey", new AttributeValue((i % 4 == 0 ? "Invoice-" : "Customer-") + i));
+			item.put("s", new AttributeValue("\u00f1and\u00fa \u20ac " + i));
+			item.put("n", new AttributeValue().withN(Integer.toString(i * 1000)));
+			item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[] {(byte)i, 0, -1})));
+			item.put("bool", new AttributeValue().withBOOL(i % 2 == 0));
+			item.put("null", new AttributeValue().withNULL(true));
+			item.put("ss", new AttributeValue().withSS("a", "b" + i));
+			item.put("ns", new AttributeValue().withNS("1", "2.5", Integer.toString(i)));
+			item.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[] {1}), ByteBuffer.wrap(new byte[300])));
+			item.put("l", new AttributeValue().withL(new AttributeValue("x"), new AttributeValue().withN("1"), new AttributeValue().withL()));
+			Map<String, AttributeValue> map = new HashMap<String, AttributeValue>();
+			map.put("inner", new AttributeValue().withM(new HashMap<String, AttributeValue>()));
+			map.put("name", new AttributeValue("value " + i));
+			item.put("m", new AttributeValue().withM(map));
+			client.putItem(new PutItemRequest("TEST-generalsk", item));
+		}
+		for (int i = 0; i < 60; i++) {
+			Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+			item.put("generalpk", new AttributeValue("CustomerPhone-" + (i % 5)));
+			item.put("generalrk", new AttributeValue("CustomerPhone-555-" + i));
+			item.put("type", new AttributeValue("home"));
+			client.putItem(new PutItemRequest("TEST-generaldk", item));
+		}
+		directory = folder.getRoot().toPath().resolve("export");
+	}
+
+	@Test
+	public void importRestoresTheItemsExported() throws IOException {
+		assertEquals(160, db.exportTo(directory, null, 3, null));
+
+		// Every file has a gzip member per scan page
+		Path file = directory.resolve("generalsk.0-3.gz");
+		assertTrue(members(file) > 1);
+
+		EmbeddedDynamoDB target = new EmbeddedDynamoDB();
+		assertEquals(160, new GeneralDB(target, "PROD-").importFrom(directory, null, 2, null));
+
+		assertEquals(items(client, "TEST-generalsk"), items(target, "PROD-generalsk"));
+		assertEquals(items(client, "TEST-generaldk"), items(target, "PROD-generaldk"));
+	}
+
+	@Test
+	public void tableNamePrefixSelectsTheItems() {
+		Path phones = folder.getRoot().toPath().resolve("phones");
+		assertEquals(60, db.exportTo(phones, "CustomerPhone", 2, null));
+		EmbeddedDynamoDB target = new EmbeddedDynamoDB();
+		assertEquals(60, new GeneralDB(target, "TEST-").importFrom(phones, null, 2, null));
+		assertEquals(0, target.getItemCount("TEST-generalsk"));
+
+		assertEquals(160, db.exportTo(directory, null, 2, null));
+		target = new EmbeddedDynamoDB();
+		assertEquals(25, new GeneralDB(target, "TEST-").importFrom(directory, "Invoice", 2, null));
+		assertEquals(25, target.getItemCount("TEST-generalsk"));
+		assertEquals(0, target.getItemCount("TEST-generaldk"));
+	}
+
+	@Test
+	public void interruptedExportIsResumed() {
+		AtomicInteger pages = new AtomicInteger();
+		try {
+			db.exportTo(directory, null, 2, (tableName, segment, copied) -> {
+				if (pages.incrementAndGet() == 5) {
+					throw new IllegalStateException("Interrupted");
+				}
+			});
+			fail("The export must be interrupted");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		long resumed = db.exportTo(directory, null, 2, null);
+		assertTrue(resumed < 160);
+
+		EmbeddedDynamoDB target = new EmbeddedDynamoDB();
+		// No item is exported twice
+		assertEquals(160, new GeneralDB(target, "TEST-").importFrom(directory, null, 2, null));
+		assertEquals(items(client, "TEST-generalsk"), items(target, "TEST-generalsk"));
+		assertEquals(items(client, "TEST-generaldk"), items(target, "TEST-generaldk"));
+	}
+
+	@Test
+	public void interruptedImportIsResumed() {
+		GeneralDB source = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		for (int i = 0; i < 2500; i++) {
+			source.addItem("Customer", "c" + i, Arrays.asList(new Attribute("n", Attribute.TYPE.INT, i)));
+		}
+		assertEquals(2500, source.exportTo(directory, null, 1, null));
+
+		FailingDynamoDB target = new FailingDynamoDB();
+		target.allowed.set(50);
+		try {
+			new GeneralDB(target, "TEST-").importFrom(directory, null, 1, null);
+			fail("The import must fail");
+		} catch (AmazonServiceException e) {
+			// expected
+		}
+		target.allowed.set(Integer.MAX_VALUE);
+
+		// 1250 items were written, but the progress is saved every 1000 items
+		assertEquals(1500, new GeneralDB(target, "TEST-").importFrom(directory, null, 1, null));
+		assertEquals(2500, target.getItemCount("TEST-generalsk"));
+		assertEquals(0, new GeneralDB(target, "TEST-").importFrom(directory, null, 1, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void exportIsResumedWithTheSameSegments() {
+		db.exportTo(directory, null, 2, null);
+		db.exportTo(directory, null, 3, null);
+	}
+
+	private static Set<Map<String, AttributeValue>> items(EmbeddedDynamoDB client, String tableName) {
+		Set<Map<String, AttributeValue>> items = new HashSet<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> lastKey = null;
+		do {
+			ScanResult result = client.scan(new ScanRequest(tableName).withExclusiveStartKey(lastKey));
+			items.addAll(result.getItems());
+			lastKey = result.getLastEvaluatedKey();
+		} while (lastKey != null);
+		return items;
+	}
+
+	/**
+	 * Number of gzip members of the file, counting their headers
+	 */
+	private static int members(Path file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		int members = 0;
+		for (int i = 0; i + 2 < bytes.length; i++) {
+			if (bytes[i] == 0x1f && bytes[i + 1] == (byte)0x8b && bytes[i + 2] == 8) {
+				members++;
+			}
+		}
+		return members;
+	}
+}
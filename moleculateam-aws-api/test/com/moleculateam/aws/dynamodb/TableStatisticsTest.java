@@ -0,0 +1,100 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class TableStatisticsTest {
+
+	private EmbeddedDynamoDB client;
+	private GeneralDB db;
+
+	@Before
+	public void load() {
+		client = new EmbeddedDynamoDB();
+		db = new GeneralDB(client, "TEST-");
+		for (int i = 0; i < 10; i++) {
+			db.addItem("Customer", "c" + i, Arrays.asList(new Attribute("name", TYPE.CHAR, "customer " + i)));
+		}
+		int[] phones = {6, 3, 1, 3};
+		for (int pk = 0; pk < phones.length; pk++) {
+			for (int rk = 0; rk < phones[pk]; rk++) {
+				db.addItem("Phone", "p" + pk, "r" + rk, Arrays.asList(new Attribute("n", TYPE.INT, rk)));
+			}
+		}
+		db.addItem("Phone", "p2", "big", Arrays.asList(new Attribute("note", TYPE.CHAR, repeat('x', 5000))));
+	}
+
+	@Test
+	public void countsEveryLogicalTable() {
+		Map<String, TableStatistics> statistics = byName(db.statistics(4, 2));
+
+		assertEquals(2, statistics.size());
+		TableStatistics customer = statistics.get("Customer");
+		assertFalse(customer.isComposedKey());
+		assertEquals(10, customer.getItemCount());
+		assertEquals(bytes("TEST-generalsk"), customer.getTotalBytes());
+		assertTrue(customer.getTopPartitions().isEmpty());
+
+		TableStatistics phone = statistics.get("Phone");
+		assertTrue(phone.isComposedKey());
+		assertEquals(14, phone.getItemCount());
+		assertEquals(bytes("TEST-generaldk"), phone.getTotalBytes());
+		assertTrue(phone.getMaxItemBytes() > 5000);
+		Map<String, Long> top = new LinkedHashMap<String, Long>();
+		top.put("p0", 6L);
+		top.put("p1", 3L);
+		assertEquals(top, phone.getTopPartitions());
+		assertEquals("[p0, p1]", phone.getTopPartitions().keySet().toString());
+	}
+
+	@Test
+	public void tablesAreSortedByBytes() {
+		List<TableStatistics> statistics = db.statistics(2, 0);
+		assertEquals("Phone", statistics.get(0).getTableName());
+		assertEquals("Customer", statistics.get(1).getTableName());
+	}
+
+	@Test
+	public void readBudgetGivesTheSameCounts() {
+		Map<String, TableStatistics> statistics = byName(db.statistics(3, 1, 1000));
+		assertEquals(10, statistics.get("Customer").getItemCount());
+		assertEquals(14, statistics.get("Phone").getItemCount());
+		assertEquals(1, statistics.get("Phone").getTopPartitions().size());
+	}
+
+	private long bytes(String tableName) {
+		long bytes = 0;
+		for (Map<String, AttributeValue> item : client.scan(new ScanRequest(tableName)).getItems()) {
+			bytes += EmbeddedDynamoDB.size(item);
+		}
+		return bytes;
+	}
+
+	private static Map<String, TableStatistics> byName(List<TableStatistics> statistics) {
+		Map<String, TableStatistics> byName = new HashMap<String, TableStatistics>();
+		for (TableStatistics table : statistics) {
+			byName.put(table.getTableName(), table);
+		}
+		return byName;
+	}
+
+	private static String repeat(char c, int times) {
+		char[] chars = new char[times];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,104 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class ValueCompressorTest {
+
+	@Test
+	public void roundTrip() {
+		for (String value : new String[] {repeat("abcdefgh", 2000), repeat("\u00f1and\u00fa \u20ac \u4e2d\u6587 ", 500), json(300)}) {
+			byte[] compressed = ValueCompressor.compress(value, 100);
+			assertNotNull(compressed);
+			assertTrue(ValueCompressor.isCompressed(compressed));
+			assertTrue(compressed.length < value.length());
+			assertEquals(value, ValueCompressor.decompress(compressed));
+		}
+	}
+
+	@Test
+	public void valuesBelowTheThresholdAreNotCompressed() {
+		assertNull(ValueCompressor.compress(repeat("a", 99), 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedValueIsRejected() {
+		byte[] compressed = ValueCompressor.compress(repeat("abcdefgh", 2000), 100);
+		ValueCompressor.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+	}
+
+	@Test
+	public void roundTripFromManyThreads() {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < 200; i++) {
+			// Some values grow the buffers past the size kept in the pool
+			final String value = repeat("value " + i + " ", i % 10 == 0 ? 200000 : 500);
+			tasks.add(() -> {
+				assertEquals(value, ValueCompressor.decompress(ValueCompressor.compress(value, 100)));
+				return null;
+			});
+		}
+		Workers.invokeAll(16, tasks);
+	}
+
+	@Test
+	public void jsonReadsTheSameCompressedOrNot() throws Exception {
+		EmbeddedDynamoDB client = new EmbeddedDynamoDB();
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		String json = json(300);
+		db.addItem("Doc", "plain", Arrays.asList(new Attribute("body", TYPE.JSON, json)));
+		db.setCompression(100);
+		db.addItem("Doc", "compressed", Arrays.asList(new Attribute("body", TYPE.JSON, json)));
+
+		AttributeValue stored = client.getItem(new GetItemRequest("TEST-generalsk", Collections.singletonMap("generalkey", new AttributeValue("Doc-compressed")))).getItem().get("body");
+		assertNotNull("The value is stored compressed", stored.getB());
+		String plain = (String)db.getAttribute("Doc", "plain", new Attribute("body", TYPE.JSON));
+		String compressed = (String)db.getAttribute("Doc", "compressed", new Attribute("body", TYPE.JSON));
+		ObjectMapper mapper = new ObjectMapper();
+		assertEquals(mapper.readTree(plain), mapper.readTree(compressed));
+		assertEquals("", mapper.readTree(compressed).get("empty").asText());
+	}
+
+	@Test
+	public void charValuesRoundTrip() {
+		GeneralDB db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		db.setCompression(100);
+		String value = repeat("line of text\n", 1000);
+		db.addItem("Doc", "text", Arrays.asList(new Attribute("body", TYPE.CHAR, value)));
+		assertEquals(value, db.getAttribute("Doc", "text", new Attribute("body", TYPE.CHAR)));
+	}
+
+	/**
+	 * JSON with an empty value written as " ", like the values stored by the API
+	 */
+	private static String json(int elements) {
+		StringBuilder json = new StringBuilder("{\"empty\": \" \", \"list\": [");
+		for (int i = 0; i < elements; i++) {
+			json.append(i > 0 ? ", " : "").append("{\"n\": ").append(i).append(", \"s\": \"value\"}");
+		}
+		return json.append("]}").toString();
+	}
+
+	private static String repeat(String value, int times) {
+		StringBuilder repeated = new StringBuilder(value.length() * times);
+		for (int i = 0; i < times; i++) {
+			repeated.append(value);
+		}
+		return repeated.toString();
+	}
+}
@@ -0,0 +1,172 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class WriteBehindBufferTest {
+
+	private static final String TABLE = "TEST-generalsk";
+
+	/**
+	 * Rejects the batches writing the value failValue
+	 */
+	private static class FailingDynamoDB extends EmbeddedDynamoDB {
+		volatile String failValue;
+
+		@Override
+		public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+			for (List<WriteRequest> writes : request.getRequestItems().values()) {
+				for (WriteRequest write : writes) {
+					if (write.getPutRequest() != null && write.getPutRequest().getItem().get("value").getS().equals(failValue)) {
+						throw new AmazonServiceException("Service unavailable");
+					}
+				}
+			}
+			return super.batchWriteItem(request);
+		}
+	}
+
+	private FailingDynamoDB client;
+	private List<WriteRequest> written;
+	private WriteBehindBuffer buffer;
+
+	@Before
+	public void createBuffer() {
+		client = new FailingDynamoDB();
+		written = new CopyOnWriteArrayList<WriteRequest>();
+		// Only explicit flushes
+		buffer = new WriteBehindBuffer(client, 100, 100, 3600000, (tableName, request) -> written.add(request), tableName -> MetricsProbe.NONE);
+	}
+
+	@After
+	public void closeBuffer() {
+		client.failValue = null;
+		buffer.close();
+	}
+
+	@Test
+	public void repeatedWritesAreCoalesced() {
+		buffer.add(TABLE, put("a", "1"));
+		buffer.add(TABLE, put("a", "2"));
+		buffer.add(TABLE, put("b", "1"));
+		buffer.add(TABLE, put("a", "3"));
+		assertEquals(2, buffer.getPending());
+
+		buffer.flush();
+
+		assertEquals(2, buffer.getCoalesced());
+		assertEquals(2, buffer.getWritten());
+		assertEquals(2, written.size());
+		assertEquals("3", value("a"));
+		assertEquals("1", value("b"));
+	}
+
+	@Test
+	public void failedWriteIsRetriedOnTheNextFlush() {
+		client.failValue = "1";
+		buffer.add(TABLE, put("a", "1"));
+		flushFailing();
+		assertEquals(1, buffer.getPending());
+		assertTrue("Writes not delivered are not reported as written", written.isEmpty());
+
+		client.failValue = null;
+		buffer.flush();
+
+		assertEquals(0, buffer.getPending());
+		assertEquals("1", value("a"));
+		assertEquals(1, written.size());
+	}
+
+	@Test
+	public void retryNeverOverwritesANewerWrite() {
+		client.failValue = "old";
+		buffer.add(TABLE, put("a", "old"));
+		flushFailing();
+
+		buffer.add(TABLE, put("a", "new"));
+		buffer.flush();
+		client.failValue = null;
+		buffer.flush();
+
+		assertEquals("new", value("a"));
+		assertEquals(0, buffer.getPending());
+		assertEquals(1, buffer.getCoalesced());
+	}
+
+	@Test
+	public void deleteItemsIncludesTheQueuedItems() {
+		EmbeddedDynamoDB client = new EmbeddedDynamoDB();
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		db.enableWriteBehind(100, 100, 3600000);
+		try {
+			for (int i = 0; i < 3; i++) {
+				db.addItem("Phone", "p1", "r" + i, Arrays.asList(new Attribute("n", TYPE.INT, i)));
+			}
+
+			assertEquals(3, db.deleteItems("Phone", "p1", true));
+			db.addItem("Phone", "p1", "r3", Arrays.asList(new Attribute("n", TYPE.INT, 3)));
+			assertEquals(4, db.deleteItems("Phone", "p1"));
+			assertEquals(0, client.getItemCount("TEST-generaldk"));
+		} finally {
+			db.disableWriteBehind();
+		}
+	}
+
+	@Test
+	public void bulkWritesGoAfterTheQueuedOnes() {
+		EmbeddedDynamoDB client = new EmbeddedDynamoDB();
+		GeneralDB db = new GeneralDB(client, "TEST-");
+		WriteBehindBuffer buffer = db.enableWriteBehind(100, 100, 3600000);
+		try {
+			db.addItem("Customer", "1", Arrays.asList(new Attribute("name", TYPE.CHAR, "queued")));
+			db.addItems("Customer", Arrays.asList(new BulkItem("1", Arrays.asList(new Attribute("name", TYPE.CHAR, "bulk")))));
+			buffer.flush();
+
+			assertEquals("bulk", db.getAttribute("Customer", "1", new Attribute("name", TYPE.CHAR)));
+		} finally {
+			db.disableWriteBehind();
+		}
+	}
+
+	private void flushFailing() {
+		try {
+			buffer.flush();
+			fail("The flush must report the writes not delivered");
+		} catch (AmazonClientException e) {
+			// expected
+		}
+	}
+
+	private String value(String key) {
+		return client.getItem(new GetItemRequest(TABLE, Collections.singletonMap("generalkey", new AttributeValue(key)))).getItem().get("value").getS();
+	}
+
+	private static WriteRequest put(String key, String value) {
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("generalkey", new AttributeValue(key));
+		item.put("value", new AttributeValue(value));
+		return new WriteRequest(new PutRequest(item));
+	}
+}
@@ -0,0 +1,75 @@
+package com.moleculateam.aws.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+
+public class WriteTransactionTest {
+
+	private GeneralDB db;
+
+	@Before
+	public void createDB() {
+		db = new GeneralDB(new EmbeddedDynamoDB(), "TEST-");
+		db.addItem("Customer", "1", name("John"));
+		db.addItem("CustomerPhone", "1", "555-0101", name("home"));
+	}
+
+	@Test
+	public void commitWritesAllTheActions() {
+		db.transaction()
+				.put("Customer", "2", name("Jane"))
+				.when(AttributeCondition.itemNotExists())
+				.delete("CustomerPhone", "1", "555-0101")
+				.update(db.update("Customer", "1").set(new Attribute("name", TYPE.CHAR, "John Smith")))
+				.commit();
+
+		assertEquals("Jane", db.getAttribute("Customer", "2", new Attribute("name", TYPE.CHAR)));
+		assertEquals("John Smith", db.getAttribute("Customer", "1", new Attribute("name", TYPE.CHAR)));
+		assertNull(db.getAttribute("CustomerPhone", "1", "555-0101", new Attribute("name", TYPE.CHAR)));
+	}
+
+	@Test
+	public void failedConditionsAreReportedAndNothingIsWritten() {
+		try {
+			db.transaction()
+					.put("Customer", "2", name("Jane"))
+					.put("Customer", "1", name("Other"))
+					.when(AttributeCondition.itemNotExists())
+					.check("CustomerPhone", "1", "555-0101", AttributeCondition.equalTo(new Attribute("name", TYPE.CHAR, "work")))
+					.commit();
+			fail("The transaction must be cancelled");
+		} catch (WriteTransactionException e) {
+			assertEquals(2, e.getReasons().size());
+			assertEquals("ConditionalCheckFailed", e.getReasons().get(new ItemKey("Customer", "1")));
+			assertEquals("ConditionalCheckFailed", e.getReasons().get(new ItemKey("CustomerPhone", "1", "555-0101")));
+			assertFalse(e.getReasons().containsKey(new ItemKey("Customer", "2")));
+			assertTrue(e.isConditionFailed());
+		}
+
+		// Items with a single key not found are read as ""
+		assertEquals("", db.getAttribute("Customer", "2", new Attribute("name", TYPE.CHAR)));
+		assertEquals("John", db.getAttribute("Customer", "1", new Attribute("name", TYPE.CHAR)));
+	}
+
+	@Test
+	public void emptyTransactionDoesNothing() {
+		WriteTransaction transaction = db.transaction();
+		assertEquals(0, transaction.size());
+		transaction.commit();
+	}
+
+	private static Collection<Attribute> name(String name) {
+		return Collections.singletonList(new Attribute("name", TYPE.CHAR, name));
+	}
+}
@@ -0,0 +1,60 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moleculateam.aws.dynamodb.GeneralDB;
+
+/**
+ * Copies of the single key and composed key tables to another environment with a parallel scan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+	@Param({"0", "1000"})
+	public long latencyMicros;
+
+	@Param({"1", "4"})
+	public int workers;
+
+	@Param({"10000"})
+	public int tableSize;
+
+	private GeneralDB source;
+	private GeneralDB target;
+
+	@Setup
+	public void setup() {
+		FakeDynamoDB client = new FakeDynamoDB(latencyMicros, 1000);
+		source = new GeneralDB(client, Fixtures.ENV);
+		source.addItems(Fixtures.TABLE, Fixtures.items(tableSize));
+		source.addItems(Fixtures.PHONES, Fixtures.partition(tableSize));
+		target = new GeneralDB(client, Fixtures.ENV+"COPY-");
+	}
+
+	@Benchmark
+	public long copySingleKeyTable() {
+		return source.copy_SK_ToTarget(target, workers, null);
+	}
+
+	@Benchmark
+	public long copyComposedKeyTable() {
+		return source.copyToTarget(target, workers, null);
+	}
+}
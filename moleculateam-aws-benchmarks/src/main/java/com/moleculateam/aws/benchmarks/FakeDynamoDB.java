@@ -0,0 +1,116 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.moleculateam.aws.dynamodb.EmbeddedDynamoDB;
+
+/**
+ * FakeDynamoDB is the embedded engine with a network time: every call waits the latency configured before answering, so the benchmarks can run with a realistic latency or with none to measure only the client-side cost.
+ * Query and Scan pages are limited to pageSize items so they span several pages.
+ *
+ */
+public class FakeDynamoDB extends EmbeddedDynamoDB {
+
+	private final long latencyNanos;
+	private final int pageSize;
+
+	/**
+	 * @param latencyMicros Time in microseconds every call waits before answering
+	 * @param pageSize Maximum number of items returned by a Query or Scan page
+	 */
+	public FakeDynamoDB(long latencyMicros, int pageSize) {
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public PutItemResult putItem(PutItemRequest request) {
+		pause();
+		return super.putItem(request);
+	}
+
+	@Override
+	public GetItemResult getItem(GetItemRequest request) {
+		pause();
+		return super.getItem(request);
+	}
+
+	@Override
+	public DeleteItemResult deleteItem(DeleteItemRequest request) {
+		pause();
+		return super.deleteItem(request);
+	}
+
+	@Override
+	public UpdateItemResult updateItem(UpdateItemRequest request) {
+		pause();
+		return super.updateItem(request);
+	}
+
+	@Override
+	public DescribeTableResult describeTable(DescribeTableRequest request) {
+		pause();
+		return super.describeTable(request);
+	}
+
+	@Override
+	public QueryResult query(QueryRequest request) {
+		pause();
+		return super.query(request.clone().withLimit(limit(request.getLimit())));
+	}
+
+	@Override
+	public ScanResult scan(ScanRequest request) {
+		pause();
+		return super.scan(request.clone().withLimit(limit(request.getLimit())));
+	}
+
+	@Override
+	public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+		pause();
+		return super.batchWriteItem(request);
+	}
+
+	@Override
+	public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+		pause();
+		return super.batchGetItem(request);
+	}
+
+	@Override
+	public TransactWriteItemsResult transactWriteItems(TransactWriteItemsRequest request) {
+		pause();
+		return super.transactWriteItems(request);
+	}
+
+	private int limit(Integer limit) {
+		return limit == null ? pageSize : Math.min(pageSize, limit);
+	}
+
+	private void pause() {
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.moleculateam.aws.dynamodb.Attribute;
+import com.moleculateam.aws.dynamodb.Attribute.TYPE;
+import com.moleculateam.aws.dynamodb.BulkItem;
+
+/**
+ * Items used by the benchmarks: a customer with a JSON document, a name and an age
+ */
+final class Fixtures {
+
+	static final String ENV = "BENCH-";
+	static final String TABLE = "Customer";
+	static final String PHONES = "CustomerPhone";
+	static final String PK = "5555555000";
+
+	static final Attribute INFO = new Attribute("CustomerInfo", TYPE.JSON);
+	static final Attribute NAME = new Attribute("name", TYPE.CHAR);
+	static final Attribute AGE = new Attribute("age", TYPE.INT);
+
+	private Fixtures() {
+	}
+
+	static Collection<Attribute> attributes(int i) {
+		List<Attribute> attributes = new ArrayList<Attribute>(3);
+		attributes.add(new Attribute(INFO.name, TYPE.JSON, "{\"name\": \"Customer "+i+"\", \"phones\": [{\"type\": \"home\", \"number\": \"(+1)555-555-"+i+"\"}, {\"type\": \"work\", \"number\": \"(+1)111-111-"+i+"\"}], \"notes\": \" \"}"));
+		attributes.add(new Attribute(NAME.name, TYPE.CHAR, "Customer "+i));
+		attributes.add(new Attribute(AGE.name, TYPE.INT, 20 + i % 60));
+		return attributes;
+	}
+
+	static List<BulkItem> items(int count) {
+		List<BulkItem> items = new ArrayList<BulkItem>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(new BulkItem(String.valueOf(i), attributes(i)));
+		}
+		return items;
+	}
+
+	static List<BulkItem> partition(int count) {
+		List<BulkItem> items = new ArrayList<BulkItem>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(new BulkItem(PK, String.format("(+1)%09d", i), attributes(i)));
+		}
+		return items;
+	}
+}
@@ -0,0 +1,77 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.moleculateam.aws.dynamodb.Attribute;
+import com.moleculateam.aws.dynamodb.GeneralDB;
+import com.moleculateam.aws.dynamodb.QueryItem;
+import com.moleculateam.aws.dynamodb.RangeCondition;
+
+/**
+ * Partition reads of a composed key table: the whole partition (getAttributes and query) and a page with a range key condition
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+	@Param({"0", "1000"})
+	public long latencyMicros;
+
+	@Param({"1000"})
+	public int partitionSize;
+
+	private GeneralDB db;
+	private Collection<Attribute> atts;
+
+	@Setup
+	public void setup() {
+		db = new GeneralDB(new FakeDynamoDB(latencyMicros, 100), Fixtures.ENV);
+		db.addItems(Fixtures.PHONES, Fixtures.partition(partitionSize));
+		atts = Arrays.asList(Fixtures.NAME, Fixtures.AGE);
+	}
+
+	@Benchmark
+	public Collection<Object> getAttributes() {
+		return db.getAttributes(Fixtures.PHONES, Fixtures.PK, Fixtures.NAME);
+	}
+
+	@Benchmark
+	public void queryPartition(Blackhole blackhole) {
+		for (QueryItem item : db.query(Fixtures.PHONES, Fixtures.PK).attributes(atts)) {
+			blackhole.consume(item);
+		}
+	}
+
+	@Benchmark
+	public void queryKeys(Blackhole blackhole) {
+		for (QueryItem item : db.query(Fixtures.PHONES, Fixtures.PK)) {
+			blackhole.consume(item);
+		}
+	}
+
+	@Benchmark
+	public void queryPage(Blackhole blackhole) {
+		for (QueryItem item : db.query(Fixtures.PHONES, Fixtures.PK).where(RangeCondition.beginsWith("(+1)0000005")).reverse().limit(50).attributes(atts)) {
+			blackhole.consume(item);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moleculateam.aws.dynamodb.Attribute;
+import com.moleculateam.aws.dynamodb.GeneralDB;
+import com.moleculateam.aws.dynamodb.ItemKey;
+import com.moleculateam.aws.dynamodb.NearCache;
+
+/**
+ * Point reads: a single attribute (getAttribute), several attributes (getItem), batches of keys (getItems) and reads served by the near cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+	private static final int ITEMS = 1000;
+	private static final int BATCH_SIZE = 100;
+
+	@Param({"0", "1000"})
+	public long latencyMicros;
+
+	private GeneralDB db;
+	private GeneralDB cachedDB;
+	private Collection<Attribute> atts;
+	private List<ItemKey> keys;
+	private int next;
+
+	@Setup
+	public void setup() {
+		FakeDynamoDB client = new FakeDynamoDB(latencyMicros, 1000);
+		db = new GeneralDB(client, Fixtures.ENV);
+		db.addItems(Fixtures.TABLE, Fixtures.items(ITEMS));
+		cachedDB = new GeneralDB(client, Fixtures.ENV);
+		cachedDB.setNearCache(new NearCache(4 * ITEMS, 64 * 1024 * 1024, TimeUnit.MINUTES.toMillis(10)));
+		atts = Arrays.asList(Fixtures.INFO, Fixtures.NAME, Fixtures.AGE);
+		keys = new ArrayList<ItemKey>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			keys.add(new ItemKey(Fixtures.TABLE, String.valueOf(i * 7 % ITEMS)));
+		}
+	}
+
+	@Benchmark
+	public Object getAttributeJson() {
+		return db.getAttribute(Fixtures.TABLE, String.valueOf(next++ % ITEMS), Fixtures.INFO);
+	}
+
+	@Benchmark
+	public Object getAttributeString() {
+		return db.getAttribute(Fixtures.TABLE, String.valueOf(next++ % ITEMS), Fixtures.NAME);
+	}
+
+	@Benchmark
+	public Object getAttributeCached() {
+		return cachedDB.getAttribute(Fixtures.TABLE, String.valueOf(next++ % ITEMS), Fixtures.INFO);
+	}
+
+	@Benchmark
+	public Collection<Attribute> getItem() {
+		return db.getItem(Fixtures.TABLE, String.valueOf(next++ % ITEMS), atts, false);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public Map<ItemKey, Collection<Attribute>> getItems() {
+		return db.getItems(keys, atts);
+	}
+}
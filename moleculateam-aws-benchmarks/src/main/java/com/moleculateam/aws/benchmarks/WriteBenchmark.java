@@ -0,0 +1,68 @@
+package com.moleculateam.aws.benchmarks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moleculateam.aws.dynamodb.Attribute;
+import com.moleculateam.aws.dynamodb.BulkItem;
+import com.moleculateam.aws.dynamodb.BulkWriteResult;
+import com.moleculateam.aws.dynamodb.GeneralDB;
+
+/**
+ * Single writes (addItem) and bulk writes (addItems) of items with a JSON, a string and a number attribute
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+	private static final int BULK_SIZE = 1000;
+
+	@Param({"0", "1000"})
+	public long latencyMicros;
+
+	private GeneralDB db;
+	private Collection<Attribute> attributes;
+	private List<BulkItem> items;
+	private int next;
+
+	@Setup
+	public void setup() {
+		db = new GeneralDB(new FakeDynamoDB(latencyMicros, 1000), Fixtures.ENV);
+		attributes = Fixtures.attributes(1);
+		items = Fixtures.items(BULK_SIZE);
+	}
+
+	@Benchmark
+	public void addItem() {
+		db.addItem(Fixtures.TABLE, String.valueOf(next++ & 1023), attributes);
+	}
+
+	@Benchmark
+	public void addItemComposed() {
+		db.addItem(Fixtures.PHONES, Fixtures.PK, String.valueOf(next++ & 1023), attributes);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BULK_SIZE)
+	public BulkWriteResult addItems() {
+		return db.addItems(Fixtures.TABLE, items);
+	}
+}